@@ -3,6 +3,7 @@ package mjolk.engine.audio;
 import javax.sound.sampled.*;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
 import javax.sound.sampled.AudioSystem;
 
 import static org.lwjgl.openal.AL10.*;
@@ -12,6 +13,14 @@ import static org.lwjgl.system.MemoryUtil.memFree;
 public class AudioLoader {
 
     public static int loadWAV(String fileName) throws Exception{
+        return importWAV(fileName).call();
+    }
+
+    /**
+     * Reads and converts a WAV file without touching OpenAL, may run on any thread
+     * @return the upload of the samples into a new OpenAL buffer, returning the buffer
+     */
+    public static Callable<Integer> importWAV(String fileName) throws Exception {
         AudioInputStream ais = AudioSystem.getAudioInputStream(new File(fileName));
         AudioFormat audioFormat = ais.getFormat();
 
@@ -33,17 +42,19 @@ public class AudioLoader {
         byte[] audioBytes = ais.readAllBytes();
         ais.close();
 
-        ByteBuffer buffer = memAlloc(audioBytes.length);
-        buffer.put(audioBytes).flip();
-
         int alFormat = getOpenALFormat(audioFormat.getChannels(), audioFormat.getSampleSizeInBits());
         int sampleRate = (int) audioFormat.getSampleRate();
 
-        int bufferId = alGenBuffers();
-        alBufferData(bufferId, alFormat, buffer, sampleRate);
+        return () -> {
+            ByteBuffer buffer = memAlloc(audioBytes.length);
+            buffer.put(audioBytes).flip();
+
+            int bufferId = alGenBuffers();
+            alBufferData(bufferId, alFormat, buffer, sampleRate);
 
-        memFree(buffer);
-        return bufferId;
+            memFree(buffer);
+            return bufferId;
+        };
     }
 
     private static int getOpenALFormat(int channels, int bits) {
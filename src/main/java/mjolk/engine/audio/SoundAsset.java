@@ -1,16 +1,35 @@
 package mjolk.engine.audio;
 
-import org.joml.Vector3f;
+import mjolk.engine.core.assets.Asset;
 
 import static org.lwjgl.openal.AL10.alDeleteBuffers;
 
-public class SoundAsset {
+public class SoundAsset extends Asset {
     private int buffer;
 
     public SoundAsset(int buffer) {
         this.buffer = buffer;
     }
 
+    private SoundAsset() {
+        super(false);
+    }
+
+    /**
+     * A sound without samples until {@link #resolve(int)} fills it in, playing it is silent
+     */
+    public static SoundAsset placeholder() {
+        return new SoundAsset();
+    }
+
+    /**
+     * Takes over a loaded OpenAL buffer and marks this one ready
+     */
+    public void resolve(int buffer) {
+        this.buffer = buffer;
+        markReady();
+    }
+
     public int getBuffer() {
         return buffer;
     }
@@ -4,7 +4,10 @@ import mjolk.engine.Launcher;
 import mjolk.engine.audio.AudioLoader;
 import mjolk.engine.audio.AudioManager;
 import mjolk.engine.audio.Sound;
+import mjolk.engine.core.assets.AssetRegistry;
+import mjolk.engine.core.assets.AsyncLoader;
 import mjolk.engine.core.entity.*;
+import mjolk.engine.core.entity.components.Component;
 import mjolk.engine.core.entity.components.MoveableComponent;
 import mjolk.engine.core.entity.components.RenderableComponent;
 import mjolk.engine.core.entity.components.TransformComponent;
@@ -19,13 +22,15 @@ import mjolk.engine.graphics.rendering.renderer.GeometryRenderer;
 import mjolk.engine.graphics.rendering.renderer.LightingRenderer;
 import mjolk.engine.core.entity.Scene;
 import mjolk.engine.graphics.camera.Camera;
-import mjolk.engine.graphics.material.Texture;
+import mjolk.engine.graphics.material.TextureCache;
 import mjolk.engine.graphics.mesh.Model;
 import mjolk.engine.graphics.mesh.ObjectLoader;
+import mjolk.engine.graphics.mesh.VertexLayout;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.GLFW;
 
+import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
 
@@ -39,6 +44,9 @@ public class TestGame implements ILogic {
     private final WindowManager window;
     private Scene scene;
     private ObjectLoader loader;
+    private AsyncLoader assets;
+    private AssetRegistry registry;
+    private Query moveables;
 
     private GeometryRenderer geometryRenderer;
     private LightingRenderer lightingRenderer;
@@ -66,31 +74,40 @@ public class TestGame implements ILogic {
         lightingRenderer.init();
 
         loader = new ObjectLoader();
+        loader.setVertexLayout(VertexLayout.QUANTIZED);
+        loader.setQuantizePositions(true);
+        loader.setOptimizeMeshes(true);
+        loader.setGenerateLods(true);
+        loader.setBuildMeshlets(true);
+        geometryRenderer.setTextureArrays(loader.getTextureArrays());
+        assets = new AsyncLoader(loader);
+        registry = new AssetRegistry(assets);
 
         Camera camera = new Camera();
         camera.setPosition(0,7.5f,5);
         camera.setRotation(45, 180, 0);
 
         scene = new Scene(camera, audioManager.getSystem());
+        moveables = scene.query(MoveableComponent.class);
 
-        Model bunny_model = loader.loadOBJModel("models/bunny.obj");
-        bunny_model.setTexture(new Texture(loader.loadTexture("textures/texture.jpg")), .02f);
+        Model bunny_model = registry.acquireModel("models/bunny.obj");
+        bunny_model.setTexture(registry.acquireTexture("textures/texture.jpg"), .02f);
 
         Entity bunny_entity = new Entity();
         bunny_entity.addComponent(new RenderableComponent(bunny_model));
         bunny_entity.addComponent(new TransformComponent(new Vector3f(1f, 0, 2), new Vector3f(0, 180, 0), 1f));
         bunny_entity.addComponent(new MoveableComponent());
 
-        scene.entities.put(1, bunny_entity);
+        scene.addEntity(bunny_entity);
 
-        Model box_model = loader.loadOBJModel("models/box.obj");
-        box_model.setTexture(new Texture(loader.loadTexture("textures/texture.jpg")), .02f);
+        Model box_model = registry.acquireModel("models/box.obj");
+        box_model.setTexture(registry.acquireTexture("textures/texture.jpg"), .02f);
 
         Entity box_entity = new Entity();
         box_entity.addComponent(new RenderableComponent(box_model));
         box_entity.addComponent(new TransformComponent(new Vector3f(1f, 0, 2), new Vector3f(0, 180, 0), 1f));
 
-        scene.entities.put(2, box_entity);
+        scene.addEntity(box_entity);
 
         // Point light
         Vector3f lightPosition = new Vector3f(1f, 1.9f, 2);
@@ -107,7 +124,8 @@ public class TestGame implements ILogic {
         SpotLight spotLight2 = new SpotLight(new PointLight(new Vector3f(0, 0, 1), new Vector3f(0.1f, 1.9f, 2), 1f, 1f, 0.09f, 0.032f), new Vector3f(1, -1, 0), (float) Math.toRadians(30));
 //        scene.addLight(spotLight2);
 
-        LOGGER.info("TestGame init complete");
+        LOGGER.info("TestGame init complete, " + registry.getUniqueLoads() + " of " + registry.getRequestedLoads()
+                + " asset loads unique");
     }
 
     @Override
@@ -135,19 +153,27 @@ public class TestGame implements ILogic {
         }
 
 
-        for (Entity e : scene.entities.values()) {
-            if (e.hasComponent(MoveableComponent.class)) {
-                if (window.isKeyPressed(GLFW.GLFW_KEY_UP)) {
-                    e.getComponent(MoveableComponent.class).positionVelocity = new Vector3f(0, 1, 0);
-                } else if (window.isKeyPressed(GLFW.GLFW_KEY_DOWN)) {
-                    e.getComponent(MoveableComponent.class).positionVelocity = new Vector3f(0, -1, 0);
-                } else if (window.isKeyPressed(GLFW.GLFW_KEY_LEFT)) {
-                    e.getComponent(MoveableComponent.class).angularVelocity = new Vector3f(0, 90f, 0);
-                } else if (window.isKeyPressed(GLFW.GLFW_KEY_RIGHT)) {
-                    e.getComponent(MoveableComponent.class).angularVelocity = new Vector3f(0, -90f, 0);
-                } else {
-                    e.getComponent(MoveableComponent.class).positionVelocity = new Vector3f(0, 0, 0);
-                    e.getComponent(MoveableComponent.class).angularVelocity = new Vector3f(0, 0, 0);
+        float velocityY = 0, angularY = 0;
+        if (window.isKeyPressed(GLFW.GLFW_KEY_UP)) {
+            velocityY = 1;
+        } else if (window.isKeyPressed(GLFW.GLFW_KEY_DOWN)) {
+            velocityY = -1;
+        } else if (window.isKeyPressed(GLFW.GLFW_KEY_LEFT)) {
+            angularY = 90f;
+        } else if (window.isKeyPressed(GLFW.GLFW_KEY_RIGHT)) {
+            angularY = -90f;
+        }
+
+        for (int a = 0; a < moveables.getArchetypeCount(); a++) {
+            List<Chunk> chunks = moveables.getArchetype(a).getChunks();
+            int column = moveables.getColumn(a, 0);
+            for (int c = 0; c < chunks.size(); c++) {
+                Chunk chunk = chunks.get(c);
+                Component[] components = chunk.getComponents(column);
+                for (int i = 0; i < chunk.size(); i++) {
+                    MoveableComponent moveable = (MoveableComponent) components[i];
+                    moveable.setPositionVelocity(0, velocityY, 0);
+                    moveable.setAngularVelocity(0, angularY, 0);
                 }
             }
         }
@@ -169,14 +195,13 @@ public class TestGame implements ILogic {
     }
 
     @Override
-    public void render() throws Exception {
+    public void render(float alpha) throws Exception {
+        assets.processUploads();
+        scene.interpolate(alpha);
 
         geometryRenderer.geometryPass(scene);
         shadowRenderer.render(scene);
         lightingRenderer.render(scene, geometryRenderer, shadowRenderer);
-
-        scene.renderQueue.clear();
-
     }
 
     public ShadowRenderer getShadowRenderer() {
@@ -189,6 +214,14 @@ public class TestGame implements ILogic {
 
     @Override
     public void cleanup() {
+        TextureCache textures = loader.getTextureCache();
+        LOGGER.info(String.format("Texture cache: %d hits, %d misses, %d evictions, %.1f of %.1f MB resident",
+                textures.getHits(), textures.getMisses(), textures.getEvictions(),
+                textures.getResidentBytes() / 1e6, textures.getBudget() / 1e6));
+        LOGGER.info(String.format("Last geometry pass: %d texture binds, %d avoided by %d texture arrays",
+                geometryRenderer.getTextureBinds(), geometryRenderer.getTextureBindsAvoided(),
+                loader.getTextureArrays().getArrayCount()));
+        assets.cleanup();
         loader.cleanup();
 
         geometryRenderer.cleanup();
@@ -0,0 +1,49 @@
+package mjolk.engine.core.assets;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base of the assets {@link AsyncLoader} can hand out before their data is loaded. An asset created directly is
+ * ready straight away, a placeholder becomes ready once its data has been uploaded on the GL thread.
+ */
+public abstract class Asset {
+
+    private final CompletableFuture<Void> loaded;
+
+    protected Asset() {
+        this(true);
+    }
+
+    /**
+     * @param ready false for a placeholder
+     */
+    protected Asset(boolean ready) {
+        this.loaded = ready ? CompletableFuture.completedFuture(null) : new CompletableFuture<>();
+    }
+
+    public boolean isReady() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * @return whether loading the asset failed, a failed placeholder never becomes ready
+     */
+    public boolean isFailed() {
+        return loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * Completes on the GL thread once the asset is ready, so callbacks may use GL, or exceptionally if loading failed
+     */
+    public CompletableFuture<Void> whenReady() {
+        return loaded;
+    }
+
+    protected void markReady() {
+        loaded.complete(null);
+    }
+
+    void markFailed(Throwable cause) {
+        loaded.completeExceptionally(cause);
+    }
+}
@@ -0,0 +1,150 @@
+package mjolk.engine.core.assets;
+
+import mjolk.engine.audio.SoundAsset;
+import mjolk.engine.graphics.material.Texture;
+import mjolk.engine.graphics.mesh.Model;
+import mjolk.engine.graphics.mesh.ObjectLoader;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Shares loaded assets between their users.
+ * <p>
+ * Assets are keyed by type, canonical path and import options, so acquiring the same file twice returns the same
+ * {@link Model} or {@link Texture} instead of a second GPU copy. Every acquire counts as a reference and every
+ * {@link #release(Asset)} drops one; the asset is freed as soon as the last reference is gone, or once it finishes
+ * loading if it was released while still in flight. Textures are handed back to the texture cache instead, which
+ * keeps them resident until it needs their memory. Loads go through {@link AsyncLoader}, so acquired assets may be
+ * placeholders. Only to be used from the main thread.
+ */
+public class AssetRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(AssetRegistry.class.getName());
+
+    private record Key(Class<?> type, String path, String options) {
+    }
+
+    private static class Entry {
+        final Key key;
+        final Asset asset;
+        int references;
+
+        Entry(Key key, Asset asset) {
+            this.key = key;
+            this.asset = asset;
+        }
+    }
+
+    private final AsyncLoader loader;
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final Map<Asset, Entry> entriesByAsset = new IdentityHashMap<>();
+
+    private int requestedLoads;
+    private int uniqueLoads;
+
+    public AssetRegistry(AsyncLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Loads an OBJ from the resources folder, or shares the model already loaded with the current import options
+     */
+    public Model acquireModel(String fileName) {
+        return acquire(new Key(Model.class, canonical(fileName), loader.getObjectLoader().getImportOptions()),
+                key -> loader.loadModel(key.path()));
+    }
+
+    public Texture acquireTexture(String fileName) {
+        return acquire(new Key(Texture.class, canonical(fileName), ""), key -> loader.loadTexture(key.path()));
+    }
+
+    public SoundAsset acquireSound(String fileName) {
+        return acquire(new Key(SoundAsset.class, canonical(fileName), ""), key -> loader.loadSound(key.path()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Asset> T acquire(Key key, Function<Key, T> load) {
+        requestedLoads++;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            uniqueLoads++;
+            entry = new Entry(key, load.apply(key));
+            entries.put(key, entry);
+            entriesByAsset.put(entry.asset, entry);
+        }
+        entry.references++;
+        return (T) entry.asset;
+    }
+
+    /**
+     * Drops one reference, freeing the asset with the last one
+     */
+    public void release(Asset asset) {
+        Entry entry = entriesByAsset.get(asset);
+        if (entry == null) {
+            LOGGER.warning("Released an asset the registry does not hold: " + asset);
+            return;
+        }
+        if (--entry.references > 0) {
+            return;
+        }
+
+        entries.remove(entry.key);
+        entriesByAsset.remove(asset);
+        // Uploads complete on the main thread, so a load still in flight is freed right after it lands
+        asset.whenReady().thenRun(() -> free(asset));
+    }
+
+    private void free(Asset asset) {
+        ObjectLoader objectLoader = loader.getObjectLoader();
+        if (asset instanceof Model model) {
+            objectLoader.unloadModel(model);
+        } else if (asset instanceof Texture texture) {
+            // Stays resident until the texture cache needs its memory
+            objectLoader.releaseTexture(texture);
+        } else if (asset instanceof SoundAsset sound) {
+            sound.cleanup();
+        }
+    }
+
+    /**
+     * @return the reference count of an asset, 0 if the registry does not hold it
+     */
+    public int getReferenceCount(Asset asset) {
+        Entry entry = entriesByAsset.get(asset);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * @return the number of acquire calls so far
+     */
+    public int getRequestedLoads() {
+        return requestedLoads;
+    }
+
+    /**
+     * @return the number of acquire calls that started a load, the rest were shared
+     */
+    public int getUniqueLoads() {
+        return uniqueLoads;
+    }
+
+    /**
+     * @return the number of assets currently held
+     */
+    public int getLoadedCount() {
+        return entries.size();
+    }
+
+    /**
+     * Normalises a resource path, so "models/./box.obj" and "models/box.obj" share an entry
+     */
+    private static String canonical(String fileName) {
+        return Path.of(fileName).normalize().toString().replace('\\', '/');
+    }
+}
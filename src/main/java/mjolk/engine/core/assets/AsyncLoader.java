@@ -0,0 +1,175 @@
+package mjolk.engine.core.assets;
+
+import mjolk.engine.audio.AudioLoader;
+import mjolk.engine.audio.SoundAsset;
+import mjolk.engine.graphics.material.Texture;
+import mjolk.engine.graphics.material.TextureCache;
+import mjolk.engine.graphics.material.TextureData;
+import mjolk.engine.graphics.mesh.Model;
+import mjolk.engine.graphics.mesh.ObjectLoader;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static mjolk.engine.core.maths.Constants.UPLOAD_BUDGET_MS;
+
+/**
+ * Loads models, textures and sounds in the background.
+ * <p>
+ * Every load returns a placeholder straight away. File I/O, parsing and decoding run on worker threads, which queue
+ * the GL and OpenAL part of the load for the main thread. {@link #processUploads()} drains that queue once per frame
+ * within a time budget, so loading never freezes the window and assets can stream in mid-game. Texture pixels go
+ * through the {@link mjolk.engine.graphics.material.TextureStreamer} of the loader, which spreads large images over
+ * several frames. Placeholders are not drawn until they resolve, see {@link Asset}.
+ */
+public class AsyncLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncLoader.class.getName());
+
+    private final ObjectLoader loader;
+    private final ExecutorService workers;
+    private final Queue<Runnable> uploads = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private long uploadBudget = (long) (UPLOAD_BUDGET_MS * 1_000_000);
+
+    /**
+     * Uses one worker per core, leaving one core for the main thread
+     */
+    public AsyncLoader(ObjectLoader loader) {
+        this(loader, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AsyncLoader(ObjectLoader loader, int threads) {
+        this.loader = loader;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "asset-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads an OBJ from the resources folder with the settings of the wrapped {@link ObjectLoader}
+     */
+    public Model loadModel(String fileName) {
+        Model model = Model.placeholder();
+        submit(model, fileName, () -> loader.importOBJModel(fileName), model::resolve);
+        return model;
+    }
+
+    /**
+     * Loads a texture through the texture cache of the wrapped {@link ObjectLoader}, a texture that is resident or
+     * already loading is shared. The texture is held until it is passed to
+     * {@link ObjectLoader#releaseTexture(Texture)}.
+     */
+    public Texture loadTexture(String fileName) {
+        TextureCache cache = loader.getTextureCache();
+        Texture cached = cache.acquire(fileName);
+        if (cached != null) {
+            return cached;
+        }
+
+        Texture texture = Texture.placeholder();
+        cache.add(fileName, texture);
+        submit(texture, fileName, () -> {
+            TextureData data = loader.decodeTexture(fileName);
+            return () -> data;
+        }, data -> loader.streamTexture(data, loaded -> {
+            texture.resolve(loaded);
+            cache.accountLoaded(texture);
+        }));
+        return texture;
+    }
+
+    public SoundAsset loadSound(String fileName) {
+        SoundAsset sound = SoundAsset.placeholder();
+        submit(sound, fileName, () -> AudioLoader.importWAV(fileName), sound::resolve);
+        return sound;
+    }
+
+    /**
+     * @param importer runs on a worker and returns the upload, which runs on the main thread
+     * @param resolve hands the uploaded result to the placeholder, or starts an upload that resolves it later
+     */
+    private <T> void submit(Asset asset, String name, Callable<Callable<T>> importer, Consumer<T> resolve) {
+        pending.incrementAndGet();
+        asset.whenReady().whenComplete((result, error) -> pending.decrementAndGet());
+        workers.execute(() -> {
+            Callable<T> upload;
+            try {
+                upload = importer.call();
+            } catch (Exception e) {
+                fail(asset, name, e);
+                return;
+            }
+
+            uploads.add(() -> {
+                try {
+                    resolve.accept(upload.call());
+                } catch (Exception e) {
+                    fail(asset, name, e);
+                }
+            });
+        });
+    }
+
+    private void fail(Asset asset, String name, Exception e) {
+        LOGGER.warning("Could not load " + name + ": " + e.getMessage());
+        asset.markFailed(e);
+    }
+
+    /**
+     * Runs queued uploads, then streams texture bands, until the budget for this frame is used up, must be called on
+     * the GL thread. At least one upload and one band run per call, so a single one larger than the budget still
+     * gets through.
+     * @return the number of uploads and texture bands run
+     */
+    public int processUploads() {
+        long start = System.nanoTime();
+        int count = 0;
+        Runnable upload;
+        while ((count == 0 || System.nanoTime() - start < uploadBudget) && (upload = uploads.poll()) != null) {
+            upload.run();
+            count++;
+        }
+        return count + loader.getTextureStreamer().process(start + uploadBudget);
+    }
+
+    public ObjectLoader getObjectLoader() {
+        return loader;
+    }
+
+    /**
+     * @return the number of loads that are neither ready nor failed yet, including textures still streaming
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public float getUploadBudget() {
+        return uploadBudget / 1_000_000f;
+    }
+
+    /**
+     * @param milliseconds main thread time per frame spent on uploads
+     */
+    public void setUploadBudget(float milliseconds) {
+        this.uploadBudget = (long) (milliseconds * 1_000_000);
+    }
+
+    /**
+     * Stops the workers, loads still in flight are dropped
+     */
+    public void cleanup() {
+        workers.shutdownNow();
+        uploads.clear();
+    }
+}
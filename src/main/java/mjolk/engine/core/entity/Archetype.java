@@ -0,0 +1,166 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entities that have exactly one set of component types, stored in {@link Chunk}s with one column per type.
+ * Columns are ordered by class name, so the same set always gets the same layout, and found by component type id
+ * through a plain array.
+ */
+public class Archetype {
+
+    private final List<Class<? extends Component>> types;
+    private final int[] fieldCounts;
+    private final ComponentMask mask = new ComponentMask();
+    /** The column of every component type id, -1 for types the archetype does not have */
+    private final int[] columns;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int size;
+
+    /** The archetypes an entity moves to when one type is added or removed, filled in as they are needed */
+    final Map<Class<? extends Component>, Archetype> addEdges = new HashMap<>();
+    final Map<Class<? extends Component>, Archetype> removeEdges = new HashMap<>();
+
+    /**
+     * @param types the component types, sorted by class name
+     * @param fieldCounts the packed fields of every type, 0 for types that are not packed
+     */
+    Archetype(List<Class<? extends Component>> types, int[] fieldCounts) {
+        this.types = List.copyOf(types);
+        this.fieldCounts = fieldCounts;
+        int maxId = -1;
+        for (Class<? extends Component> type : types) {
+            maxId = Math.max(maxId, ComponentTypes.id(type));
+        }
+        columns = new int[maxId + 1];
+        Arrays.fill(columns, -1);
+        for (int column = 0; column < types.size(); column++) {
+            int id = ComponentTypes.id(types.get(column));
+            columns[id] = column;
+            mask.set(id);
+        }
+    }
+
+    /**
+     * @return the column of a component type, -1 if the archetype does not have it
+     */
+    public int indexOf(Class<? extends Component> type) {
+        return indexOf(ComponentTypes.id(type));
+    }
+
+    public int indexOf(int typeId) {
+        return typeId < columns.length ? columns[typeId] : -1;
+    }
+
+    public boolean has(Class<? extends Component> type) {
+        return indexOf(type) >= 0;
+    }
+
+    /**
+     * @return the component types of the archetype, not to be modified
+     */
+    public ComponentMask getMask() {
+        return mask;
+    }
+
+    public int getColumnCount() {
+        return types.size();
+    }
+
+    public Class<? extends Component> getType(int column) {
+        return types.get(column);
+    }
+
+    int getFieldCount(int column) {
+        return fieldCounts[column];
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the number of entities in the archetype
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives an entity a free row, in the first chunk with space. Its components still have to be put in.
+     */
+    void allocate(Entity entity) {
+        Chunk chunk = null;
+        for (Chunk candidate : chunks) {
+            if (!candidate.isFull()) {
+                chunk = candidate;
+                break;
+            }
+        }
+        if (chunk == null) {
+            chunk = new Chunk(this);
+            chunks.add(chunk);
+        }
+
+        int row = chunk.size++;
+        chunk.entities[row] = entity;
+        entity.chunk = chunk;
+        entity.row = row;
+        size++;
+    }
+
+    /**
+     * Frees the row of an entity whose components have been moved out or detached, moving the last row of the
+     * chunk into it. A chunk left empty is dropped unless it is the only one.
+     */
+    void free(Chunk chunk, int row) {
+        int last = --chunk.size;
+        if (row != last) {
+            Entity moved = chunk.entities[last];
+            chunk.entities[row] = moved;
+            moved.row = row;
+            for (int column = 0; column < types.size(); column++) {
+                Component component = chunk.components[column][last];
+                chunk.components[column][row] = component;
+                if (chunk.fields[column] != null) {
+                    ((PackedComponent) component).moveTo(chunk.fields[column], row);
+                }
+            }
+        }
+
+        chunk.entities[last] = null;
+        for (int column = 0; column < types.size(); column++) {
+            chunk.components[column][last] = null;
+        }
+        size--;
+
+        if (chunk.size == 0 && chunks.size() > 1) {
+            chunks.remove(chunk);
+        }
+    }
+
+    /**
+     * Puts a component into the row of an entity allocated in this archetype
+     */
+    void put(Entity entity, int column, Component component) {
+        Chunk chunk = entity.chunk;
+        chunk.components[column][entity.row] = component;
+        if (chunk.fields[column] != null) {
+            ((PackedComponent) component).moveTo(chunk.fields[column], entity.row);
+        }
+    }
+
+    List<Class<? extends Component>> getTypes() {
+        return types;
+    }
+
+    int[] getFieldCounts() {
+        return fieldCounts;
+    }
+}
@@ -0,0 +1,299 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.core.entity.components.TransformHierarchy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the components of the entities in a scene by archetype.
+ * <p>
+ * Adding or removing a component moves the entity to the archetype of its new set of types, copying its row
+ * across. The archetype reached from another by adding or removing a type is remembered, so moves after the first
+ * do not hash the whole set again. Archetypes are keyed by their {@link ComponentMask}, and every new archetype is
+ * offered to the cached {@link Query}s. {@link ComponentListener}s hear of every component entering and leaving
+ * the storage, the first of them being the {@link TransformHierarchy}.
+ */
+public class ArchetypeStorage {
+
+    private final Map<ComponentMask, Archetype> archetypes = new HashMap<>();
+    private final List<Archetype> archetypeList = new ArrayList<>();
+    /** Keyed by the types in the order they were asked for, which is the order of their columns in the query */
+    private final Map<List<Class<? extends Component>>, Query> queries = new HashMap<>();
+    private final List<Query> queryList = new ArrayList<>();
+    private final TransformHierarchy transforms = new TransformHierarchy(query(TransformComponent.class));
+    private final List<ComponentListener> listeners = new ArrayList<>(List.of(transforms));
+    private int entityCount;
+    private boolean locked;
+    private long moves;
+
+    /**
+     * Adds an entity with its components
+     */
+    void spawn(Entity entity, Collection<Component> components) {
+        checkUnlocked();
+        List<Class<? extends Component>> types = new ArrayList<>(components.size());
+        int[] fieldCounts = new int[components.size()];
+        for (Component component : components) {
+            fieldCounts[types.size()] = fieldCount(component);
+            types.add(component.getClass());
+        }
+
+        Archetype archetype = archetypeOf(types, fieldCounts);
+        archetype.allocate(entity);
+        for (Component component : components) {
+            archetype.put(entity, archetype.indexOf(component.getClass()), component);
+            entered(component);
+        }
+        entityCount++;
+    }
+
+    /**
+     * Takes an entity out of the storage
+     * @return its components, packed ones holding their values again
+     */
+    List<Component> despawn(Entity entity) {
+        checkUnlocked();
+        Chunk chunk = entity.chunk;
+        Archetype archetype = chunk.archetype;
+        List<Component> components = new ArrayList<>(archetype.getColumnCount());
+        for (int column = 0; column < archetype.getColumnCount(); column++) {
+            Component component = chunk.components[column][entity.row];
+            if (component instanceof PackedComponent packed) {
+                packed.detach();
+            }
+            left(component);
+            components.add(component);
+        }
+        archetype.free(chunk, entity.row);
+        entity.chunk = null;
+        entityCount--;
+        return components;
+    }
+
+    /**
+     * Adds a component to a stored entity, replacing one of the same type
+     */
+    void add(Entity entity, Component component) {
+        checkUnlocked();
+        Class<? extends Component> type = component.getClass();
+        Archetype from = entity.chunk.archetype;
+        int column = from.indexOf(type);
+        if (column >= 0) {
+            Component replaced = entity.chunk.components[column][entity.row];
+            if (replaced instanceof PackedComponent packed) {
+                packed.detach();
+            }
+            left(replaced);
+            from.put(entity, column, component);
+            entered(component);
+            return;
+        }
+
+        Archetype to = from.addEdges.get(type);
+        if (to == null) {
+            List<Class<? extends Component>> types = new ArrayList<>(from.getTypes());
+            types.add(type);
+            int[] fieldCounts = Arrays.copyOf(from.getFieldCounts(), types.size());
+            fieldCounts[types.size() - 1] = fieldCount(component);
+            to = archetypeOf(types, fieldCounts);
+            from.addEdges.put(type, to);
+        }
+        move(entity, to);
+        to.put(entity, to.indexOf(type), component);
+        entered(component);
+    }
+
+    /**
+     * Removes the component of a type from a stored entity
+     * @return the removed component, or null if the entity has none of the type
+     */
+    Component remove(Entity entity, Class<? extends Component> type) {
+        checkUnlocked();
+        Archetype from = entity.chunk.archetype;
+        int column = from.indexOf(type);
+        if (column < 0) {
+            return null;
+        }
+        Component component = entity.chunk.components[column][entity.row];
+        if (component instanceof PackedComponent packed) {
+            packed.detach();
+        }
+        left(component);
+
+        Archetype to = from.removeEdges.get(type);
+        if (to == null) {
+            List<Class<? extends Component>> types = new ArrayList<>(from.getColumnCount() - 1);
+            int[] fieldCounts = new int[from.getColumnCount() - 1];
+            for (int c = 0; c < from.getColumnCount(); c++) {
+                if (c == column) continue;
+                fieldCounts[types.size()] = from.getFieldCount(c);
+                types.add(from.getType(c));
+            }
+            to = archetypeOf(types, fieldCounts);
+            from.removeEdges.put(type, to);
+        }
+        move(entity, to);
+        return component;
+    }
+
+    /**
+     * Moves an entity to another archetype, taking along the components both archetypes have
+     */
+    private void move(Entity entity, Archetype to) {
+        moves++;
+        Chunk source = entity.chunk;
+        int sourceRow = entity.row;
+        Archetype from = source.archetype;
+
+        to.allocate(entity);
+        for (int column = 0; column < from.getColumnCount(); column++) {
+            int target = to.indexOf(from.getType(column));
+            if (target >= 0) {
+                to.put(entity, target, source.components[column][sourceRow]);
+            }
+        }
+        from.free(source, sourceRow);
+    }
+
+    private Archetype archetypeOf(List<Class<? extends Component>> types, int[] fieldCounts) {
+        ComponentMask key = ComponentMask.of(types);
+        Archetype archetype = archetypes.get(key);
+        if (archetype != null) {
+            return archetype;
+        }
+
+        Integer[] order = new Integer[types.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> types.get(i).getName()));
+        List<Class<? extends Component>> sortedTypes = new ArrayList<>(types.size());
+        int[] sortedFieldCounts = new int[types.size()];
+        for (int i = 0; i < order.length; i++) {
+            sortedTypes.add(types.get(order[i]));
+            sortedFieldCounts[i] = fieldCounts[order[i]];
+        }
+
+        archetype = new Archetype(sortedTypes, sortedFieldCounts);
+        archetypes.put(key, archetype);
+        archetypeList.add(archetype);
+        for (Query query : queryList) {
+            query.offer(archetype);
+        }
+        return archetype;
+    }
+
+    /**
+     * Finds or creates the query for a list of component types. Queries are cached, so asking again for the same
+     * types in the same order returns the same query, which should be kept rather than asked for every frame. The
+     * same types in another order make a query of their own, as the types are indexed in the order given.
+     */
+    @SafeVarargs
+    public final Query query(Class<? extends Component>... types) {
+        List<Class<? extends Component>> list = new ArrayList<>(types.length);
+        for (Class<? extends Component> type : types) {
+            list.add(type);
+        }
+        return query(list);
+    }
+
+    public final Query query(List<Class<? extends Component>> types) {
+        Query query = queries.get(types);
+        if (query == null) {
+            query = new Query(types);
+            for (Archetype archetype : archetypeList) {
+                query.offer(archetype);
+            }
+            queries.put(query.getTypes(), query);
+            queryList.add(query);
+        }
+        return query;
+    }
+
+    /**
+     * Refuses structural changes while systems may be iterating the chunks, see {@link CommandBuffer}
+     */
+    public void setLocked(boolean locked) {
+        this.locked = locked;
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    void checkUnlocked() {
+        if (locked) {
+            throw new IllegalStateException("Entities and components cannot be added or removed while systems run, "
+                    + "record the change in the command buffer of the scene instead");
+        }
+    }
+
+    private void entered(Component component) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).added(component);
+        }
+    }
+
+    private void left(Component component) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).removed(component);
+        }
+    }
+
+    /**
+     * Adds a listener for components entering and leaving the storage, told about the ones already stored
+     */
+    public void addListener(ComponentListener listener) {
+        listeners.add(listener);
+        for (Archetype archetype : archetypeList) {
+            for (Chunk chunk : archetype.getChunks()) {
+                for (int column = 0; column < archetype.getColumnCount(); column++) {
+                    for (int row = 0; row < chunk.size; row++) {
+                        listener.added(chunk.components[column][row]);
+                    }
+                }
+            }
+        }
+    }
+
+    public void removeListener(ComponentListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static int fieldCount(Component component) {
+        return component instanceof PackedComponent packed ? packed.getFieldCount() : 0;
+    }
+
+    /**
+     * @return every archetype that has held entities, in the order they were first needed
+     */
+    public List<Archetype> getArchetypes() {
+        return archetypeList;
+    }
+
+    /**
+     * @return the tree of the transforms in the storage
+     */
+    public TransformHierarchy getTransforms() {
+        return transforms;
+    }
+
+    /**
+     * @return the number of times an entity has moved to another archetype
+     */
+    public long getMoveCount() {
+        return moves;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+}
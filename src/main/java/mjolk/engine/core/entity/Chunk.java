@@ -0,0 +1,67 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+/**
+ * A fixed number of rows of one archetype, one row per entity, kept dense by moving the last row into any row that
+ * is removed.
+ * <p>
+ * Every component type has an object column holding the component of each row. Packed component types also have one
+ * float column per field, which systems iterate from row 0 to {@link #size()}.
+ */
+public class Chunk {
+
+    public static final int CAPACITY = 1024;
+
+    final Archetype archetype;
+    final Entity[] entities = new Entity[CAPACITY];
+    /** [column][row] */
+    final Component[][] components;
+    /** [column][field][row], null for columns of components without packed fields */
+    final float[][][] fields;
+    int size;
+
+    Chunk(Archetype archetype) {
+        this.archetype = archetype;
+        int columnCount = archetype.getColumnCount();
+        components = new Component[columnCount][CAPACITY];
+        fields = new float[columnCount][][];
+        for (int column = 0; column < columnCount; column++) {
+            int fieldCount = archetype.getFieldCount(column);
+            if (fieldCount > 0) {
+                fields[column] = new float[fieldCount][CAPACITY];
+            }
+        }
+    }
+
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Entity getEntity(int row) {
+        return entities[row];
+    }
+
+    /**
+     * @param column the column of the component type, see {@link Archetype#indexOf(Class)}
+     * @return the components of the column, valid up to {@link #size()}
+     */
+    public Component[] getComponents(int column) {
+        return components[column];
+    }
+
+    /**
+     * @return the float column of one field of a packed component type, valid up to {@link #size()}
+     */
+    public float[] getField(int column, int field) {
+        return fields[column][field];
+    }
+
+    boolean isFull() {
+        return size == CAPACITY;
+    }
+}
@@ -0,0 +1,84 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records structural changes to a scene to make later, when nothing is iterating the storage.
+ * <p>
+ * Each thread records into its own buffer, got from {@link Scene#commands()}, so systems running in parallel can
+ * spawn and despawn without locking. The {@link CommandQueue} of the scene applies all buffers at its sync point.
+ */
+public class CommandBuffer {
+
+    static final byte CREATE = 0;
+    static final byte DESTROY = 1;
+    static final byte ADD = 2;
+    static final byte REMOVE = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    byte[] kinds = new byte[INITIAL_CAPACITY];
+    Entity[] entities = new Entity[INITIAL_CAPACITY];
+    Component[] components = new Component[INITIAL_CAPACITY];
+    final List<Class<? extends Component>> types = new ArrayList<>(INITIAL_CAPACITY);
+    int size;
+
+    /** Whether the queue gathers the buffer, it drops buffers that stay empty until they are asked for again */
+    boolean registered;
+    /** Gathers in a row that found the buffer empty */
+    int idle;
+
+    CommandBuffer() {
+    }
+
+    /**
+     * Adds an entity to the scene, with the components it has by then
+     */
+    public void create(Entity entity) {
+        record(CREATE, entity, null, null);
+    }
+
+    /**
+     * Removes an entity from the scene, which keeps its components
+     */
+    public void destroy(Entity entity) {
+        record(DESTROY, entity, null, null);
+    }
+
+    public void add(Entity entity, Component component) {
+        record(ADD, entity, component, null);
+    }
+
+    public void remove(Entity entity, Class<? extends Component> type) {
+        record(REMOVE, entity, null, type);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void record(byte kind, Entity entity, Component component, Class<? extends Component> type) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            entities = Arrays.copyOf(entities, capacity);
+            components = Arrays.copyOf(components, capacity);
+        }
+        kinds[size] = kind;
+        entities[size] = entity;
+        components[size] = component;
+        types.add(type);
+        size++;
+    }
+
+    void clear() {
+        Arrays.fill(entities, 0, size, null);
+        Arrays.fill(components, 0, size, null);
+        types.clear();
+        size = 0;
+    }
+}
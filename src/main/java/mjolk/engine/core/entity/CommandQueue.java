@@ -0,0 +1,195 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The {@link CommandBuffer}s of a scene, one per recording thread, applied together at a sync point.
+ * <p>
+ * Applying gathers every buffer and makes the changes in three sorted batches rather than in recording order:
+ * destroys first, ordered by handle, so later changes to those entities only touch their own components; then
+ * component changes, ordered by handle so the rows visited stay close, with changes to entities not in the scene
+ * going straight to the entity; and creates last, grouped by component set, so every new entity is stored once with
+ * all its components instead of moving archetype with each one, and entities with the same set fill the same chunks
+ * one after another. For any one entity the outcome is the same as in recording order: a create or destroy only
+ * counts if it is the last one recorded for the entity, except that a create after a destroy first removes the
+ * entity if it is in the scene, so it comes back under a new handle, and component changes keep their order.
+ */
+public class CommandQueue {
+
+    private static final int NONE = -1;
+    private static final int DONE = -2;
+    /** Created last with a destroy before, to be removed and added again */
+    private static final int RECREATE = -3;
+    /** Gathers a buffer may stay empty before it is dropped, so threads that stopped recording are not walked */
+    private static final int IDLE_GATHERS = 64;
+
+    private final ThreadLocal<CommandBuffer> local = ThreadLocal.withInitial(this::newBuffer);
+    private final List<CommandBuffer> buffers = new ArrayList<>();
+
+    // All commands of the pass being applied
+    private byte[] kinds = new byte[0];
+    private Entity[] entities = new Entity[0];
+    private Component[] components = new Component[0];
+    private final List<Class<? extends Component>> types = new ArrayList<>();
+    private long[] keys = new long[0];
+    private int applied;
+
+    private CommandBuffer newBuffer() {
+        return new CommandBuffer();
+    }
+
+    /**
+     * @return the buffer of the calling thread, to be asked for again every update rather than kept
+     */
+    public CommandBuffer get() {
+        CommandBuffer buffer = local.get();
+        if (!buffer.registered) {
+            synchronized (buffers) {
+                buffer.registered = true;
+                buffer.idle = 0;
+                buffers.add(buffer);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Makes every recorded change to the scene and empties the buffers. Must not run while systems are. If a change
+     * throws, the changes after it are dropped and the entities are left free to record again.
+     */
+    public void apply(Scene scene) {
+        int count = gather();
+        applied = count;
+        if (count == 0) {
+            return;
+        }
+        try {
+            apply(scene, count);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                entities[i].deferred = NONE;
+            }
+            Arrays.fill(entities, 0, count, null);
+            Arrays.fill(components, 0, count, null);
+            types.clear();
+        }
+    }
+
+    private void apply(Scene scene, int count) {
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities[i];
+            if (kinds[i] == CommandBuffer.DESTROY) {
+                entity.deferred = CommandBuffer.DESTROY;
+            } else if (kinds[i] == CommandBuffer.CREATE) {
+                boolean destroyed = entity.deferred == CommandBuffer.DESTROY || entity.deferred == RECREATE;
+                entity.deferred = destroyed ? RECREATE : CommandBuffer.CREATE;
+            }
+        }
+
+        int keyCount = 0;
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities[i];
+            if (kinds[i] == CommandBuffer.DESTROY
+                    && (entity.deferred == CommandBuffer.DESTROY || entity.deferred == RECREATE)) {
+                // A recreated entity is added again with the creates
+                entity.deferred = entity.deferred == RECREATE ? CommandBuffer.CREATE : DONE;
+                keys[keyCount++] = (long) EntityRegistry.index(entity.handle) << 32 | i;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+        for (int k = 0; k < keyCount; k++) {
+            Entity entity = entities[(int) keys[k]];
+            if (scene.getEntity(entity.handle) == entity) {
+                scene.removeEntity(entity.handle);
+            }
+        }
+
+        keyCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == CommandBuffer.ADD || kinds[i] == CommandBuffer.REMOVE) {
+                Entity entity = entities[i];
+                long slot = entity.isStored() ? EntityRegistry.index(entity.handle) + 1L : 0;
+                keys[keyCount++] = slot << 32 | i;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+        for (int k = 0; k < keyCount; k++) {
+            int i = (int) keys[k];
+            if (kinds[i] == CommandBuffer.ADD) {
+                entities[i].addComponent(components[i]);
+            } else {
+                entities[i].removeComponent(types.get(i));
+            }
+        }
+
+        keyCount = 0;
+        for (int i = 0; i < count; i++) {
+            Entity entity = entities[i];
+            if (kinds[i] == CommandBuffer.CREATE && entity.deferred == CommandBuffer.CREATE) {
+                entity.deferred = DONE;
+                keys[keyCount++] = (long) entity.getMask().hashCode() << 32 | i;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+        for (int k = 0; k < keyCount; k++) {
+            Entity entity = entities[(int) keys[k]];
+            if (!entity.isStored()) {
+                scene.addEntity(entity);
+            }
+        }
+    }
+
+    /**
+     * Copies the commands of every buffer into the arrays of the pass, buffer by buffer, and empties the buffers.
+     * Buffers that stayed empty for a while are dropped until they are asked for again, as the threads of a pool
+     * come and go.
+     * @return the number of commands
+     */
+    private int gather() {
+        synchronized (buffers) {
+            int count = 0;
+            for (CommandBuffer buffer : buffers) {
+                count += buffer.size;
+            }
+            if (kinds.length < count) {
+                int capacity = Math.max(count, kinds.length * 2);
+                kinds = new byte[capacity];
+                entities = new Entity[capacity];
+                components = new Component[capacity];
+                keys = new long[capacity];
+            }
+
+            int offset = 0;
+            for (Iterator<CommandBuffer> iterator = buffers.iterator(); iterator.hasNext(); ) {
+                CommandBuffer buffer = iterator.next();
+                if (buffer.size == 0) {
+                    if (++buffer.idle > IDLE_GATHERS) {
+                        buffer.registered = false;
+                        iterator.remove();
+                    }
+                    continue;
+                }
+                buffer.idle = 0;
+                System.arraycopy(buffer.kinds, 0, kinds, offset, buffer.size);
+                System.arraycopy(buffer.entities, 0, entities, offset, buffer.size);
+                System.arraycopy(buffer.components, 0, components, offset, buffer.size);
+                types.addAll(buffer.types);
+                offset += buffer.size;
+                buffer.clear();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return the number of commands the last {@link #apply(Scene)} gathered
+     */
+    public int getAppliedCount() {
+        return applied;
+    }
+}
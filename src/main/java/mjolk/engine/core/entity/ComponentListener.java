@@ -0,0 +1,13 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+/**
+ * Told about components entering and leaving an {@link ArchetypeStorage}, whether with their entity or on their own
+ */
+public interface ComponentListener {
+
+    void added(Component component);
+
+    void removed(Component component);
+}
@@ -0,0 +1,102 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A set of component types as a bitmask over their {@link ComponentTypes} ids
+ */
+public class ComponentMask {
+
+    private long[] words = new long[1];
+
+    @SafeVarargs
+    public static ComponentMask of(Class<? extends Component>... types) {
+        ComponentMask mask = new ComponentMask();
+        for (Class<? extends Component> type : types) {
+            mask.set(ComponentTypes.id(type));
+        }
+        return mask;
+    }
+
+    public static ComponentMask of(Collection<Class<? extends Component>> types) {
+        ComponentMask mask = new ComponentMask();
+        for (Class<? extends Component> type : types) {
+            mask.set(ComponentTypes.id(type));
+        }
+        return mask;
+    }
+
+    public ComponentMask set(int id) {
+        int word = id >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, word + 1);
+        }
+        words[word] |= 1L << id;
+        return this;
+    }
+
+    public ComponentMask clear(int id) {
+        int word = id >>> 6;
+        if (word < words.length) {
+            words[word] &= ~(1L << id);
+        }
+        return this;
+    }
+
+    public boolean get(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & 1L << id) != 0;
+    }
+
+    /**
+     * @return whether every type of the other mask is in this one
+     */
+    public boolean containsAll(ComponentMask other) {
+        for (int i = 0; i < other.words.length; i++) {
+            long word = i < words.length ? words[i] : 0;
+            if ((word & other.words[i]) != other.words[i]) return false;
+        }
+        return true;
+    }
+
+    public boolean intersects(ComponentMask other) {
+        int length = Math.min(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & other.words[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    public ComponentMask copy() {
+        ComponentMask copy = new ComponentMask();
+        copy.words = words.clone();
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ComponentMask other)) return false;
+        int length = Math.max(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            long a = i < words.length ? words[i] : 0;
+            long b = i < other.words.length ? other.words[i] : 0;
+            if (a != b) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Trailing empty words do not count, so masks of different lengths can be equal
+        int length = words.length;
+        while (length > 1 && words[length - 1] == 0) length--;
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + Long.hashCode(words[i]);
+        }
+        return hash;
+    }
+}
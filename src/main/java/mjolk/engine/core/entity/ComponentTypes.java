@@ -0,0 +1,38 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives every component class a dense integer id, in the order the classes are first seen, for use in bitmasks and
+ * as array indices
+ */
+public class ComponentTypes {
+
+    private static final Map<Class<?>, Integer> registry = new HashMap<>();
+
+    /** Answers repeated lookups without taking the lock */
+    private static final ClassValue<Integer> IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            synchronized (registry) {
+                return registry.computeIfAbsent(type, t -> registry.size());
+            }
+        }
+    };
+
+    public static int id(Class<? extends Component> type) {
+        return IDS.get(type);
+    }
+
+    /**
+     * @return the number of ids handed out so far
+     */
+    public static int count() {
+        synchronized (registry) {
+            return registry.size();
+        }
+    }
+}
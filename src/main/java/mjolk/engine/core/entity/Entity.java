@@ -1,45 +1,135 @@
 package mjolk.engine.core.entity;
 
 import mjolk.engine.core.entity.components.Component;
-import mjolk.engine.graphics.mesh.Model;
-import org.joml.Vector3f;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A handle on a set of components. Until the entity is added to a scene it holds its components itself, once added
+ * they live in the {@link ArchetypeStorage} of the scene and the methods here look them up in its row.
+ */
 public class Entity {
 
-    public int id;
+    /** The handle of the entity in its scene, {@link EntityRegistry#NONE} while not in one */
+    long handle = EntityRegistry.NONE;
 
+    /** The components while the entity is not stored, null while it is */
     private Map<Class<? extends Component>, Component> components = new HashMap<>();
+    /** The component types while the entity is not stored, the mask of its archetype is used while it is */
+    private ComponentMask mask = new ComponentMask();
+    private ArchetypeStorage storage;
+    Chunk chunk;
+    int row;
+    /** The create or destroy that counts for the entity while a {@link CommandQueue} applies, otherwise -1 */
+    int deferred = -1;
 
     public Entity() {
     }
 
     public <T extends Component> void addComponent(T component) {
-        components.put(component.getClass(), component);
         component.setEntity(this);
+        if (storage == null) {
+            components.put(component.getClass(), component);
+            mask.set(ComponentTypes.id(component.getClass()));
+        } else {
+            storage.add(this, component);
+        }
     }
 
     public <T extends Component> void removeComponent(T component) {
-        components.remove(component.getClass(), component);
+        if (storage == null) {
+            if (components.remove(component.getClass(), component)) {
+                mask.clear(ComponentTypes.id(component.getClass()));
+            }
+        } else if (getComponent(component.getClass()) == component) {
+            storage.remove(this, component.getClass());
+        }
+    }
+
+    /**
+     * Removes the component of a type, if the entity has one
+     */
+    public void removeComponent(Class<? extends Component> type) {
+        if (storage == null) {
+            if (components.remove(type) != null) {
+                mask.clear(ComponentTypes.id(type));
+            }
+        } else {
+            storage.remove(this, type);
+        }
     }
 
     public <T extends Component> T getComponent(Class<T> type) {
-        return type.cast(components.get(type));
+        if (storage == null) {
+            return type.cast(components.get(type));
+        }
+        int column = chunk.archetype.indexOf(type);
+        return column < 0 ? null : type.cast(chunk.components[column][row]);
     }
 
     public <T extends Component> boolean hasComponent(Class<T> type) {
-        return components.containsKey(type);
+        return getMask().get(ComponentTypes.id(type));
+    }
+
+    /**
+     * @return the component types of the entity, not to be modified
+     */
+    public ComponentMask getMask() {
+        return storage == null ? mask : chunk.archetype.getMask();
     }
 
     public List<String> getComponentNames() {
-        return components.keySet()
-                .stream()
-                .map(Class::getSimpleName)
-                .toList();
+        if (storage == null) {
+            return components.keySet()
+                    .stream()
+                    .map(Class::getSimpleName)
+                    .toList();
+        }
+        List<String> names = new ArrayList<>();
+        for (int column = 0; column < chunk.archetype.getColumnCount(); column++) {
+            names.add(chunk.archetype.getType(column).getSimpleName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the handle to find the entity in its scene by, {@link EntityRegistry#NONE} while not in a scene
+     */
+    public long getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return the chunk holding the components, null while the entity is not in a scene
+     */
+    public Chunk getChunk() {
+        return chunk;
     }
 
+    public int getRow() {
+        return row;
+    }
+
+    void store(ArchetypeStorage storage) {
+        storage.spawn(this, components.values());
+        this.storage = storage;
+        components = null;
+        mask = null;
+    }
+
+    void unstore() {
+        components = new HashMap<>();
+        mask = chunk.archetype.getMask().copy();
+        for (Component component : storage.despawn(this)) {
+            components.put(component.getClass(), component);
+        }
+        storage = null;
+    }
+
+    boolean isStored() {
+        return storage != null;
+    }
 }
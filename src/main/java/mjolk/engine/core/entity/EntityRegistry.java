@@ -0,0 +1,127 @@
+package mjolk.engine.core.entity;
+
+import java.util.Arrays;
+
+/**
+ * Hands out handles for the entities of a scene and finds entities by them.
+ * <p>
+ * A handle packs the index of a slot into its low 32 bits and the generation of the slot into its high 32 bits.
+ * Removing an entity bumps the generation of its slot and puts the slot on a free list for the next entity, so a
+ * handle kept after its entity was removed finds nothing instead of the entity now in the slot. Lookups are an array
+ * index and a generation check, and the live entities are also kept packed in a dense array for iteration, the last
+ * one moving into the gap of a removed one.
+ */
+public class EntityRegistry {
+
+    /** Never handed out, as generations start at 1 */
+    public static final long NONE = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Indexed by slot
+    private Entity[] slots = new Entity[INITIAL_CAPACITY];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int[] denseIndices = new int[INITIAL_CAPACITY];
+    private int slotCount;
+
+    /** Slots free for reuse, the last freed on top */
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    private Entity[] dense = new Entity[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @return the handle the entity is registered under
+     */
+    long register(Entity entity) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (slotCount == slots.length) {
+                int capacity = slotCount * 2;
+                slots = Arrays.copyOf(slots, capacity);
+                generations = Arrays.copyOf(generations, capacity);
+                denseIndices = Arrays.copyOf(denseIndices, capacity);
+                free = Arrays.copyOf(free, capacity);
+            }
+            slot = slotCount++;
+            generations[slot] = 1;
+        }
+
+        if (size == dense.length) {
+            dense = Arrays.copyOf(dense, size * 2);
+        }
+        slots[slot] = entity;
+        denseIndices[slot] = size;
+        dense[size++] = entity;
+        return handle(slot, generations[slot]);
+    }
+
+    /**
+     * @return the entity the handle was for, or null if it was already removed
+     */
+    Entity unregister(long handle) {
+        Entity entity = get(handle);
+        if (entity == null) {
+            return null;
+        }
+
+        int slot = index(handle);
+        int denseIndex = denseIndices[slot];
+        Entity last = dense[--size];
+        dense[denseIndex] = last;
+        denseIndices[index(last.handle)] = denseIndex;
+        dense[size] = null;
+
+        slots[slot] = null;
+        // Skip the generation that would make the handle NONE after wrapping around
+        if (++generations[slot] == 0) {
+            generations[slot] = 1;
+        }
+        free[freeCount++] = slot;
+        return entity;
+    }
+
+    /**
+     * @return the entity with the handle, or null if it was removed or the handle was never handed out
+     */
+    public Entity get(long handle) {
+        int slot = index(handle);
+        if (slot < 0 || slot >= slotCount || generations[slot] != generation(handle)) {
+            return null;
+        }
+        return slots[slot];
+    }
+
+    public boolean contains(long handle) {
+        return get(handle) != null;
+    }
+
+    /**
+     * @return the number of live entities
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index from 0 to {@link #size()}, in no particular order that survives removals
+     */
+    public Entity getAt(int index) {
+        return dense[index];
+    }
+
+    public static int index(long handle) {
+        return (int) handle;
+    }
+
+    public static int generation(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static long handle(int slot, int generation) {
+        return (long) generation << 32 | slot & 0xFFFFFFFFL;
+    }
+}
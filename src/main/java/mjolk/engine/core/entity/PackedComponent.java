@@ -0,0 +1,66 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+/**
+ * A component made of float fields that live in the float columns of its archetype, one column per field.
+ * <p>
+ * The component object is only a view onto its row: reads and writes through it go straight to the columns, which
+ * systems also read and write directly. Before the entity is added to a scene, and after it is removed, the view
+ * keeps its values in its own single row.
+ */
+public abstract class PackedComponent extends Component {
+
+    private float[][] columns;
+    private int row;
+
+    protected PackedComponent(int fieldCount) {
+        columns = new float[fieldCount][1];
+    }
+
+    /**
+     * @param values the starting value of every field, one per field
+     */
+    protected PackedComponent(float[] values) {
+        columns = new float[values.length][1];
+        for (int field = 0; field < values.length; field++) {
+            columns[field][0] = values[field];
+        }
+    }
+
+    public int getFieldCount() {
+        return columns.length;
+    }
+
+    protected float get(int field) {
+        return columns[field][row];
+    }
+
+    protected void set(int field, float value) {
+        columns[field][row] = value;
+    }
+
+    /**
+     * Copies the values to a row of a chunk and points the view at it
+     * @param columns the columns of this component type in the chunk, one per field
+     */
+    void moveTo(float[][] columns, int row) {
+        for (int field = 0; field < columns.length; field++) {
+            columns[field][row] = this.columns[field][this.row];
+        }
+        this.columns = columns;
+        this.row = row;
+    }
+
+    /**
+     * Copies the values out of the chunk into a row of its own, when the component leaves the storage
+     */
+    void detach() {
+        float[][] own = new float[columns.length][1];
+        for (int field = 0; field < columns.length; field++) {
+            own[field][0] = columns[field][row];
+        }
+        columns = own;
+        row = 0;
+    }
+}
@@ -0,0 +1,92 @@
+package mjolk.engine.core.entity;
+
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The archetypes that have all of a set of component types, kept up to date by the storage as new archetypes
+ * appear. Entities move between archetypes when their components change, so the query always covers exactly the
+ * entities that match without tracking them one by one.
+ * <p>
+ * Iteration goes by index over the matching archetypes and their chunks and allocates nothing:
+ * <pre>{@code
+ * for (int a = 0; a < query.getArchetypeCount(); a++) {
+ *     List<Chunk> chunks = query.getArchetype(a).getChunks();
+ *     int transform = query.getColumn(a, 0);
+ *     for (int c = 0; c < chunks.size(); c++) { ... }
+ * }
+ * }</pre>
+ */
+public class Query {
+
+    private final ComponentMask mask;
+    private final List<Class<? extends Component>> types;
+    private final List<Archetype> archetypes = new ArrayList<>();
+    /** The column of every queried type in every matching archetype, one row of types.size() per archetype */
+    private int[] columns = new int[16];
+
+    Query(List<Class<? extends Component>> types) {
+        this.mask = ComponentMask.of(types);
+        this.types = List.copyOf(types);
+    }
+
+    /**
+     * Adds an archetype if it has all the queried types
+     */
+    void offer(Archetype archetype) {
+        if (!archetype.getMask().containsAll(mask)) {
+            return;
+        }
+        int count = types.size();
+        int base = archetypes.size() * count;
+        if (base + count > columns.length) {
+            columns = Arrays.copyOf(columns, Math.max(columns.length * 2, base + count));
+        }
+        for (int t = 0; t < count; t++) {
+            columns[base + t] = archetype.indexOf(types.get(t));
+        }
+        archetypes.add(archetype);
+    }
+
+    public int getArchetypeCount() {
+        return archetypes.size();
+    }
+
+    public Archetype getArchetype(int index) {
+        return archetypes.get(index);
+    }
+
+    /**
+     * @param archetype the index of a matching archetype
+     * @param type the index of a type in the order the query was made with
+     * @return the column of the type in the archetype
+     */
+    public int getColumn(int archetype, int type) {
+        return columns[archetype * types.size() + type];
+    }
+
+    public ComponentMask getMask() {
+        return mask;
+    }
+
+    /**
+     * @return the queried types, in the order {@link #getColumn(int, int)} numbers them
+     */
+    public List<Class<? extends Component>> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the number of matching entities
+     */
+    public int size() {
+        int size = 0;
+        for (int a = 0; a < archetypes.size(); a++) {
+            size += archetypes.get(a).size();
+        }
+        return size;
+    }
+}
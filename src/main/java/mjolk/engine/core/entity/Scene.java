@@ -3,30 +3,37 @@ package mjolk.engine.core.entity;
 import mjolk.engine.Launcher;
 import mjolk.engine.audio.AudioSystem;
 import mjolk.engine.core.entity.components.Component;
-import mjolk.engine.core.entity.components.RenderableComponent;
-import mjolk.engine.core.entity.components.TransformComponent;
-import mjolk.engine.core.utils.Pair;
+import mjolk.engine.core.entity.systems.EntitySystem;
+import mjolk.engine.core.entity.systems.MovementSystem;
+import mjolk.engine.core.entity.systems.RenderableSystem;
+import mjolk.engine.core.entity.systems.SystemScheduler;
+import mjolk.engine.core.entity.systems.TransformSystem;
 import mjolk.engine.graphics.camera.Camera;
 import mjolk.engine.graphics.lighting.DirectionLight;
 import mjolk.engine.graphics.lighting.Light;
 import mjolk.engine.graphics.lighting.PointLight;
 import mjolk.engine.graphics.lighting.SpotLight;
-import mjolk.engine.graphics.mesh.Model;
-import org.joml.Matrix4f;
+import mjolk.engine.graphics.rendering.DrawList;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Scene {
 
     // Fields
     private Camera camera;
-    public Map<Entity, Pair<Matrix4f, Model>> renderQueue;
-    public Map<Integer, Entity> entities;
+    /** The camera as of the last two ticks, and between them for drawing */
+    private final Camera previousCamera = new Camera();
+    private final Camera tickCamera = new Camera();
+    private final Camera renderCamera = new Camera();
+    private final EntityRegistry entities = new EntityRegistry();
+    private final ArchetypeStorage storage = new ArchetypeStorage();
+    private final DrawList drawList = new DrawList();
+    private final CommandQueue commands = new CommandQueue();
+    private final SystemScheduler scheduler = new SystemScheduler(storage);
+    private final RenderableSystem renderables = new RenderableSystem(drawList);
     private List<Light> lights;
     private AudioSystem audioSystem;
 
@@ -39,34 +46,142 @@ public class Scene {
 
     // Constructors
     public Scene(Camera camera, AudioSystem audioSystem) {
-        this.camera = camera;
+        useCamera(camera);
         this.lights = new ArrayList<>();
         this.audioSystem = audioSystem;
-        this.entities = new HashMap<>();
-        this.renderQueue = new HashMap<>();
+        storage.addListener(drawList);
+
+        scheduler.add(new MovementSystem());
+        scheduler.add(new TransformSystem(storage));
+        scheduler.add(renderables);
     }
 
     // Methods
+    /**
+     * Adds an entity, moving its components into the archetype storage of the scene
+     * @return the handle to find or remove the entity by
+     */
+    public long addEntity(Entity entity) {
+        storage.checkUnlocked();
+        if (entity.isStored()) {
+            throw new IllegalArgumentException("Entity is already in a scene");
+        }
+        entity.handle = entities.register(entity);
+        entity.store(storage);
+        return entity.handle;
+    }
+
+    /**
+     * Removes an entity, which takes its components back and can be added again under a new handle
+     * @return the removed entity, or null if the handle is stale
+     */
+    public Entity removeEntity(long handle) {
+        storage.checkUnlocked();
+        Entity entity = entities.unregister(handle);
+        if (entity != null) {
+            entity.unstore();
+            entity.handle = EntityRegistry.NONE;
+        }
+        return entity;
+    }
+
+    /**
+     * @return the buffer of the calling thread for changes to make at the end of the next update, the only way to
+     * add or remove entities and components from within a system. To be asked for again every update rather than kept.
+     */
+    public CommandBuffer commands() {
+        return commands.get();
+    }
+
+    public CommandQueue getCommandQueue() {
+        return commands;
+    }
+
+    /**
+     * @return the entity with the handle, or null if it was removed
+     */
+    public Entity getEntity(long handle) {
+        return entities.get(handle);
+    }
+
+    /**
+     * @return the live entities of the scene
+     */
+    public EntityRegistry getEntities() {
+        return entities;
+    }
+
     public void update(float delta) {
         for (Light l : lights) l.update();
 
-        for (Entity e : entities.values()) {
-            if (e.hasComponent(RenderableComponent.class)) {
-                e.getComponent(RenderableComponent.class).update(delta, this);
-            }
-
-            if (e.hasComponent(TransformComponent.class)) {
-                e.getComponent(TransformComponent.class).update(delta, this);
-            }
-        }
+        scheduler.update(delta);
+        // The sync point for changes recorded while the systems ran, or since the last update
+        commands.apply(this);
+        previousCamera.set(tickCamera);
+        tickCamera.set(camera);
 
         audioSystem.updateListener(camera);
         audioSystem.update();
     }
 
+    /**
+     * Prepares drawing a frame between the last two updates
+     * @param alpha 0 for the update before, 1 for the last update
+     */
+    public void interpolate(float alpha) {
+        drawList.interpolate(alpha);
+        renderCamera.lerp(previousCamera, tickCamera, alpha);
+    }
+
+    /**
+     * Finds the entities with all of a set of component types, see {@link Query}. The query is cached and kept up
+     * to date, so it only needs to be asked for once.
+     */
+    @SafeVarargs
+    public final Query query(Class<? extends Component>... types) {
+        return storage.query(types);
+    }
+
+    /**
+     * Adds a system to run every update, after the systems already added that it conflicts with
+     */
+    public void addSystem(EntitySystem system) {
+        scheduler.add(system);
+    }
+
+    public SystemScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the renderables of the scene, kept up to date as entities come and go
+     */
+    public DrawList getDrawList() {
+        return drawList;
+    }
+
+    public ArchetypeStorage getStorage() {
+        return storage;
+    }
+
     // Getters and setters
     public Camera getCamera() { return camera; }
-    public void setCamera(Camera camera) { this.camera = camera; }
+    public void setCamera(Camera camera) {
+        useCamera(camera);
+    }
+
+    private void useCamera(Camera camera) {
+        this.camera = camera;
+        renderables.setCamera(camera);
+        previousCamera.set(camera);
+        tickCamera.set(camera);
+        renderCamera.set(camera);
+    }
+
+    /**
+     * @return the camera to draw with, between its state in the last two updates, see {@link #interpolate(float)}
+     */
+    public Camera getRenderCamera() { return renderCamera; }
     public List<Light> getLights() { return lights; }
     public void addLight(Light l) {
         if (l instanceof PointLight && !(l instanceof SpotLight)) {
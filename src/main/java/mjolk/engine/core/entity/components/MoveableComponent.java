@@ -1,14 +1,58 @@
 package mjolk.engine.core.entity.components;
 
 import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.PackedComponent;
 import mjolk.engine.core.entity.Scene;
 import org.joml.Vector3f;
 
-public class MoveableComponent extends Component {
+/**
+ * Velocities applied to the {@link TransformComponent} of the entity every update, packed into float columns
+ */
+public class MoveableComponent extends PackedComponent {
 
-    public Vector3f positionVelocity = new Vector3f(0, 0, 0);
-    public Vector3f angularVelocity = new Vector3f(0, 0, 0);
-    public float scaleVelocity = 0f;
+    public static final int VELOCITY_X = 0;
+    public static final int VELOCITY_Y = 1;
+    public static final int VELOCITY_Z = 2;
+    public static final int ANGULAR_X = 3;
+    public static final int ANGULAR_Y = 4;
+    public static final int ANGULAR_Z = 5;
+    public static final int SCALE_VELOCITY = 6;
+    public static final int FIELDS = 7;
+
+    public MoveableComponent() {
+        super(FIELDS);
+    }
+
+    public Vector3f getPositionVelocity(Vector3f dest) {
+        return dest.set(get(VELOCITY_X), get(VELOCITY_Y), get(VELOCITY_Z));
+    }
+
+    public void setPositionVelocity(float x, float y, float z) {
+        set(VELOCITY_X, x);
+        set(VELOCITY_Y, y);
+        set(VELOCITY_Z, z);
+    }
+
+    /**
+     * @return the rotation speed in degrees per second
+     */
+    public Vector3f getAngularVelocity(Vector3f dest) {
+        return dest.set(get(ANGULAR_X), get(ANGULAR_Y), get(ANGULAR_Z));
+    }
+
+    public void setAngularVelocity(float x, float y, float z) {
+        set(ANGULAR_X, x);
+        set(ANGULAR_Y, y);
+        set(ANGULAR_Z, z);
+    }
+
+    public float getScaleVelocity() {
+        return get(SCALE_VELOCITY);
+    }
+
+    public void setScaleVelocity(float scaleVelocity) {
+        set(SCALE_VELOCITY, scaleVelocity);
+    }
 
     @Override
     public void setEntity(Entity entity) {
@@ -2,14 +2,34 @@ package mjolk.engine.core.entity.components;
 
 import mjolk.engine.core.entity.Entity;
 import mjolk.engine.core.entity.Scene;
+import mjolk.engine.graphics.camera.Camera;
+import mjolk.engine.graphics.mesh.Bounds;
 import mjolk.engine.graphics.mesh.Model;
-import mjolk.engine.core.utils.Pair;
+import mjolk.engine.graphics.rendering.DrawList;
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
+
+import static mjolk.engine.core.maths.Constants.LOD_HYSTERESIS;
+import static mjolk.engine.core.maths.Constants.LOD_SCREEN_SIZES;
+import static mjolk.engine.core.maths.Constants.SHADOW_LOD_BIAS;
 
 public class RenderableComponent extends Component {
     public Matrix4f modelMatrix = new Matrix4f();
+    /** The model matrix of the tick before, for drawing between ticks while {@link #moving} */
+    public final Matrix4f previousMatrix = new Matrix4f();
+    /** Whether the model matrix changed in the last tick */
+    public boolean moving;
     public Model model;
+    public int lod;
+    public int shadowLod;
+    /** The model bounds in world space, only recomputed when the transform or the model changes */
+    public final Bounds worldBounds = new Bounds();
+    /** The entry in the draw list of the scene, -1 while not in a scene */
+    public int drawIndex = -1;
+
+    private Bounds localBounds;
+    private TransformComponent lastTransform;
+    private int lastVersion;
+
     public RenderableComponent(Model model) {
         this.model = model;
     }
@@ -20,20 +40,78 @@ public class RenderableComponent extends Component {
 
     @Override
     public void update(float deltaTime, Scene scene) {
-        if (!scene.renderQueue.containsKey(entity) && entity.hasComponent(TransformComponent.class)) {
-            updateModelMatrix();
-            scene.renderQueue.put(entity, new Pair<>(modelMatrix, model));
+        update(entity.getComponent(TransformComponent.class), scene);
+    }
+
+    /**
+     * Updates the draw list entry of the model, taking over the world matrix of the transform if it was rebuilt
+     * @param transform the transform of the entity, nothing is drawn without one
+     */
+    public void update(TransformComponent transform, Scene scene) {
+        update(transform, scene.getDrawList(), scene.getCamera());
+    }
+
+    /**
+     * Updates the entry of the model in a draw list, taking over the world matrix of the transform if it was rebuilt
+     * @param camera the camera to pick the level of detail for
+     */
+    public void update(TransformComponent transform, DrawList drawList, Camera camera) {
+        // Models still loading in the background are left out until they are ready
+        boolean drawable = model.isReady() && transform != null && transform.getWorldMatrix() != null;
+        drawList.update(this, drawable);
+        if (!drawable) {
+            return;
+        }
+
+        if (localBounds != model.getBounds() || transform != lastTransform
+                || transform.getVersion() != lastVersion) {
+            // A model appearing or changing transform is placed rather than moved there
+            moving = transform == lastTransform;
+            previousMatrix.set(moving ? modelMatrix : transform.getWorldMatrix());
+            lastTransform = transform;
+            lastVersion = transform.getVersion();
+            modelMatrix.set(transform.getWorldMatrix());
+            updateWorldBounds();
+        } else if (moving) {
+            previousMatrix.set(modelMatrix);
+            moving = false;
+        }
+
+        if (model.getLodCount() > 1) {
+            selectLod(camera);
         }
     }
 
-    public void updateModelMatrix() {
-        TransformComponent transform = entity.getComponent(TransformComponent.class);
+    private void updateWorldBounds() {
+        localBounds = model.getBounds();
+        localBounds.transform(modelMatrix, worldBounds);
+    }
+
+    /**
+     * Picks the level of detail from the share of the screen height covered by the bounding sphere. Moving to a
+     * coarser level needs the size to drop a little below its threshold and moving back a little above it, so
+     * models sitting right at a threshold do not pop between levels every frame. Shadow passes use a coarser level.
+     */
+    public void selectLod(Camera camera) {
+        float radius = worldBounds.radius;
 
-        modelMatrix.identity().translate(transform.pos).
-                rotateX((float) Math.toRadians(transform.rotation.x)).
-                rotateY((float) Math.toRadians(transform.rotation.y)).
-                rotateZ((float) Math.toRadians(transform.rotation.z)).
-                scale(transform.scale);
+        float screenSize;
+        if (camera.getPerspective() == Camera.Perspective.NORMAL) {
+            float distance = worldBounds.centre.distance(camera.getPosition());
+            float tanHalfFov = (float) Math.tan(Math.toRadians(camera.getZoom()) * 0.5);
+            screenSize = distance > radius ? radius / (distance * tanHalfFov) : Float.MAX_VALUE;
+        } else {
+            screenSize = radius / (camera.getZoom() / 60f);
+        }
 
+        int coarsest = Math.min(model.getLodCount() - 1, LOD_SCREEN_SIZES.length);
+        lod = Math.min(lod, coarsest);
+        while (lod < coarsest && screenSize < LOD_SCREEN_SIZES[lod] * (1 - LOD_HYSTERESIS)) {
+            lod++;
+        }
+        while (lod > 0 && screenSize > LOD_SCREEN_SIZES[lod - 1] * (1 + LOD_HYSTERESIS)) {
+            lod--;
+        }
+        shadowLod = Math.min(lod + SHADOW_LOD_BIAS, model.getLodCount() - 1);
     }
 }
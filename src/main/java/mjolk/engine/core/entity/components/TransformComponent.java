@@ -1,18 +1,144 @@
 package mjolk.engine.core.entity.components;
 
 import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.PackedComponent;
 import mjolk.engine.core.entity.Scene;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
-public class TransformComponent extends Component {
-    public Vector3f pos;
-    public Vector3f rotation;
-    public float scale;
+/**
+ * Position, rotation in degrees and uniform scale relative to an optional parent transform, packed into float
+ * columns. The local and world matrices are kept by the {@link TransformHierarchy} of the scene, which only rebuilds
+ * them for transforms marked dirty and the subtrees below them.
+ */
+public class TransformComponent extends PackedComponent {
+
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int Z = 2;
+    public static final int ROTATION_X = 3;
+    public static final int ROTATION_Y = 4;
+    public static final int ROTATION_Z = 5;
+    public static final int SCALE = 6;
+    /** Non zero once any of the other fields changed, until the hierarchy rebuilt the matrices */
+    public static final int DIRTY = 7;
+    public static final int FIELDS = 8;
+
+    TransformComponent parent;
+    /** The hierarchy the transform is part of and its node there, null and -1 while not in a scene */
+    TransformHierarchy hierarchy;
+    int node = -1;
+    /** The parent the node was last linked to, null for roots */
+    TransformComponent linkedParent;
+    int version;
+    /** The transforms with this one as parent, in a scene or not */
+    int children;
 
     public TransformComponent(Vector3f pos, Vector3f rotation, float scale) {
-        this.pos = pos;
-        this.rotation = rotation;
-        this.scale = scale;
+        // In field order, starting dirty
+        super(new float[]{pos.x, pos.y, pos.z, rotation.x, rotation.y, rotation.z, scale, 1});
+    }
+
+    public Vector3f getPosition(Vector3f dest) {
+        return dest.set(get(X), get(Y), get(Z));
+    }
+
+    public void setPosition(Vector3f pos) {
+        setPosition(pos.x, pos.y, pos.z);
+    }
+
+    public void setPosition(float x, float y, float z) {
+        set(X, x);
+        set(Y, y);
+        set(Z, z);
+        markDirty();
+    }
+
+    public Vector3f getRotation(Vector3f dest) {
+        return dest.set(get(ROTATION_X), get(ROTATION_Y), get(ROTATION_Z));
+    }
+
+    public void setRotation(Vector3f rotation) {
+        setRotation(rotation.x, rotation.y, rotation.z);
+    }
+
+    public void setRotation(float x, float y, float z) {
+        set(ROTATION_X, x);
+        set(ROTATION_Y, y);
+        set(ROTATION_Z, z);
+        markDirty();
+    }
+
+    public float getScale() {
+        return get(SCALE);
+    }
+
+    public void setScale(float scale) {
+        set(SCALE, scale);
+        markDirty();
+    }
+
+    public TransformComponent getParent() {
+        return parent;
+    }
+
+    /**
+     * Makes the transform relative to another, or to the world with null. A parent that is not in the same scene
+     * is ignored until it is.
+     */
+    public void setParent(TransformComponent parent) {
+        for (TransformComponent p = parent; p != null; p = p.parent) {
+            if (p == this) {
+                throw new IllegalArgumentException("Transform would become its own ancestor");
+            }
+        }
+        if (this.parent != null) {
+            this.parent.children--;
+        }
+        if (parent != null) {
+            parent.children++;
+        }
+        this.parent = parent;
+        if (hierarchy != null) {
+            hierarchy.structureChanged = true;
+        }
+    }
+
+    /**
+     * @return the transform from the entity to world space as of the last hierarchy update, null until the first
+     * update after the transform entered a scene. Not to be modified.
+     */
+    public Matrix4f getWorldMatrix() {
+        return hierarchy == null || node < 0 ? null : hierarchy.world[node];
+    }
+
+    /**
+     * @return a number that changes every time the world matrix is rebuilt
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isDirty() {
+        return get(DIRTY) != 0;
+    }
+
+    /**
+     * Flags the transform for the hierarchy to rebuild, needed after writing its columns directly
+     */
+    public void markDirty() {
+        set(DIRTY, 1);
+    }
+
+    /**
+     * Builds the local matrix from the fields and clears the dirty flag
+     */
+    void buildLocalMatrix(Matrix4f dest) {
+        dest.rotationXYZ((float) Math.toRadians(get(ROTATION_X)), (float) Math.toRadians(get(ROTATION_Y)),
+                        (float) Math.toRadians(get(ROTATION_Z)))
+                .scale(get(SCALE))
+                .setTranslation(get(X), get(Y), get(Z));
+        set(DIRTY, 0);
     }
 
     @Override
@@ -22,12 +148,6 @@ public class TransformComponent extends Component {
 
     @Override
     public void update(float deltaTime, Scene scene) {
-        if (entity.hasComponent(MoveableComponent.class)) {
-            MoveableComponent moveableComponent = entity.getComponent(MoveableComponent.class);
-            System.out.println(moveableComponent.positionVelocity);
-            pos.add(moveableComponent.positionVelocity.mul(deltaTime));
-            rotation.add(moveableComponent.angularVelocity.mul(deltaTime));
-            scale += moveableComponent.scaleVelocity * deltaTime;
-        }
+        // Moved by the movement system and rebuilt by the hierarchy, over all transforms at once
     }
 }
@@ -0,0 +1,258 @@
+package mjolk.engine.core.entity.components;
+
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.ComponentListener;
+import mjolk.engine.core.entity.Query;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The transforms of a scene as a tree, with the local and world matrix of every node cached.
+ * <p>
+ * Nodes are kept in arrays sorted by depth, so every parent comes before its children and one pass from the front
+ * brings all world matrices up to date. A node is only rebuilt when its transform is dirty or its parent was rebuilt
+ * in the same pass. Before the pass the dirty flags are scanned straight from the transform columns, so a scene
+ * where nothing moved skips the pass altogether. The arrays are sorted again when transforms change parents, or
+ * join or leave with children; transforms without parent or children are appended on joining and leave a gap on
+ * leaving, until gaps make up half the nodes.
+ */
+public class TransformHierarchy implements ComponentListener {
+
+    private final Query query;
+    private final Set<TransformComponent> members = new LinkedHashSet<>();
+    boolean structureChanged;
+
+    // Indexed by node, in depth order
+    private TransformComponent[] nodes = new TransformComponent[0];
+    private int[] parents = new int[0];
+    private Matrix4f[] local = new Matrix4f[0];
+    Matrix4f[] world = new Matrix4f[0];
+    private boolean[] changed = new boolean[0];
+    /** Nodes including gaps left by removed transforms */
+    private int nodeCount;
+    private int gaps;
+    private int rebuilt;
+
+    /**
+     * @param query the query for transforms in the storage the hierarchy belongs to
+     */
+    public TransformHierarchy(Query query) {
+        this.query = query;
+    }
+
+    @Override
+    public void added(Component component) {
+        if (component instanceof TransformComponent transform) {
+            add(transform);
+        }
+    }
+
+    @Override
+    public void removed(Component component) {
+        if (component instanceof TransformComponent transform) {
+            remove(transform);
+        }
+    }
+
+    /**
+     * Adds a transform whose entity entered the storage of the scene
+     */
+    public void add(TransformComponent transform) {
+        if (transform.hierarchy == this) {
+            return;
+        }
+        transform.hierarchy = this;
+        transform.node = -1;
+        transform.linkedParent = null;
+        transform.markDirty();
+        members.add(transform);
+        if (!structureChanged && transform.parent == null && transform.children == 0) {
+            append(transform);
+        } else {
+            structureChanged = true;
+        }
+    }
+
+    /**
+     * Removes a transform whose entity left the storage of the scene. Its children become roots until it returns.
+     */
+    public void remove(TransformComponent transform) {
+        if (transform.hierarchy != this) {
+            return;
+        }
+        members.remove(transform);
+        if (!structureChanged && transform.children == 0) {
+            nodes[transform.node] = null;
+            if (++gaps > nodeCount / 2) {
+                structureChanged = true;
+            }
+        } else {
+            structureChanged = true;
+        }
+        transform.hierarchy = null;
+        transform.node = -1;
+    }
+
+    private void append(TransformComponent transform) {
+        if (nodeCount == nodes.length) {
+            int capacity = Math.max(16, nodeCount * 2);
+            nodes = Arrays.copyOf(nodes, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            local = Arrays.copyOf(local, capacity);
+            world = Arrays.copyOf(world, capacity);
+            changed = Arrays.copyOf(changed, capacity);
+        }
+        int node = nodeCount++;
+        nodes[node] = transform;
+        parents[node] = -1;
+        local[node] = new Matrix4f();
+        world[node] = new Matrix4f();
+        transform.node = node;
+    }
+
+    /**
+     * Brings every world matrix up to date
+     */
+    public void update() {
+        rebuilt = 0;
+        if (structureChanged) {
+            sort();
+        } else if (!anyDirty()) {
+            return;
+        }
+
+        for (int i = 0; i < nodeCount; i++) {
+            TransformComponent transform = nodes[i];
+            if (transform == null) {
+                changed[i] = false;
+                continue;
+            }
+            int parent = parents[i];
+            boolean dirty = transform.isDirty();
+            if (dirty) {
+                transform.buildLocalMatrix(local[i]);
+            }
+            if (dirty || parent >= 0 && changed[parent]) {
+                if (parent < 0) {
+                    world[i].set(local[i]);
+                } else {
+                    world[parent].mulAffine(local[i], world[i]);
+                }
+                transform.version++;
+                changed[i] = true;
+                rebuilt++;
+            } else {
+                changed[i] = false;
+            }
+        }
+    }
+
+    private boolean anyDirty() {
+        for (int a = 0; a < query.getArchetypeCount(); a++) {
+            List<Chunk> chunks = query.getArchetype(a).getChunks();
+            for (int c = 0; c < chunks.size(); c++) {
+                Chunk chunk = chunks.get(c);
+                float[] dirty = chunk.getField(query.getColumn(a, 0), TransformComponent.DIRTY);
+                for (int row = 0; row < chunk.size(); row++) {
+                    if (dirty[row] != 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the nodes by depth with a counting sort, carrying the cached matrices along
+     */
+    private void sort() {
+        structureChanged = false;
+        TransformComponent[] transforms = members.toArray(new TransformComponent[0]);
+        int count = transforms.length;
+        int[] depths = new int[count];
+        int maxDepth = 0;
+        for (int i = 0; i < count; i++) {
+            depths[i] = depth(transforms[i]);
+            maxDepth = Math.max(maxDepth, depths[i]);
+        }
+
+        int[] starts = new int[maxDepth + 2];
+        for (int depth : depths) {
+            starts[depth + 1]++;
+        }
+        for (int depth = 1; depth < starts.length; depth++) {
+            starts[depth] += starts[depth - 1];
+        }
+
+        TransformComponent[] sorted = new TransformComponent[count];
+        Matrix4f[] sortedLocal = new Matrix4f[count];
+        Matrix4f[] sortedWorld = new Matrix4f[count];
+        for (int i = 0; i < count; i++) {
+            TransformComponent transform = transforms[i];
+            int node = starts[depths[i]]++;
+            sorted[node] = transform;
+            if (transform.node >= 0) {
+                sortedLocal[node] = local[transform.node];
+                sortedWorld[node] = world[transform.node];
+            } else {
+                sortedLocal[node] = new Matrix4f();
+                sortedWorld[node] = new Matrix4f();
+            }
+        }
+
+        // Nodes are renumbered only once the old numbers have been used to carry the matrices
+        for (int node = 0; node < count; node++) {
+            sorted[node].node = node;
+        }
+        if (parents.length != count) {
+            parents = new int[count];
+            changed = new boolean[count];
+        }
+        for (int node = 0; node < count; node++) {
+            TransformComponent transform = sorted[node];
+            TransformComponent parent = linkedParent(transform);
+            parents[node] = parent == null ? -1 : parent.node;
+            if (parent != transform.linkedParent) {
+                transform.linkedParent = parent;
+                transform.markDirty();
+            }
+        }
+        nodes = sorted;
+        local = sortedLocal;
+        world = sortedWorld;
+        nodeCount = count;
+        gaps = 0;
+    }
+
+    private int depth(TransformComponent transform) {
+        int depth = 0;
+        for (TransformComponent p = linkedParent(transform); p != null; p = linkedParent(p)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return the parent of a transform if it is in this hierarchy as well, otherwise null
+     */
+    private TransformComponent linkedParent(TransformComponent transform) {
+        TransformComponent parent = transform.parent;
+        return parent != null && parent.hierarchy == this ? parent : null;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return the number of nodes whose world matrix was rebuilt by the last update
+     */
+    public int getRebuiltCount() {
+        return rebuilt;
+    }
+}
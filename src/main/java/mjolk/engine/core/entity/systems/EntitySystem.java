@@ -0,0 +1,118 @@
+package mjolk.engine.core.entity.systems;
+
+import mjolk.engine.core.entity.ArchetypeStorage;
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.ComponentMask;
+import mjolk.engine.core.entity.ComponentTypes;
+import mjolk.engine.core.entity.Query;
+import mjolk.engine.core.entity.components.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logic that runs every update over the entities with a set of component types.
+ * <p>
+ * A system declares the component types it reads and writes in an {@link Access} handed to its constructor. The
+ * {@link SystemScheduler} runs systems whose declarations do not conflict at the same time, and splits the rows a
+ * system matches into batches that may run on different threads, so {@link #update(Chunk, int, int, int, float)}
+ * must only touch the rows it is given and only the component types it declared.
+ */
+public abstract class EntitySystem {
+
+    /**
+     * The component types a system reads and writes. The types matching entities must have are numbered in the order
+     * they are declared, from 0, for {@link #column(int, int)}.
+     */
+    public static class Access {
+        private final ComponentMask reads = new ComponentMask();
+        private final ComponentMask writes = new ComponentMask();
+        private final List<Class<? extends Component>> required = new ArrayList<>();
+
+        /**
+         * Declares a component type the system reads, which matching entities must have
+         */
+        public Access reads(Class<? extends Component> type) {
+            reads.set(ComponentTypes.id(type));
+            required.add(type);
+            return this;
+        }
+
+        /**
+         * Declares a component type the system writes, which matching entities must have
+         */
+        public Access writes(Class<? extends Component> type) {
+            writes.set(ComponentTypes.id(type));
+            required.add(type);
+            return this;
+        }
+
+        /**
+         * Declares a component type the system reads where entities have it, without requiring it
+         */
+        public Access readsOptional(Class<? extends Component> type) {
+            reads.set(ComponentTypes.id(type));
+            return this;
+        }
+    }
+
+    private final ComponentMask reads;
+    private final ComponentMask writes;
+    private final List<Class<? extends Component>> required;
+    private Query query;
+
+    protected EntitySystem(Access access) {
+        this.reads = access.reads.copy();
+        this.writes = access.writes.copy();
+        this.required = List.copyOf(access.required);
+    }
+
+    void attach(ArchetypeStorage storage) {
+        query = storage.query(required);
+    }
+
+    /**
+     * Called once per update on the updating thread before any batch of the system runs
+     */
+    public void begin(float delta) {
+    }
+
+    /**
+     * Updates rows {@code [start, end)} of a chunk
+     * @param archetype the index of the chunk's archetype in the query of the system
+     */
+    public abstract void update(Chunk chunk, int archetype, int start, int end, float delta);
+
+    /**
+     * Called once per update on the updating thread after every batch of the system has run
+     */
+    public void end() {
+    }
+
+    /**
+     * @return whether the rows may be split into batches on several threads, false for systems that write state
+     * outside their components
+     */
+    public boolean isSplittable() {
+        return true;
+    }
+
+    /**
+     * @param type the number of a required type in the {@link Access} of the system
+     * @return the column of the type in one of the matching archetypes
+     */
+    protected final int column(int archetype, int type) {
+        return query.getColumn(archetype, type);
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    /**
+     * @return whether the two systems may not run at the same time: one writes a type the other reads or writes
+     */
+    boolean conflictsWith(EntitySystem other) {
+        return writes.intersects(other.reads) || writes.intersects(other.writes) || other.writes.intersects(reads);
+    }
+}
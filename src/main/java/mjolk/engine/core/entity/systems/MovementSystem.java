@@ -0,0 +1,55 @@
+package mjolk.engine.core.entity.systems;
+
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.components.MoveableComponent;
+import mjolk.engine.core.entity.components.TransformComponent;
+
+/**
+ * Applies the velocities of every moveable entity to its transform, straight over the columns, and flags the
+ * transforms that moved for the hierarchy
+ */
+public class MovementSystem extends EntitySystem {
+
+    private static final int TRANSFORM = 0;
+    private static final int MOVEABLE = 1;
+
+    public MovementSystem() {
+        super(new Access().writes(TransformComponent.class).reads(MoveableComponent.class));
+    }
+
+    @Override
+    public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+        int t = column(archetype, TRANSFORM);
+        int m = column(archetype, MOVEABLE);
+        float[] x = chunk.getField(t, TransformComponent.X);
+        float[] y = chunk.getField(t, TransformComponent.Y);
+        float[] z = chunk.getField(t, TransformComponent.Z);
+        float[] rotationX = chunk.getField(t, TransformComponent.ROTATION_X);
+        float[] rotationY = chunk.getField(t, TransformComponent.ROTATION_Y);
+        float[] rotationZ = chunk.getField(t, TransformComponent.ROTATION_Z);
+        float[] scale = chunk.getField(t, TransformComponent.SCALE);
+        float[] dirty = chunk.getField(t, TransformComponent.DIRTY);
+        float[] velocityX = chunk.getField(m, MoveableComponent.VELOCITY_X);
+        float[] velocityY = chunk.getField(m, MoveableComponent.VELOCITY_Y);
+        float[] velocityZ = chunk.getField(m, MoveableComponent.VELOCITY_Z);
+        float[] angularX = chunk.getField(m, MoveableComponent.ANGULAR_X);
+        float[] angularY = chunk.getField(m, MoveableComponent.ANGULAR_Y);
+        float[] angularZ = chunk.getField(m, MoveableComponent.ANGULAR_Z);
+        float[] scaleVelocity = chunk.getField(m, MoveableComponent.SCALE_VELOCITY);
+
+        for (int i = start; i < end; i++) {
+            if (velocityX[i] == 0 && velocityY[i] == 0 && velocityZ[i] == 0 && angularX[i] == 0
+                    && angularY[i] == 0 && angularZ[i] == 0 && scaleVelocity[i] == 0) {
+                continue;
+            }
+            x[i] += velocityX[i] * delta;
+            y[i] += velocityY[i] * delta;
+            z[i] += velocityZ[i] * delta;
+            rotationX[i] += angularX[i] * delta;
+            rotationY[i] += angularY[i] * delta;
+            rotationZ[i] += angularZ[i] * delta;
+            scale[i] += scaleVelocity[i] * delta;
+            dirty[i] = 1;
+        }
+    }
+}
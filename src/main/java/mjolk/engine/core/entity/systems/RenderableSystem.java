@@ -0,0 +1,45 @@
+package mjolk.engine.core.entity.systems;
+
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.ComponentTypes;
+import mjolk.engine.core.entity.components.Component;
+import mjolk.engine.core.entity.components.RenderableComponent;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.graphics.camera.Camera;
+import mjolk.engine.graphics.rendering.DrawList;
+
+/**
+ * Updates the draw list entry of every renderable with the transform from its row, picking levels of detail for the
+ * camera of the scene. Not split, as it writes the draw list.
+ */
+public class RenderableSystem extends EntitySystem {
+
+    private final DrawList drawList;
+    private final int transformType = ComponentTypes.id(TransformComponent.class);
+    private Camera camera;
+
+    public RenderableSystem(DrawList drawList) {
+        super(new Access().writes(RenderableComponent.class).readsOptional(TransformComponent.class));
+        this.drawList = drawList;
+    }
+
+    public void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    @Override
+    public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+        Component[] renderables = chunk.getComponents(column(archetype, 0));
+        int transform = chunk.getArchetype().indexOf(transformType);
+        Component[] transforms = transform < 0 ? null : chunk.getComponents(transform);
+        for (int i = start; i < end; i++) {
+            ((RenderableComponent) renderables[i]).update(
+                    transforms == null ? null : (TransformComponent) transforms[i], drawList, camera);
+        }
+    }
+
+    @Override
+    public boolean isSplittable() {
+        return false;
+    }
+}
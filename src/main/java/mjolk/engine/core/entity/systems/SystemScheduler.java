@@ -0,0 +1,209 @@
+package mjolk.engine.core.entity.systems;
+
+import mjolk.engine.core.entity.ArchetypeStorage;
+import mjolk.engine.core.entity.Chunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the systems of a scene every update, in parallel where their declared access allows.
+ * <p>
+ * Systems are placed in stages: a system goes one stage after the last system added before it that it conflicts
+ * with, so conflicting systems always run in the order they were added and a system only waits for what it depends
+ * on. The stages are rebuilt when systems are added. Within a stage the rows of every system are cut into batches,
+ * and all batches of the stage run on a fork join pool; the next stage starts once they are done. As every batch
+ * writes only its own rows and conflicting systems never share a stage, the results do not depend on the number of
+ * threads or the order batches finish in.
+ * <p>
+ * The storage is locked while the systems run, so entities and components can only be added or removed through the
+ * command buffers of the scene.
+ */
+public class SystemScheduler {
+
+    /** Rows per batch when a system is split, a whole chunk by default */
+    public static final int BATCH_ROWS = Chunk.CAPACITY;
+
+    private final ArchetypeStorage storage;
+    private final ForkJoinPool pool;
+    private final List<EntitySystem> systems = new ArrayList<>();
+    private final List<List<EntitySystem>> stages = new ArrayList<>();
+    private boolean parallel = true;
+    private int batchRows = BATCH_ROWS;
+
+    // The batches of the running stage, reused every update
+    private EntitySystem[] batchSystems = new EntitySystem[64];
+    private Chunk[] batchChunks = new Chunk[64];
+    private int[] batchRanges = new int[64 * 3];
+    private int batchCount;
+    private float delta;
+
+    public SystemScheduler(ArchetypeStorage storage) {
+        this(storage, ForkJoinPool.commonPool());
+    }
+
+    public SystemScheduler(ArchetypeStorage storage, ForkJoinPool pool) {
+        this.storage = storage;
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a system after the ones already added
+     */
+    public void add(EntitySystem system) {
+        system.attach(storage);
+        systems.add(system);
+
+        int stage = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            for (EntitySystem other : stages.get(i)) {
+                if (system.conflictsWith(other)) {
+                    stage = i + 1;
+                }
+            }
+        }
+        if (stage == stages.size()) {
+            stages.add(new ArrayList<>());
+        }
+        stages.get(stage).add(system);
+    }
+
+    public void update(float delta) {
+        this.delta = delta;
+        storage.setLocked(true);
+        try {
+            runStages();
+        } finally {
+            storage.setLocked(false);
+        }
+    }
+
+    private void runStages() {
+        for (List<EntitySystem> stage : stages) {
+            batchCount = 0;
+            for (EntitySystem system : stage) {
+                system.begin(delta);
+                collectBatches(system);
+            }
+
+            // With a single core the pool would only add hand over costs
+            if (parallel && batchCount > 1 && Runtime.getRuntime().availableProcessors() > 1) {
+                pool.invoke(new BatchTask(0, batchCount));
+            } else {
+                for (int batch = 0; batch < batchCount; batch++) {
+                    run(batch);
+                }
+            }
+
+            for (EntitySystem system : stage) {
+                system.end();
+            }
+        }
+    }
+
+    private void collectBatches(EntitySystem system) {
+        if (system.getQuery().size() == 0) {
+            return;
+        }
+        if (!system.isSplittable()) {
+            // One batch without a chunk stands for all rows, run in order on one thread
+            addBatch(system, null, -1, 0, 0);
+            return;
+        }
+
+        for (int a = 0; a < system.getQuery().getArchetypeCount(); a++) {
+            List<Chunk> chunks = system.getQuery().getArchetype(a).getChunks();
+            for (int c = 0; c < chunks.size(); c++) {
+                Chunk chunk = chunks.get(c);
+                for (int start = 0; start < chunk.size(); start += batchRows) {
+                    addBatch(system, chunk, a, start, Math.min(chunk.size(), start + batchRows));
+                }
+            }
+        }
+    }
+
+    private void addBatch(EntitySystem system, Chunk chunk, int archetype, int start, int end) {
+        if (batchCount == batchSystems.length) {
+            batchSystems = Arrays.copyOf(batchSystems, batchCount * 2);
+            batchChunks = Arrays.copyOf(batchChunks, batchCount * 2);
+            batchRanges = Arrays.copyOf(batchRanges, batchCount * 2 * 3);
+        }
+        batchSystems[batchCount] = system;
+        batchChunks[batchCount] = chunk;
+        batchRanges[batchCount * 3] = archetype;
+        batchRanges[batchCount * 3 + 1] = start;
+        batchRanges[batchCount * 3 + 2] = end;
+        batchCount++;
+    }
+
+    private void run(int batch) {
+        EntitySystem system = batchSystems[batch];
+        Chunk chunk = batchChunks[batch];
+        if (chunk != null) {
+            system.update(chunk, batchRanges[batch * 3], batchRanges[batch * 3 + 1], batchRanges[batch * 3 + 2],
+                    delta);
+            return;
+        }
+
+        for (int a = 0; a < system.getQuery().getArchetypeCount(); a++) {
+            List<Chunk> chunks = system.getQuery().getArchetype(a).getChunks();
+            for (int c = 0; c < chunks.size(); c++) {
+                system.update(chunks.get(c), a, 0, chunks.get(c).size(), delta);
+            }
+        }
+    }
+
+    /**
+     * Runs a range of batches, halving it until single batches are left
+     */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int first, last;
+
+        BatchTask(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                run(first);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new BatchTask(first, middle), new BatchTask(middle, last));
+        }
+    }
+
+    public List<EntitySystem> getSystems() {
+        return systems;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel false runs every batch on the updating thread, with the same results
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public int getBatchRows() {
+        return batchRows;
+    }
+
+    public void setBatchRows(int batchRows) {
+        this.batchRows = Math.max(1, batchRows);
+    }
+}
@@ -0,0 +1,34 @@
+package mjolk.engine.core.entity.systems;
+
+import mjolk.engine.core.entity.ArchetypeStorage;
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.core.entity.components.TransformHierarchy;
+
+/**
+ * Brings the world matrices of the scene up to date once the transforms have been moved. The hierarchy is walked in
+ * depth order in {@link #begin(float)} rather than by chunk, parents before children.
+ */
+public class TransformSystem extends EntitySystem {
+
+    private final TransformHierarchy hierarchy;
+
+    public TransformSystem(ArchetypeStorage storage) {
+        super(new Access().writes(TransformComponent.class));
+        this.hierarchy = storage.getTransforms();
+    }
+
+    @Override
+    public void begin(float delta) {
+        hierarchy.update();
+    }
+
+    @Override
+    public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+    }
+
+    @Override
+    public boolean isSplittable() {
+        return false;
+    }
+}
@@ -10,17 +10,26 @@ import org.lwjgl.glfw.GLFWErrorCallback;
 
 import java.util.logging.Logger;
 
+/**
+ * Runs the game loop. The simulation advances in fixed ticks, as many per frame as the elapsed time calls for, while
+ * frames are rendered as fast as the window allows, with the share of a tick that has passed since the last one
+ * handed to the renderer to interpolate between the last two ticks.
+ */
 public class EngineManager {
 
     private static final Logger LOGGER = Logger.getLogger(EngineManager.class.getName());
 
     public static final long NANOSECOND = 1000000000L;
-    public static final float FRAMERATE = 120;
+    public static final float DEFAULT_TICK_RATE = 60;
+    /** Ticks run per frame at most, time beyond them is dropped so a slow frame cannot snowball */
+    public static final int DEFAULT_MAX_CATCH_UP_TICKS = 5;
 
     private static int fps;
-    private static float frameTime = 1.0f / FRAMERATE;
 
     private boolean isRunning;
+    private float tickRate = DEFAULT_TICK_RATE;
+    private int maxCatchUpTicks = DEFAULT_MAX_CATCH_UP_TICKS;
+    private long droppedTicks;
 
     private WindowManager window;
     private GLFWErrorCallback errorCallback;
@@ -49,17 +58,30 @@ public class EngineManager {
     public void run() throws Exception {
         this.isRunning = true;
         long lastTime = System.nanoTime();
+        float accumulator = 0;
 
         while (isRunning) {
             long now = System.nanoTime();
-            float delta = (now - lastTime) / (float) NANOSECOND;
+            float frameTime = (now - lastTime) / (float) NANOSECOND;
             lastTime = now;
+            float tickTime = 1 / tickRate;
+            accumulator += frameTime;
 
             GLFW.glfwPollEvents();
-            input(delta);
+            input(frameTime);
 
-            update(delta);
-            render();
+            int ticks = 0;
+            while (accumulator >= tickTime && ticks < maxCatchUpTicks) {
+                update(tickTime);
+                accumulator -= tickTime;
+                ticks++;
+            }
+            if (accumulator >= tickTime) {
+                droppedTicks += (long) (accumulator / tickTime);
+                accumulator %= tickTime;
+            }
+
+            render(accumulator / tickTime);
 
             GLFW.glfwSwapBuffers(window.getWindow());
 
@@ -82,17 +104,22 @@ public class EngineManager {
         mouseInput.input();
     }
 
-    public void render() throws Exception {
-        gameLogic.render();
+    /**
+     * @param alpha how far the frame lies between the last tick and the next, from 0 to 1
+     */
+    public void render(float alpha) throws Exception {
+        fpsCounter.update();
+        fps = fpsCounter.getFPS();
+        window.setTitle("fps: " + fps);
+
+        gameLogic.render(alpha);
         window.update();
     }
 
     private void update(float interval) {
-        fpsCounter.update();
-        fps =  fpsCounter.getFPS();
-
         gameLogic.update(interval, mouseInput);
-        window.setTitle("fps: " + fps);
+        // Mouse movement is gathered over frames until a tick has used it
+        mouseInput.clearDisplayVec();
     }
 
     private void cleanup() {
@@ -102,6 +129,32 @@ public class EngineManager {
         GLFW.glfwTerminate();
     }
 
+    public float getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * @param tickRate simulation ticks per second, independent of the frame rate
+     */
+    public void setTickRate(float tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+        this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+    }
+
+    /**
+     * @return the ticks skipped so far because frames took longer than the catch up limit
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
     public static int getFps() {
         return fps;
     }
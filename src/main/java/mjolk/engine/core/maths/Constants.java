@@ -13,6 +13,17 @@ public class Constants {
     public static final float MOUSE_SENSITIVITY = 50f;
     public static final float CAMERA_STEP = 1f;
 
+    // Share of the screen height a model has to drop below before switching to the next coarser level of detail
+    public static final float[] LOD_SCREEN_SIZES = {0.5f, 0.25f, 0.12f};
+    public static final float LOD_HYSTERESIS = 0.1f;
+    public static final int SHADOW_LOD_BIAS = 1;
+
+    // Main thread time per frame the asset loader may spend uploading finished loads to the GPU
+    public static final float UPLOAD_BUDGET_MS = 2f;
+
+    // GPU memory loaded textures may take before unused ones are evicted
+    public static final int TEXTURE_BUDGET_MB = 512;
+
     public static final Vector4f DEFAULT_COLOUR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
 
     public static final Vector3f AMBIENT_LIGHT = new Vector3f(0.3f, 0.3f, 0.3f);
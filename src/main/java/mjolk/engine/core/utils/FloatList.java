@@ -0,0 +1,87 @@
+package mjolk.engine.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive floats, used where boxing into a List&lt;Float&gt; would be too costly
+ */
+public class FloatList {
+
+    private float[] data;
+    private int size;
+
+    public FloatList() {
+        this(16);
+    }
+
+    public FloatList(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(float a, float b) {
+        if (size + 2 > data.length) {
+            grow(size + 2);
+        }
+        data[size++] = a;
+        data[size++] = b;
+    }
+
+    public void add(float a, float b, float c) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(FloatList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Gives direct access to the backing array, only the first {@link #size()} values are valid
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int minCapacity) {
+        data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+    }
+}
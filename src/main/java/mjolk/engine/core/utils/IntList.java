@@ -0,0 +1,94 @@
+package mjolk.engine.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used where boxing into a List&lt;Integer&gt; would be too costly
+ */
+public class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(int a, int b) {
+        if (size + 2 > data.length) {
+            grow(size + 2);
+        }
+        data[size++] = a;
+        data[size++] = b;
+    }
+
+    public void add(int a, int b, int c) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(IntList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes the value at the index by moving the last value into its place, the order is not kept
+     */
+    public void swapRemove(int index) {
+        data[index] = data[--size];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Gives direct access to the backing array, only the first {@link #size()} values are valid
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int minCapacity) {
+        data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+    }
+}
@@ -6,9 +6,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -51,9 +54,7 @@ public class Utils {
         }
     }
 
-    public static List<String> readAllLines(String fileName) throws Exception {
-        List<String> lines = new ArrayList<>();
-
+    public static InputStream openResource(String fileName) {
         InputStream is = Utils.class
                 .getClassLoader()
                 .getResourceAsStream(fileName);
@@ -62,6 +63,28 @@ public class Utils {
             throw new RuntimeException("Resource not found: " + fileName);
         }
 
+        return is;
+    }
+
+    /**
+     * Resolves a resource to a file on disk
+     * @return the path, or null when the resource only exists inside an archive
+     */
+    public static Path getResourcePath(String fileName) throws URISyntaxException {
+        URL url = Utils.class.getClassLoader().getResource(fileName);
+
+        if (url == null) {
+            throw new RuntimeException("Resource not found: " + fileName);
+        }
+
+        return "file".equals(url.getProtocol()) ? Path.of(url.toURI()) : null;
+    }
+
+    public static List<String> readAllLines(String fileName) throws Exception {
+        List<String> lines = new ArrayList<>();
+
+        InputStream is = openResource(fileName);
+
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(is, StandardCharsets.UTF_8))) {
 
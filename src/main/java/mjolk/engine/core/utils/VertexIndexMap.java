@@ -0,0 +1,130 @@
+package mjolk.engine.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from a (position, texture, normal) reference triple to a vertex index, used by the mesh
+ * importers to deduplicate face corners. Keys are stored inline in a primitive array, so lookups and inserts do
+ * not allocate unless the table has to grow.
+ */
+public class VertexIndexMap {
+
+    private static final int EMPTY = -1;
+    private static final float MAX_LOAD = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedEntries number of unique triples expected, the face corner count is a safe upper bound
+     */
+    public VertexIndexMap(int expectedEntries) {
+        allocate(capacityFor(expectedEntries));
+    }
+
+    /**
+     * Returns the index stored for the triple, storing {@code index} first if the triple is new
+     * @param index the index to store when the triple is not present, must not be negative
+     * @return the index stored for the triple
+     */
+    public int putIfAbsent(int pos, int tex, int norm, int index) {
+        int slot = hash(pos, tex, norm) & mask;
+        while (true) {
+            int value = values[slot];
+            if (value == EMPTY) {
+                break;
+            }
+            int k = slot * 3;
+            if (keys[k] == pos && keys[k + 1] == tex && keys[k + 2] == norm) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, pos, tex, norm, index);
+        return index;
+    }
+
+    /**
+     * @return the index stored for the triple, or -1 if it is not present
+     */
+    public int get(int pos, int tex, int norm) {
+        int slot = hash(pos, tex, norm) & mask;
+        while (true) {
+            int value = values[slot];
+            if (value == EMPTY) {
+                return EMPTY;
+            }
+            int k = slot * 3;
+            if (keys[k] == pos && keys[k + 1] == tex && keys[k + 2] == norm) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, EMPTY);
+        size = 0;
+    }
+
+    private void insert(int slot, int pos, int tex, int norm, int index) {
+        int k = slot * 3;
+        keys[k] = pos;
+        keys[k + 1] = tex;
+        keys[k + 2] = norm;
+        values[slot] = index;
+
+        if (++size > resizeThreshold) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(oldValues.length * 2);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] == EMPTY) continue;
+
+            int k = slot * 3;
+            int pos = oldKeys[k], tex = oldKeys[k + 1], norm = oldKeys[k + 2];
+            int target = hash(pos, tex, norm) & mask;
+            while (values[target] != EMPTY) {
+                target = (target + 1) & mask;
+            }
+
+            int t = target * 3;
+            keys[t] = pos;
+            keys[t + 1] = tex;
+            keys[t + 2] = norm;
+            values[target] = oldValues[slot];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity * 3];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD);
+    }
+
+    private static int capacityFor(int expectedEntries) {
+        long needed = (long) Math.ceil(Math.max(expectedEntries, 8) / MAX_LOAD) + 1;
+        return (int) Math.min(1L << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static int hash(int pos, int tex, int norm) {
+        int h = pos * 0x9E3779B1 + tex * 0x85EBCA77 + norm * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+}
@@ -72,6 +72,27 @@ public class Camera {
         this.rotation.z += z;
     }
 
+    /**
+     * Copies the position, rotation, zoom and perspective of another camera
+     */
+    public void set(Camera other) {
+        position.set(other.position);
+        rotation.set(other.rotation);
+        zoom = other.zoom;
+        perspective = other.perspective;
+    }
+
+    /**
+     * Sets the camera between two others, for drawing between two simulation ticks
+     * @param alpha 0 for {@code from}, 1 for {@code to}
+     */
+    public void lerp(Camera from, Camera to, float alpha) {
+        from.position.lerp(to.position, alpha, position);
+        from.rotation.lerp(to.rotation, alpha, rotation);
+        zoom = from.zoom + (to.zoom - from.zoom) * alpha;
+        perspective = to.perspective;
+    }
+
     public Vector3f getPosition() {
         return position;
     }
@@ -39,6 +39,9 @@ public class Material {
         this.specularColour = specularColour;
         this.reflectance = reflectance;
         this.texture = texture;
+        if (texture != null) {
+            texture.materialReferences++;
+        }
     }
 
     public Vector4f getAmbientColour() {
@@ -77,8 +80,19 @@ public class Material {
         return texture;
     }
 
+    /**
+     * Replaces the texture, moving the material reference from the old texture to the new one. The
+     * {@link TextureCache} never evicts a texture while a material references it, so a material that is dropped
+     * should have its texture set to null first, or the texture stays resident.
+     */
     public void setTexture(Texture texture) {
+        if (this.texture != null) {
+            this.texture.materialReferences--;
+        }
         this.texture = texture;
+        if (texture != null) {
+            texture.materialReferences++;
+        }
     }
 
     public boolean hasTexture() {
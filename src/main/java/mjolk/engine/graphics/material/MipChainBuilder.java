@@ -0,0 +1,149 @@
+package mjolk.engine.graphics.material;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds the full mip chain of an RGBA8 image on the CPU.
+ * <p>
+ * Each level is resampled from the one above it with a separable Lanczos filter of two lobes, stretched to the
+ * reduction so every output texel sees four source texels per axis rather than the two of a box filter, which keeps
+ * detail sharp without the aliasing of point sampling. Filtering happens on premultiplied alpha, so transparent
+ * texels do not bleed their colour into the edges of cut outs, and for colour textures in linear light, so the
+ * mips keep the brightness of the base level. Edges are clamped. Intermediate levels stay in floats, only the
+ * output is rounded to bytes.
+ */
+public class MipChainBuilder {
+
+    /** Lobes of the Lanczos kernel */
+    private static final int LOBES = 2;
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            float c = i / 255f;
+            SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+        }
+    }
+
+    /**
+     * @param pixels the base level, tightly packed RGBA8
+     * @param srgb whether the colour channels are sRGB encoded, false for data such as normal maps
+     * @return every level of the chain, the base level first, each tightly packed RGBA8
+     */
+    public static byte[][] build(ByteBuffer pixels, int width, int height, boolean srgb) {
+        int count = TextureData.fullMipCount(width, height);
+        byte[][] levels = new byte[count][];
+
+        levels[0] = new byte[width * height * 4];
+        pixels.get(pixels.position(), levels[0]);
+
+        float[] current = toLinear(levels[0], srgb);
+        for (int level = 1; level < count; level++) {
+            int nextWidth = Math.max(1, width >> 1);
+            int nextHeight = Math.max(1, height >> 1);
+            float[] rows = resample(current, width, height, nextWidth, true);
+            current = resample(rows, nextWidth, height, nextHeight, false);
+            levels[level] = toBytes(current, srgb);
+            width = nextWidth;
+            height = nextHeight;
+        }
+        return levels;
+    }
+
+    /**
+     * Resamples an RGBA float image along one axis
+     * @param horizontal whether to resample the rows, otherwise the columns
+     * @param size the new width or height
+     */
+    private static float[] resample(float[] source, int width, int height, int size, boolean horizontal) {
+        int sourceSize = horizontal ? width : height;
+        if (size == sourceSize) {
+            return source;
+        }
+
+        float scale = (float) sourceSize / size;
+        float support = LOBES * scale;
+        int taps = (int) Math.ceil(support) * 2 + 1;
+        int[] first = new int[size];
+        float[] weights = new float[size * taps];
+        for (int i = 0; i < size; i++) {
+            float centre = (i + 0.5f) * scale;
+            int start = (int) Math.floor(centre - support);
+            first[i] = start;
+            float sum = 0;
+            for (int t = 0; t < taps; t++) {
+                float w = lanczos((start + t + 0.5f - centre) / scale);
+                weights[i * taps + t] = w;
+                sum += w;
+            }
+            for (int t = 0; t < taps; t++) {
+                weights[i * taps + t] /= sum;
+            }
+        }
+
+        int outWidth = horizontal ? size : width;
+        int outHeight = horizontal ? height : size;
+        float[] out = new float[outWidth * outHeight * 4];
+        int lines = horizontal ? height : width;
+        for (int line = 0; line < lines; line++) {
+            for (int i = 0; i < size; i++) {
+                float r = 0, g = 0, b = 0, a = 0;
+                for (int t = 0; t < taps; t++) {
+                    float w = weights[i * taps + t];
+                    if (w == 0) continue;
+                    int s = Math.min(Math.max(first[i] + t, 0), sourceSize - 1);
+                    int p = (horizontal ? line * width + s : s * width + line) * 4;
+                    r += source[p] * w;
+                    g += source[p + 1] * w;
+                    b += source[p + 2] * w;
+                    a += source[p + 3] * w;
+                }
+                int o = (horizontal ? line * outWidth + i : i * outWidth + line) * 4;
+                out[o] = r;
+                out[o + 1] = g;
+                out[o + 2] = b;
+                out[o + 3] = a;
+            }
+        }
+        return out;
+    }
+
+    private static float lanczos(float x) {
+        x = Math.abs(x);
+        if (x < 1e-6f) return 1;
+        if (x >= LOBES) return 0;
+        double px = Math.PI * x;
+        return (float) (LOBES * Math.sin(px) * Math.sin(px / LOBES) / (px * px));
+    }
+
+    private static float[] toLinear(byte[] pixels, boolean srgb) {
+        float[] out = new float[pixels.length];
+        for (int p = 0; p < pixels.length; p += 4) {
+            float a = (pixels[p + 3] & 0xFF) / 255f;
+            for (int c = 0; c < 3; c++) {
+                int value = pixels[p + c] & 0xFF;
+                out[p + c] = (srgb ? SRGB_TO_LINEAR[value] : value / 255f) * a;
+            }
+            out[p + 3] = a;
+        }
+        return out;
+    }
+
+    private static byte[] toBytes(float[] pixels, boolean srgb) {
+        byte[] out = new byte[pixels.length];
+        for (int p = 0; p < pixels.length; p += 4) {
+            // The negative lobes can overshoot, so clamp before leaving premultiplied alpha
+            float a = Math.min(Math.max(pixels[p + 3], 0), 1);
+            for (int c = 0; c < 3; c++) {
+                float value = a > 0 ? Math.min(Math.max(pixels[p + c], 0), a) / a : 0;
+                if (srgb) {
+                    value = value <= 0.0031308f ? value * 12.92f : 1.055f * (float) Math.pow(value, 1 / 2.4) - 0.055f;
+                }
+                out[p + c] = (byte) Math.round(value * 255);
+            }
+            out[p + 3] = (byte) Math.round(a * 255);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,97 @@
+package mjolk.engine.graphics.material;
+
+import org.joml.Vector4f;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Reads the materials of a Wavefront MTL library.
+ * <p>
+ * Ka, Kd and Ks become the colours of the material with d as their alpha, Ns the reflectance and map_Kd the
+ * texture. A textured material gets a white diffuse colour so the texture is not darkened twice, which is how
+ * exporters write Kd next to a map. Other statements are ignored.
+ */
+public class MtlParser {
+
+    private static final Logger LOGGER = Logger.getLogger(MtlParser.class.getName());
+
+    /** Upper end of the Ns range, mapped to a reflectance of 1 */
+    private static final float MAX_SHININESS = 1000f;
+
+    public interface TextureLoader {
+        /**
+         * @param path the map path as written in the library, relative to it
+         */
+        Texture load(String path) throws Exception;
+    }
+
+    /**
+     * @param lines the lines of the library
+     * @param textures loads the diffuse maps, a map that fails to load leaves the material untextured
+     * @return the materials by name, in file order
+     */
+    public static Map<String, Material> parse(List<String> lines, TextureLoader textures) {
+        Map<String, Material> materials = new LinkedHashMap<>();
+        Material current = null;
+        float alpha = 1;
+
+        for (String line : lines) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty() || tokens[0].startsWith("#")) continue;
+
+            if (tokens[0].equals("newmtl")) {
+                if (current != null) applyAlpha(current, alpha);
+                current = new Material(new Vector4f(1, 1, 1, 1), new Vector4f(1, 1, 1, 1), new Vector4f(0, 0, 0, 1),
+                        0, null);
+                alpha = 1;
+                materials.put(line.trim().substring("newmtl".length()).trim(), current);
+                continue;
+            }
+            if (current == null) continue;
+
+            switch (tokens[0]) {
+                case "Ka" -> current.setAmbientColour(colour(tokens));
+                case "Kd" -> current.setDiffuseColour(colour(tokens));
+                case "Ks" -> current.setSpecularColour(colour(tokens));
+                case "Ns" -> current.setReflectance(Math.min(Float.parseFloat(tokens[1]) / MAX_SHININESS, 1));
+                case "d" -> alpha = Float.parseFloat(tokens[1]);
+                case "Tr" -> alpha = 1 - Float.parseFloat(tokens[1]);
+                case "map_Kd" -> {
+                    // Options like -s or -bm come first, the file name is last
+                    String path = tokens[tokens.length - 1];
+                    try {
+                        current.setTexture(textures.load(path));
+                    } catch (Exception e) {
+                        LOGGER.warning("Could not load diffuse map " + path + ": " + e.getMessage());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        if (current != null) applyAlpha(current, alpha);
+
+        for (Material material : materials.values()) {
+            if (material.hasTexture()) {
+                material.setDiffuseColour(new Vector4f(1, 1, 1, material.getDiffuseColour().w));
+            }
+        }
+        return materials;
+    }
+
+    private static Vector4f colour(String[] tokens) {
+        float r = Float.parseFloat(tokens[1]);
+        float g = tokens.length > 2 ? Float.parseFloat(tokens[2]) : r;
+        float b = tokens.length > 3 ? Float.parseFloat(tokens[3]) : r;
+        return new Vector4f(r, g, b, 1);
+    }
+
+    private static void applyAlpha(Material material, float alpha) {
+        material.getAmbientColour().w = alpha;
+        material.getDiffuseColour().w = alpha;
+        material.getSpecularColour().w = alpha;
+    }
+}
@@ -1,5 +1,6 @@
 package mjolk.engine.graphics.material;
 
+import mjolk.engine.core.assets.Asset;
 import mjolk.engine.graphics.rendering.renderer.ShadowRenderer;
 
 import java.nio.ByteBuffer;
@@ -11,16 +12,55 @@ import static org.lwjgl.opengl.GL13.GL_CLAMP_TO_BORDER;
 import static org.lwjgl.opengl.GL14.*;
 import static org.lwjgl.opengl.GL30.GL_COMPARE_REF_TO_TEXTURE;
 
-public class Texture {
+public class Texture extends Asset {
     private static final Logger LOGGER = Logger.getLogger(Texture.class.getName());
 
-    private final int id;
+    /** Counts binds, so textures can tell which of them was bound longest ago */
+    private static long bindClock;
+
+    private int id;
     private int width, height;
+    private int levels = 1;
+    private long lastBound;
+    /** The materials using the texture, which keep it from being evicted, see {@link Material#setTexture(Texture)} */
+    int materialReferences;
 
     public Texture(int id) {
         this.id = id;
     }
 
+    /**
+     * @param levels the number of mip levels, 1 for a texture without mips
+     */
+    public Texture(int id, int width, int height, int levels) {
+        this.id = id;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    private Texture() {
+        super(false);
+    }
+
+    /**
+     * A texture without an image until {@link #resolve(Texture)} fills it in, materials using it are drawn untextured
+     */
+    public static Texture placeholder() {
+        return new Texture();
+    }
+
+    /**
+     * Takes over a loaded GL texture and marks this one ready, called on the GL thread
+     */
+    public void resolve(Texture loaded) {
+        this.id = loaded.id;
+        this.width = loaded.width;
+        this.height = loaded.height;
+        this.levels = loaded.levels;
+        markReady();
+    }
+
     public Texture(int width, int height, int internalFormat, int format, int type) {
         this.id = glGenTextures();
         this.width = width;
@@ -40,6 +80,40 @@ public class Texture {
     public void bind(int unit) {
         glActiveTexture(GL_TEXTURE0 + unit);
         glBindTexture(GL_TEXTURE_2D, id);
+        markBound();
+    }
+
+    /**
+     * Counts a use of the texture that did not bind it, e.g. drawing it from its layer of a texture array
+     */
+    void markBound() {
+        lastBound = ++bindClock;
+    }
+
+    /**
+     * @return the number of materials using the texture
+     */
+    public int getMaterialReferences() {
+        return materialReferences;
+    }
+
+    /**
+     * @return when the texture was last bound, larger is more recent, 0 if never
+     */
+    public long getLastBound() {
+        return lastBound;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevels() {
+        return levels;
     }
 
     public void unbind() {
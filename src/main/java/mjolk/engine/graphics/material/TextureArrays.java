@@ -0,0 +1,263 @@
+package mjolk.engine.graphics.material;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Packs textures of the same size into the layers of {@code GL_TEXTURE_2D_ARRAY}s, so draws with different
+ * textures can share one bind and pick their texture by layer index.
+ * <p>
+ * Textures are grouped by width, height and mip count; every group fills arrays that double in layers as textures
+ * are added, up to {@code GL_MAX_ARRAY_TEXTURE_LAYERS}. A texture is copied into its layer on the GPU, level by
+ * level through a read framebuffer, the first time it is asked for, and keeps its own 2D texture as well, so packed
+ * textures take their memory twice. The {@link TextureCache} counts the arrays against its budget. Layers of
+ * released textures are reused, and an array is deleted once none of its layers are in use. Only to be used from the
+ * GL thread.
+ */
+public class TextureArrays {
+
+    /** Layers of a newly created array */
+    private static final int INITIAL_LAYERS = 4;
+
+    /** Where a texture is packed */
+    public static class Layer {
+        private final TextureArray array;
+        private final int index;
+
+        Layer(TextureArray array, int index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        public TextureArray getArray() {
+            return array;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    /** One array texture, its layers all of the same size */
+    public static class TextureArray {
+        private int id;
+        private final int ordinal;
+        private final int width, height, levels;
+        private int capacity;
+        private int used;
+        private final List<Integer> free = new ArrayList<>();
+
+        TextureArray(int ordinal, int width, int height, int levels) {
+            this.ordinal = ordinal;
+            this.width = width;
+            this.height = height;
+            this.levels = levels;
+        }
+
+        public void bind(int unit) {
+            glActiveTexture(GL_TEXTURE0 + unit);
+            glBindTexture(GL_TEXTURE_2D_ARRAY, id);
+        }
+
+        /**
+         * @return the GL name of the array, which changes when the array grows
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the number of arrays created before this one, for handing out texture units
+         */
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    private record Format(int width, int height, int levels) {
+    }
+
+    private final Map<Format, List<TextureArray>> arrays = new HashMap<>();
+    private final Map<Texture, Layer> layers = new IdentityHashMap<>();
+    private int created;
+    private long bytes;
+    private int framebuffer;
+    private int maxLayers;
+
+    /**
+     * Finds the layer of a ready texture, packing it on first use. Counts as a bind of the texture for the
+     * {@link TextureCache}, which evicts by when textures were last used.
+     */
+    public Layer layerOf(Texture texture) {
+        texture.markBound();
+        Layer layer = layers.get(texture);
+        if (layer == null) {
+            layer = pack(texture);
+            layers.put(texture, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Frees the layer of a texture about to be deleted, if it was packed, and the array once it is empty
+     */
+    public void release(Texture texture) {
+        Layer layer = layers.remove(texture);
+        if (layer == null) {
+            return;
+        }
+        TextureArray array = layer.array;
+        array.free.add(layer.index);
+        if (array.free.size() < array.used) {
+            return;
+        }
+
+        Format format = new Format(array.width, array.height, array.levels);
+        List<TextureArray> group = arrays.get(format);
+        group.remove(array);
+        if (group.isEmpty()) {
+            arrays.remove(format);
+        }
+        glDeleteTextures(array.id);
+        bytes -= byteSize(array, array.capacity);
+    }
+
+    private Layer pack(Texture texture) {
+        if (framebuffer == 0) {
+            framebuffer = glGenFramebuffers();
+            maxLayers = glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS);
+        }
+
+        Format format = new Format(texture.getWidth(), texture.getHeight(), texture.getLevels());
+        List<TextureArray> group = arrays.computeIfAbsent(format, f -> new ArrayList<>());
+        TextureArray array = null;
+        for (TextureArray candidate : group) {
+            if (!candidate.free.isEmpty() || candidate.used < maxLayers) {
+                array = candidate;
+                break;
+            }
+        }
+        if (array == null) {
+            array = new TextureArray(created++, format.width(), format.height(), format.levels());
+            group.add(array);
+        }
+
+        // Leave the bindings of the caller as they were, packing can happen in the middle of a pass
+        int boundArray = glGetInteger(GL_TEXTURE_BINDING_2D_ARRAY);
+        int readFramebuffer = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer);
+
+        int index;
+        if (!array.free.isEmpty()) {
+            index = array.free.remove(array.free.size() - 1);
+        } else {
+            if (array.used == array.capacity) {
+                int previous = array.id;
+                grow(array, Math.min(Math.max(INITIAL_LAYERS, array.capacity * 2), maxLayers));
+                if (previous != 0 && boundArray == previous) {
+                    boundArray = array.id;
+                }
+            }
+            index = array.used++;
+        }
+
+        glBindTexture(GL_TEXTURE_2D_ARRAY, array.id);
+        for (int level = 0; level < array.levels; level++) {
+            glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture.getId(), level);
+            glCopyTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, index, 0, 0,
+                    Math.max(1, array.width >> level), Math.max(1, array.height >> level));
+        }
+        glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, 0, 0);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, boundArray);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, readFramebuffer);
+
+        return new Layer(array, index);
+    }
+
+    /**
+     * Reallocates an array with more layers and copies the layers in use over, the packing framebuffer has to be
+     * bound for reading
+     */
+    private void grow(TextureArray array, int capacity) {
+        int id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, id);
+        for (int level = 0; level < array.levels; level++) {
+            glTexImage3D(GL_TEXTURE_2D_ARRAY, level, GL_RGBA8, Math.max(1, array.width >> level),
+                    Math.max(1, array.height >> level), capacity, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        }
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, array.levels - 1);
+
+        if (array.used > 0) {
+            for (int layer = 0; layer < array.used; layer++) {
+                for (int level = 0; level < array.levels; level++) {
+                    glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, array.id, level, layer);
+                    glCopyTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, layer, 0, 0,
+                            Math.max(1, array.width >> level), Math.max(1, array.height >> level));
+                }
+            }
+            glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, 0, 0, 0);
+        }
+        if (array.id != 0) {
+            glDeleteTextures(array.id);
+        }
+        bytes += byteSize(array, capacity) - byteSize(array, array.capacity);
+
+        array.id = id;
+        array.capacity = capacity;
+    }
+
+    private static long byteSize(TextureArray array, int layers) {
+        return TextureCache.byteSize(array.width, array.height, array.levels) * layers;
+    }
+
+    /**
+     * @return the memory the arrays take, all their layers whether in use or not
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of arrays, at least one per texture size in use
+     */
+    public int getArrayCount() {
+        int count = 0;
+        for (List<TextureArray> group : arrays.values()) {
+            count += group.size();
+        }
+        return count;
+    }
+
+    public int getPackedCount() {
+        return layers.size();
+    }
+
+    public void cleanup() {
+        for (List<TextureArray> group : arrays.values()) {
+            for (TextureArray array : group) {
+                glDeleteTextures(array.id);
+            }
+        }
+        arrays.clear();
+        layers.clear();
+        bytes = 0;
+        if (framebuffer != 0) {
+            glDeleteFramebuffers(framebuffer);
+            framebuffer = 0;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package mjolk.engine.graphics.material;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Keeps loaded textures on the GPU within a memory budget.
+ * <p>
+ * Textures are keyed by their absolute, normalised path, so one file is cached once however it was named, and counted
+ * by size including their mip chain. Every user that takes a texture holds a reference until it releases it, and every
+ * {@link Material} using a texture holds one as well, see {@link Material#setTexture(Texture)}. A texture without
+ * either stays resident, so loading the same path again is a hit, until the resident total goes over the budget: then
+ * textures without references are freed in least recently bound order. A later load of an evicted path is a miss and
+ * loads it again. As no live material can hold an evicted texture, nothing draws one after it was deleted. Textures in
+ * use are never evicted, so the budget can be exceeded while they alone add up to more; a texture whose last material
+ * lets go of it is evicted at the next load or release. Copies of textures in {@link TextureArrays} count against the
+ * budget too, from the next load or release after they were packed; evicting a texture frees its layer. Only to be
+ * used from the GL thread.
+ */
+public class TextureCache {
+
+    private static final Logger LOGGER = Logger.getLogger(TextureCache.class.getName());
+
+    /** The loaders upload RGBA8 */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static class Entry {
+        final String key;
+        final Texture texture;
+        long bytes;
+        int references;
+
+        Entry(String key, Texture texture) {
+            this.key = key;
+            this.texture = texture;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Texture, Entry> entriesByTexture = new IdentityHashMap<>();
+    private final TextureArrays arrays;
+    private final Consumer<Texture> free;
+
+    private long budget;
+    private long residentBytes;
+    private boolean overBudget;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * @param budget bytes of texture memory to stay within
+     * @param arrays the arrays the textures are packed into when drawn from them
+     * @param free deletes the GL texture of an evicted texture
+     */
+    public TextureCache(long budget, TextureArrays arrays, Consumer<Texture> free) {
+        this.budget = budget;
+        this.arrays = arrays;
+        this.free = free;
+    }
+
+    /**
+     * Takes one more reference to a cached texture
+     * @return the texture, which may still be loading, or null on a miss
+     */
+    public Texture acquire(String path) {
+        Entry entry = entries.get(key(path));
+        if (entry != null && entry.texture.isFailed()) {
+            // Let a texture that failed to load try again
+            entries.remove(entry.key);
+            entriesByTexture.remove(entry.texture);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.references++;
+        return entry.texture;
+    }
+
+    /**
+     * Adds a texture loaded after a miss, holding one reference. A placeholder is accounted once it is ready, see
+     * {@link #accountLoaded(Texture)}.
+     */
+    public void add(String path, Texture texture) {
+        Entry entry = new Entry(key(path), texture);
+        entry.references = 1;
+        entries.put(entry.key, entry);
+        entriesByTexture.put(texture, entry);
+        accountLoaded(texture);
+    }
+
+    /**
+     * Counts the memory of a texture that finished loading and evicts others if that goes over the budget
+     */
+    public void accountLoaded(Texture texture) {
+        Entry entry = entriesByTexture.get(texture);
+        if (entry == null || !texture.isReady()) {
+            return;
+        }
+        residentBytes -= entry.bytes;
+        entry.bytes = byteSize(texture.getWidth(), texture.getHeight(), texture.getLevels());
+        residentBytes += entry.bytes;
+        evict();
+    }
+
+    /**
+     * Drops one reference, a texture without references stays resident until the budget needs its memory
+     */
+    public void release(Texture texture) {
+        Entry entry = entriesByTexture.get(texture);
+        if (entry == null) {
+            LOGGER.warning("Released a texture the cache does not hold: " + texture.getId());
+            return;
+        }
+        if (--entry.references == 0) {
+            evict();
+        }
+    }
+
+    /**
+     * Frees textures without references, least recently bound first, until the resident memory fits the budget. An
+     * array only shrinks once all its layers are freed, so this may evict several textures to win back one array.
+     */
+    private void evict() {
+        while (getResidentBytes() > budget) {
+            Entry oldest = null;
+            for (Entry entry : entries.values()) {
+                // Loads still in flight are left alone, they are freed once they have landed
+                if (entry.references > 0 || entry.texture.materialReferences > 0 || !entry.texture.isReady()) {
+                    continue;
+                }
+                if (oldest == null || entry.texture.getLastBound() < oldest.texture.getLastBound()) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                if (!overBudget) {
+                    LOGGER.warning(String.format("Textures in use take %.1f MB, over the budget of %.1f MB",
+                            getResidentBytes() / 1e6, budget / 1e6));
+                    overBudget = true;
+                }
+                return;
+            }
+
+            entries.remove(oldest.key);
+            entriesByTexture.remove(oldest.texture);
+            residentBytes -= oldest.bytes;
+            evictions++;
+            arrays.release(oldest.texture);
+            free.accept(oldest.texture);
+        }
+        overBudget = false;
+    }
+
+    /**
+     * @return the size of an RGBA8 texture with the given number of mip levels
+     */
+    public static long byteSize(int width, int height, int levels) {
+        long bytes = 0;
+        for (int level = 0; level < levels; level++) {
+            bytes += (long) Math.max(1, width >> level) * Math.max(1, height >> level) * BYTES_PER_PIXEL;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return whether the cache holds the texture, resident or loading
+     */
+    public boolean contains(Texture texture) {
+        return entriesByTexture.containsKey(texture);
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param budget bytes of texture memory to stay within, lowering it evicts straight away
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * @return the memory of the resident textures and of the texture arrays they are packed into
+     */
+    public long getResidentBytes() {
+        return residentBytes + arrays.getBytes();
+    }
+
+    public int getResidentCount() {
+        return entries.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getEvictions() {
+        return evictions;
+    }
+
+    private static String key(String path) {
+        return Path.of(path).toAbsolutePath().normalize().toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,195 @@
+package mjolk.engine.graphics.material;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * Cooked textures on disk with their complete mip chain, filtered offline by {@link MipChainBuilder}.
+ * <p>
+ * Layout, little endian: a 48 byte header (magic, version, source size, source modification time, source checksum,
+ * width, height, level count, flags, padding), the key of the entry as a byte length and UTF-8 bytes, then the
+ * RGBA8 pixels of every level back to back, tightly packed, so each level is a slice of the mapped file that
+ * glTexImage2D reads directly. Flag bit 0 marks textures filtered as linear data rather than sRGB colour. Entries are
+ * named after the SHA-256 of the image path, which must match the key stored in the entry, and validated against the
+ * size and modification time of the image, falling back to a checksum of it when only the modification time
+ * differs. An entry without its image is used as is, so a build can ship the cooked textures alone. The runtime
+ * only reads entries, they are written by the TextureCooker tool.
+ */
+public class TextureContainer {
+
+    public static final Path DEFAULT_DIRECTORY = Path.of("cache", "textures");
+
+    private static final int MAGIC = 0x58455450; // "PTEX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+
+    private static final int FLAG_LINEAR = 1;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final Path directory;
+
+    public TextureContainer(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Maps the entry of an image, may run on any thread
+     * @param fileName path of the source image, as passed to the loader
+     * @return the mip chain as slices of the mapped entry, or null if there is no valid entry
+     */
+    public TextureData load(String fileName) throws IOException {
+        Path source = Path.of(fileName);
+        String key = key(source);
+        Path entry = entryPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+
+        if (Files.isRegularFile(source)) {
+            long size = buffer.getLong(8);
+            long modified = buffer.getLong(16);
+            int checksum = buffer.getInt(24);
+            if (size != Files.size(source)) {
+                return null;
+            }
+            if (modified != Files.getLastModifiedTime(source).toMillis() && checksum != checksum(source)) {
+                return null;
+            }
+        }
+
+        int width = buffer.getInt(28);
+        int height = buffer.getInt(32);
+        int levelCount = buffer.getInt(36);
+        if (width < 1 || height < 1 || levelCount < 1 || levelCount > TextureData.fullMipCount(width, height)) {
+            return null;
+        }
+        byte[] expectedKey = key.getBytes(StandardCharsets.UTF_8);
+        int offset = HEADER_SIZE + Integer.BYTES + expectedKey.length;
+        if (buffer.capacity() != offset + TextureCache.byteSize(width, height, levelCount)
+                || buffer.getInt(HEADER_SIZE) != expectedKey.length) {
+            return null;
+        }
+        ByteBuffer storedKey = buffer.slice(HEADER_SIZE + Integer.BYTES, expectedKey.length);
+        if (!storedKey.equals(ByteBuffer.wrap(expectedKey))) {
+            return null;
+        }
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            int length = Math.max(1, width >> level) * Math.max(1, height >> level) * BYTES_PER_PIXEL;
+            levels[level] = buffer.slice(offset, length);
+            offset += length;
+        }
+        // The mapping is unmapped by the garbage collector once the slices are no longer referenced
+        return new TextureData(width, height, levels, () -> { });
+    }
+
+    /**
+     * Decodes an image, builds its mip chain and writes its entry, used for offline cooking
+     * @param source the image file
+     * @param linear whether the image holds data rather than colour, which is filtered without sRGB decoding
+     * @return the path of the written entry
+     */
+    public Path cook(Path source, boolean linear) throws Exception {
+        TextureData data = TextureData.decode(source);
+        byte[][] levels;
+        try {
+            levels = MipChainBuilder.build(data.getLevel(0), data.getWidth(), data.getHeight(), !linear);
+        } finally {
+            data.free();
+        }
+
+        byte[] key = key(source).getBytes(StandardCharsets.UTF_8);
+        long length = HEADER_SIZE + Integer.BYTES + key.length
+                + TextureCache.byteSize(data.getWidth(), data.getHeight(), levels.length);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putLong(Files.size(source)).putLong(Files.getLastModifiedTime(source).toMillis())
+                .putInt(checksum(source))
+                .putInt(data.getWidth()).putInt(data.getHeight()).putInt(levels.length)
+                .putInt(linear ? FLAG_LINEAR : 0);
+        buffer.position(HEADER_SIZE);
+        buffer.putInt(key.length).put(key);
+        for (byte[] level : levels) {
+            buffer.put(level);
+        }
+        buffer.position(0);
+
+        Files.createDirectories(directory);
+        Path entry = entryPath(key(source));
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        try {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return entry;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Path entryPath(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".ptex");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Entries are keyed by the normalised image path, e.g. "textures/colour.png"
+     */
+    private static String key(Path source) {
+        return source.normalize().toString().replace('\\', '/');
+    }
+
+    private static int checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] block = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(block)) > 0) {
+                crc.update(block, 0, read);
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,114 @@
+package mjolk.engine.graphics.material;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decoded RGBA8 pixels of a texture in CPU memory, ready to upload. Holds either the base level only, leaving the
+ * mips to glGenerateMipmap, or a complete mip chain.
+ */
+public class TextureData {
+
+    private final int width;
+    private final int height;
+    private final ByteBuffer[] levels;
+    private final Runnable free;
+
+    /**
+     * @param levels the pixels of level 0 and, optionally, of every following mip level
+     * @param free releases the pixel memory once uploaded
+     */
+    public TextureData(int width, int height, ByteBuffer[] levels, Runnable free) {
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+        this.free = free;
+    }
+
+    /**
+     * Reads an image file into native memory and decodes it to RGBA8 with stb_image, may run on any thread
+     * @return the base level, the pixels are freed with {@link #free()}
+     */
+    public static TextureData decode(Path file) throws Exception {
+        ByteBuffer encoded;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            encoded = MemoryUtil.memAlloc(Math.toIntExact(channel.size()));
+            while (encoded.hasRemaining()) {
+                if (channel.read(encoded) < 0) break;
+            }
+            encoded.flip();
+        } catch (IOException e) {
+            throw new Exception("Failed to load texture: " + file, e);
+        }
+
+        int width, height;
+        ByteBuffer pixels;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer c = stack.mallocInt(1);
+
+            pixels = STBImage.stbi_load_from_memory(encoded, w, h, c, 4);
+            if (pixels == null) {
+                throw new Exception("Failed to load texture: " + file + ": " + STBImage.stbi_failure_reason());
+            }
+
+            width = w.get();
+            height = h.get();
+        } finally {
+            MemoryUtil.memFree(encoded);
+        }
+
+        return new TextureData(width, height, new ByteBuffer[]{pixels}, () -> STBImage.stbi_image_free(pixels));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * @return whether the mips still have to be generated after the upload
+     */
+    public boolean needsMipmaps() {
+        return levels.length == 1 && fullMipCount(width, height) > 1;
+    }
+
+    public void free() {
+        free.run();
+    }
+
+    /**
+     * @return the length of the full mip chain of an image, as glGenerateMipmap builds it
+     */
+    public static int fullMipCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, Math.max(width, height)));
+    }
+}
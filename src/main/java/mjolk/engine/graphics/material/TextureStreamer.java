@@ -0,0 +1,216 @@
+package mjolk.engine.graphics.material;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * Uploads decoded textures over several frames through a ring of pixel buffer objects.
+ * <p>
+ * Every level is copied in bands of rows into the next buffer of the ring, from which glTexSubImage2D copies it
+ * into the texture without blocking the CPU. A fence after each band tells when the GPU is done reading the buffer;
+ * a buffer still in use ends the work for this frame instead of stalling on it. Once the last band of a texture is
+ * in, its mips are generated if it came without them and its callback receives the finished {@link Texture}.
+ * Only to be used from the GL thread.
+ */
+public class TextureStreamer {
+
+    public static final int RING_SIZE = 3;
+    /** Default upper bound of a band, a band always holds at least one row */
+    public static final int BAND_BYTES = 1 << 20;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static class Slot {
+        int buffer;
+        int capacity;
+        long fence;
+    }
+
+    private static class Job {
+        final TextureData data;
+        final int id;
+        final Consumer<Texture> done;
+        int level;
+        int row;
+
+        Job(TextureData data, int id, Consumer<Texture> done) {
+            this.data = data;
+            this.id = id;
+            this.done = done;
+        }
+    }
+
+    private final Slot[] ring = new Slot[RING_SIZE];
+    private final Queue<Job> jobs = new ArrayDeque<>();
+    private int next;
+    private int bandBytes = BAND_BYTES;
+
+    private long uploadedBands;
+    private long stalls;
+
+    /**
+     * Allocates the texture and queues its pixels for upload. The data is freed once uploaded.
+     * @param done receives the texture once all of it is on the GPU
+     * @return the GL name of the texture, not drawable before done is called
+     */
+    public int enqueue(TextureData data, Consumer<Texture> done) {
+        int id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, id);
+        for (int level = 0; level < data.getLevelCount(); level++) {
+            glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA8, data.getLevelWidth(level), data.getLevelHeight(level), 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        }
+        if (!data.needsMipmaps()) {
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, data.getLevelCount() - 1);
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        jobs.add(new Job(data, id, done));
+        return id;
+    }
+
+    /**
+     * Uploads bands until the deadline or until the next buffer of the ring is still being read. At least one band
+     * goes out per call if a buffer is free, so a band larger than the budget still gets through.
+     * @param deadline the {@link System#nanoTime()} to stop at
+     * @return the number of bands uploaded
+     */
+    public int process(long deadline) {
+        int bands = 0;
+        while (!jobs.isEmpty() && (bands == 0 || System.nanoTime() < deadline)) {
+            Slot slot = slot(next);
+            if (slot.fence != 0) {
+                if (glClientWaitSync(slot.fence, 0, 0) == GL_TIMEOUT_EXPIRED) {
+                    stalls++;
+                    break;
+                }
+                glDeleteSync(slot.fence);
+                slot.fence = 0;
+            }
+
+            Job job = jobs.peek();
+            uploadBand(job, slot);
+            slot.fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            next = (next + 1) % RING_SIZE;
+            bands++;
+
+            if (job.level == job.data.getLevelCount()) {
+                jobs.poll();
+                finish(job);
+            }
+        }
+        uploadedBands += bands;
+        return bands;
+    }
+
+    private void uploadBand(Job job, Slot slot) {
+        TextureData data = job.data;
+        int width = data.getLevelWidth(job.level);
+        int height = data.getLevelHeight(job.level);
+        int rowBytes = width * BYTES_PER_PIXEL;
+        int rows = Math.min(height - job.row, Math.max(1, bandBytes / rowBytes));
+        int size = rows * rowBytes;
+
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, slot.buffer);
+        if (slot.capacity < size) {
+            glBufferData(GL_PIXEL_UNPACK_BUFFER, size, GL_STREAM_DRAW);
+            slot.capacity = size;
+        }
+        // The fence has signalled, so the GPU is done with the buffer and it can be mapped without syncing
+        ByteBuffer mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size,
+                GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(data.getLevel(job.level)) + (long) job.row * rowBytes,
+                MemoryUtil.memAddress(mapped), size);
+        glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+
+        glBindTexture(GL_TEXTURE_2D, job.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexSubImage2D(GL_TEXTURE_2D, job.level, 0, job.row, width, rows, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+
+        job.row += rows;
+        if (job.row == height) {
+            job.level++;
+            job.row = 0;
+        }
+    }
+
+    private void finish(Job job) {
+        TextureData data = job.data;
+        int levels = data.getLevelCount();
+        if (data.needsMipmaps()) {
+            glBindTexture(GL_TEXTURE_2D, job.id);
+            glGenerateMipmap(GL_TEXTURE_2D);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            levels = TextureData.fullMipCount(data.getWidth(), data.getHeight());
+        }
+        data.free();
+        job.done.accept(new Texture(job.id, data.getWidth(), data.getHeight(), levels));
+    }
+
+    private Slot slot(int index) {
+        if (ring[index] == null) {
+            ring[index] = new Slot();
+            ring[index].buffer = glGenBuffers();
+        }
+        return ring[index];
+    }
+
+    /**
+     * @return the number of textures still being uploaded
+     */
+    public int getQueuedCount() {
+        return jobs.size();
+    }
+
+    public long getUploadedBands() {
+        return uploadedBands;
+    }
+
+    /**
+     * @return how often a frame stopped early because the GPU still read the next buffer
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    public int getBandBytes() {
+        return bandBytes;
+    }
+
+    /**
+     * @param bandBytes the most bytes copied per band, smaller bands spread a texture over more frames
+     */
+    public void setBandBytes(int bandBytes) {
+        this.bandBytes = bandBytes;
+    }
+
+    /**
+     * Frees the ring and the pixels of textures not uploaded yet, their textures are deleted with the loader
+     */
+    public void cleanup() {
+        for (Slot slot : ring) {
+            if (slot == null) continue;
+            if (slot.fence != 0) {
+                glDeleteSync(slot.fence);
+            }
+            glDeleteBuffers(slot.buffer);
+        }
+        for (Job job : jobs) {
+            job.data.free();
+        }
+        jobs.clear();
+    }
+}
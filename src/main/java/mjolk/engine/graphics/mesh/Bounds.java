@@ -0,0 +1,95 @@
+package mjolk.engine.graphics.mesh;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * An axis aligned box and a bounding sphere around the same geometry.
+ * <p>
+ * The sphere of a mesh is centred on its box and only as large as its furthest vertex, which is usually well inside
+ * the sphere around the box. Meshes get their bounds once at import, renderables keep a world space copy.
+ */
+public class Bounds {
+
+    public final Vector3f min = new Vector3f();
+    public final Vector3f max = new Vector3f();
+    public final Vector3f centre = new Vector3f();
+    public float radius;
+
+    /**
+     * Computes the bounds of packed xyz positions, all zero for an empty mesh
+     */
+    public static Bounds of(float[] positions) {
+        Bounds bounds = new Bounds();
+        if (positions.length < 3) {
+            return bounds;
+        }
+
+        // Compare and select instead of Math.min and Math.max, which also order NaN and signed zeros and cost
+        // about twice as much here. The selects compile to conditional moves, so the loop has no branches.
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < positions.length - 2; i += 3) {
+            float x = positions[i], y = positions[i + 1], z = positions[i + 2];
+            minX = x < minX ? x : minX;
+            minY = y < minY ? y : minY;
+            minZ = z < minZ ? z : minZ;
+            maxX = x > maxX ? x : maxX;
+            maxY = y > maxY ? y : maxY;
+            maxZ = z > maxZ ? z : maxZ;
+        }
+        bounds.min.set(minX, minY, minZ);
+        bounds.max.set(maxX, maxY, maxZ);
+        bounds.centre.set(bounds.min).add(bounds.max).mul(0.5f);
+
+        float cx = bounds.centre.x, cy = bounds.centre.y, cz = bounds.centre.z;
+        float radiusSquared = 0;
+        for (int i = 0; i < positions.length - 2; i += 3) {
+            float dx = positions[i] - cx;
+            float dy = positions[i + 1] - cy;
+            float dz = positions[i + 2] - cz;
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+            radiusSquared = distanceSquared > radiusSquared ? distanceSquared : radiusSquared;
+        }
+        bounds.radius = (float) Math.sqrt(radiusSquared);
+        return bounds;
+    }
+
+    /**
+     * Sets the box and the sphere enclosing it
+     */
+    public Bounds set(Vector3f min, Vector3f max) {
+        this.min.set(min);
+        this.max.set(max);
+        centre.set(min).add(max).mul(0.5f);
+        radius = min.distance(max) * 0.5f;
+        return this;
+    }
+
+    public Bounds set(Vector3f min, Vector3f max, Vector3f centre, float radius) {
+        this.min.set(min);
+        this.max.set(max);
+        this.centre.set(centre);
+        this.radius = radius;
+        return this;
+    }
+
+    public Bounds set(Bounds other) {
+        return set(other.min, other.max, other.centre, other.radius);
+    }
+
+    /**
+     * Writes the bounds after an affine transform: the box around the transformed box, and the sphere scaled by the
+     * largest axis scale of the matrix
+     * @return dest
+     */
+    public Bounds transform(Matrix4f matrix, Bounds dest) {
+        matrix.transformAab(min, max, dest.min, dest.max);
+        matrix.transformPosition(centre, dest.centre);
+        float scaleX = matrix.m00() * matrix.m00() + matrix.m01() * matrix.m01() + matrix.m02() * matrix.m02();
+        float scaleY = matrix.m10() * matrix.m10() + matrix.m11() * matrix.m11() + matrix.m12() * matrix.m12();
+        float scaleZ = matrix.m20() * matrix.m20() + matrix.m21() * matrix.m21() + matrix.m22() * matrix.m22();
+        dest.radius = radius * (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+        return dest;
+    }
+}
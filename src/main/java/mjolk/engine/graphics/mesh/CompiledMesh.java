@@ -0,0 +1,102 @@
+package mjolk.engine.graphics.mesh;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A mesh read from the binary mesh cache. The attribute buffers are little endian views straight into the
+ * memory mapped cache file and can be handed to glBufferData as they are.
+ */
+public class CompiledMesh {
+
+    private final int vertexCount;
+    private final int indexCount;
+    private final int[] lodIndexCounts;
+    private final int indexType;
+    private final ByteBuffer positions;
+    private final ByteBuffer texCoords;
+    private final ByteBuffer normals;
+    private final ByteBuffer indices;
+    private final Bounds bounds;
+    private final MaterialGroups materialGroups;
+    private final Meshlets meshlets;
+    private final boolean optimized;
+
+    /**
+     * @param lodIndexCounts index count of every level of detail, the levels follow each other in {@code indices}
+     * @param materialGroups group offsets within every level
+     */
+    public CompiledMesh(int vertexCount, int[] lodIndexCounts, int indexType, ByteBuffer positions,
+                        ByteBuffer texCoords, ByteBuffer normals, ByteBuffer indices, Bounds bounds,
+                        MaterialGroups materialGroups, Meshlets meshlets, boolean optimized) {
+        this.vertexCount = vertexCount;
+        this.indexCount = Arrays.stream(lodIndexCounts).sum();
+        this.lodIndexCounts = lodIndexCounts;
+        this.indexType = indexType;
+        this.positions = positions;
+        this.texCoords = texCoords;
+        this.normals = normals;
+        this.indices = indices;
+        this.bounds = bounds;
+        this.materialGroups = materialGroups;
+        this.meshlets = meshlets;
+        this.optimized = optimized;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return the index count summed over all levels of detail
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int[] getLodIndexCounts() {
+        return lodIndexCounts;
+    }
+
+    /**
+     * @return GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, matching the element size of {@link #getIndices()}
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    public ByteBuffer getPositions() {
+        return positions;
+    }
+
+    public ByteBuffer getTexCoords() {
+        return texCoords;
+    }
+
+    public ByteBuffer getNormals() {
+        return normals;
+    }
+
+    public ByteBuffer getIndices() {
+        return indices;
+    }
+
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    public MaterialGroups getMaterialGroups() {
+        return materialGroups;
+    }
+
+    /**
+     * @return the clusters of the full detail level, or null if the mesh was not split
+     */
+    public Meshlets getMeshlets() {
+        return meshlets;
+    }
+
+    public boolean isOptimized() {
+        return optimized;
+    }
+}
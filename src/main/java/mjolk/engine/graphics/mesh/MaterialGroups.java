@@ -0,0 +1,84 @@
+package mjolk.engine.graphics.mesh;
+
+/**
+ * The material groups ("usemtl" sections) of a mesh. Triangles are sorted by group, so every group is a single
+ * index range in every level of detail and the whole mesh still fits one vertex array.
+ */
+public class MaterialGroups {
+
+    /** Name of the group holding the faces that come before any usemtl */
+    public static final String NO_MATERIAL = "";
+
+    private final String library;
+    private final String[] names;
+    private final int[][] offsets;
+
+    /**
+     * @param library the mtllib file the names refer to, relative to the OBJ file, or null
+     * @param names material name of every group
+     * @param offsets for every level of detail, the first index of every group followed by the end of the last
+     */
+    public MaterialGroups(String library, String[] names, int[][] offsets) {
+        this.library = library;
+        this.names = names;
+        this.offsets = offsets;
+    }
+
+    /**
+     * A single unnamed group spanning every level
+     * @param levelIndexCounts the index count of every level of detail
+     */
+    public static MaterialGroups single(int... levelIndexCounts) {
+        int[][] offsets = new int[levelIndexCounts.length][];
+        for (int lod = 0; lod < offsets.length; lod++) {
+            offsets[lod] = new int[]{0, levelIndexCounts[lod]};
+        }
+        return new MaterialGroups(null, new String[]{NO_MATERIAL}, offsets);
+    }
+
+    /**
+     * @return the same groups over a different set of levels
+     */
+    public MaterialGroups withOffsets(int[][] offsets) {
+        return new MaterialGroups(library, names, offsets);
+    }
+
+    public String getLibrary() {
+        return library;
+    }
+
+    public int getCount() {
+        return names.length;
+    }
+
+    public String getName(int group) {
+        return names[group];
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+
+    public int getLevelCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the group offsets of one level, {@link #getCount()} + 1 entries
+     */
+    public int[] getOffsets(int lod) {
+        return offsets[lod];
+    }
+
+    public int[][] getOffsets() {
+        return offsets;
+    }
+
+    public int getFirstIndex(int lod, int group) {
+        return offsets[lod][group];
+    }
+
+    public int getIndexCount(int lod, int group) {
+        return offsets[lod][group + 1] - offsets[lod][group];
+    }
+}
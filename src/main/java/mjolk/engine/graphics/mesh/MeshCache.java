@@ -0,0 +1,450 @@
+package mjolk.engine.graphics.mesh;
+
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * On disk cache of imported meshes in a flat binary layout.
+ * <p>
+ * Layout, little endian: an 80 byte header (magic, version, source size, source modification time, source
+ * checksum, vertex count, index count of all levels, flags, bounds min and max, bounding sphere centre and radius),
+ * the key of the entry, the level of detail table (level count, then the index count of every level), the material
+ * table (mtllib name, group count, the name of every group and the group offsets of every level), the meshlet table
+ * (meshlet count, then first index, index count, bounding sphere and normal cone of every meshlet, then the first
+ * meshlet of every group), followed by the positions (3 floats per vertex), texture coordinates (2 floats), normals
+ * (3 floats) and the indices of every level back to back. Strings are stored as a byte length and UTF-8 bytes, -1
+ * for null. Indices are unsigned shorts when the mesh is small enough for 16 bit indices (flag bit 0) and ints
+ * otherwise, ready for the matching glDrawElements type. Flag bit 1 marks meshes that went through
+ * {@link MeshOptimizer}.
+ * <p>
+ * Entries are keyed by the resource path of the source, or its normalised absolute path for files, and named after
+ * the SHA-256 of the key. The key stored in the entry must match on reading, so two sources can never share an
+ * entry. Entries are validated against the size and modification time of the source, falling back to a checksum of
+ * the source when only the modification time differs (e.g. resources copied into the build output by maven).
+ */
+public class MeshCache {
+
+    private static final Logger LOGGER = Logger.getLogger(MeshCache.class.getName());
+
+    public static final Path DEFAULT_DIRECTORY = Path.of("cache", "meshes");
+
+    private static final int MAGIC = 0x48534D50; // "PMSH"
+    private static final int VERSION = 8;
+    private static final int HEADER_SIZE = 80;
+
+    private static final int FLAG_SHORT_INDICES = 1;
+    private static final int FLAG_OPTIMIZED = 2;
+
+    /** Bytes per meshlet table entry: first index, index count, bounding sphere and normal cone */
+    private static final int MESHLET_ENTRY_SIZE = 2 * Integer.BYTES + 2 * Meshlets.STRIDE * Float.BYTES;
+
+    private final Path directory;
+
+    public MeshCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Identity of a source file, used to decide whether a cache entry is still valid
+     */
+    private record Source(String key, URL url, long size, long modified) {
+    }
+
+    /**
+     * Maps the cache entry of a resource
+     * @param fileName resource path of the source OBJ
+     * @return the mapped mesh, or null if there is no valid entry
+     */
+    public CompiledMesh load(String fileName) throws IOException {
+        return load(resolve(fileName));
+    }
+
+    public CompiledMesh load(Path file) throws IOException {
+        return load(resolve(file, file.toAbsolutePath().normalize().toString()));
+    }
+
+    /**
+     * Writes a cache entry for a resource. Failures are logged rather than thrown, the cache is only an optimisation.
+     */
+    public void store(String fileName, MeshData mesh) {
+        try {
+            store(resolve(fileName), mesh);
+        } catch (IOException e) {
+            LOGGER.warning("Could not cache mesh " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    public void store(Path file, MeshData mesh) {
+        try {
+            store(resolve(file, file.toAbsolutePath().normalize().toString()), mesh);
+        } catch (IOException e) {
+            LOGGER.warning("Could not cache mesh " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses an OBJ file from disk and writes its entry under the given key, used for offline cooking
+     * @param file the OBJ file
+     * @param key the resource path the runtime will request the mesh by, e.g. "models/box.obj"
+     * @param process applied to the parsed mesh before it is written, e.g. {@link MeshOptimizer#optimize(MeshData)}
+     * @return the path of the written entry
+     */
+    public Path cook(Path file, String key, UnaryOperator<MeshData> process) throws IOException {
+        Source source = resolve(file, key);
+        store(source, process.apply(ObjParser.parse(file)));
+        return entryPath(key);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private CompiledMesh load(Source source) throws IOException {
+        Path entry = entryPath(source.key());
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+
+        long size = buffer.getLong(8);
+        long modified = buffer.getLong(16);
+        int checksum = buffer.getInt(24);
+        if (size != source.size()) {
+            return null;
+        }
+        if (modified != source.modified() && checksum != checksum(source.url())) {
+            return null;
+        }
+
+        int vertexCount = buffer.getInt(28);
+        int indexCount = buffer.getInt(32);
+        int flags = buffer.getInt(36);
+        boolean shortIndices = (flags & FLAG_SHORT_INDICES) != 0;
+        int indexSize = shortIndices ? Short.BYTES : Integer.BYTES;
+        Bounds bounds = new Bounds().set(
+                new Vector3f(buffer.getFloat(40), buffer.getFloat(44), buffer.getFloat(48)),
+                new Vector3f(buffer.getFloat(52), buffer.getFloat(56), buffer.getFloat(60)),
+                new Vector3f(buffer.getFloat(64), buffer.getFloat(68), buffer.getFloat(72)),
+                buffer.getFloat(76));
+
+        int[] lodIndexCounts;
+        MaterialGroups groups;
+        Meshlets meshlets;
+        long lodIndices = 0;
+        buffer.position(HEADER_SIZE);
+        try {
+            if (!source.key().equals(getString(buffer))) {
+                return null;
+            }
+            int lodCount = buffer.getInt();
+            if (lodCount < 1 || buffer.remaining() < (long) lodCount * Integer.BYTES) {
+                return null;
+            }
+            lodIndexCounts = new int[lodCount];
+            for (int lod = 0; lod < lodCount; lod++) {
+                lodIndexCounts[lod] = buffer.getInt();
+                lodIndices += lodIndexCounts[lod];
+            }
+
+            groups = readMaterialGroups(buffer, lodCount);
+            if (groups == null) {
+                return null;
+            }
+
+            int meshletCount = buffer.getInt();
+            long tableSize = (long) meshletCount * MESHLET_ENTRY_SIZE
+                    + (meshletCount == 0 ? 0 : (groups.getCount() + 1) * Integer.BYTES);
+            if (meshletCount < 0 || buffer.remaining() < tableSize) {
+                return null;
+            }
+            meshlets = meshletCount == 0 ? null : readMeshlets(buffer, meshletCount, groups.getCount());
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        int offset = buffer.position();
+
+        long expected = offset + (long) vertexCount * (3 + 2 + 3) * Float.BYTES + (long) indexCount * indexSize;
+        if (lodIndices != indexCount || buffer.capacity() != expected) {
+            return null;
+        }
+
+        ByteBuffer positions = section(buffer, offset, vertexCount * 3 * Float.BYTES);
+        offset += positions.capacity();
+        ByteBuffer texCoords = section(buffer, offset, vertexCount * 2 * Float.BYTES);
+        offset += texCoords.capacity();
+        ByteBuffer normals = section(buffer, offset, vertexCount * 3 * Float.BYTES);
+        offset += normals.capacity();
+        ByteBuffer indices = section(buffer, offset, indexCount * indexSize);
+
+        int indexType = shortIndices ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+        return new CompiledMesh(vertexCount, lodIndexCounts, indexType, positions, texCoords, normals, indices, bounds,
+                groups, meshlets, (flags & FLAG_OPTIMIZED) != 0);
+    }
+
+    private void store(Source source, MeshData mesh) throws IOException {
+        float[] positions = mesh.getPositions();
+        float[] texCoords = mesh.getTexCoords();
+        float[] normals = mesh.getNormals();
+
+        int indexCount = 0;
+        for (int lod = 0; lod < mesh.getLodCount(); lod++) {
+            indexCount += mesh.getLodIndices(lod).length;
+        }
+
+        Bounds bounds = mesh.computeBounds();
+
+        boolean shortIndices = Model.indexTypeFor(mesh.getVertexCount()) == GL11.GL_UNSIGNED_SHORT;
+        byte[] key = encode(source.key());
+        MaterialGroups groups = mesh.getMaterialGroups();
+        byte[] library = encode(groups.getLibrary());
+        byte[][] names = new byte[groups.getCount()][];
+        int namesSize = 0;
+        for (int g = 0; g < names.length; g++) {
+            names[g] = encode(groups.getName(g));
+            namesSize += Integer.BYTES + names[g].length;
+        }
+        int materialTableSize = Integer.BYTES + (library == null ? 0 : library.length) + Integer.BYTES + namesSize
+                + mesh.getLodCount() * (names.length + 1) * Integer.BYTES;
+
+        Meshlets meshlets = mesh.getMeshlets();
+        int meshletCount = meshlets == null ? 0 : meshlets.getCount();
+        int meshletTableSize = Integer.BYTES + meshletCount * MESHLET_ENTRY_SIZE
+                + (meshletCount == 0 ? 0 : (names.length + 1) * Integer.BYTES);
+        int dataOffset = HEADER_SIZE + Integer.BYTES + key.length + (mesh.getLodCount() + 1) * Integer.BYTES
+                + materialTableSize + meshletTableSize;
+        int indexOffset = dataOffset + (positions.length + texCoords.length + normals.length) * Float.BYTES;
+        int length = indexOffset + indexCount * (shortIndices ? Short.BYTES : Integer.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putLong(source.size()).putLong(source.modified()).putInt(checksum(source.url()))
+                .putInt(mesh.getVertexCount()).putInt(indexCount)
+                .putInt((shortIndices ? FLAG_SHORT_INDICES : 0) | (mesh.isOptimized() ? FLAG_OPTIMIZED : 0))
+                .putFloat(bounds.min.x).putFloat(bounds.min.y).putFloat(bounds.min.z)
+                .putFloat(bounds.max.x).putFloat(bounds.max.y).putFloat(bounds.max.z)
+                .putFloat(bounds.centre.x).putFloat(bounds.centre.y).putFloat(bounds.centre.z)
+                .putFloat(bounds.radius);
+
+        putBytes(buffer, key);
+        buffer.putInt(mesh.getLodCount());
+        for (int lod = 0; lod < mesh.getLodCount(); lod++) {
+            buffer.putInt(mesh.getLodIndices(lod).length);
+        }
+
+        putBytes(buffer, library);
+        buffer.putInt(names.length);
+        for (byte[] name : names) {
+            putBytes(buffer, name);
+        }
+        for (int lod = 0; lod < mesh.getLodCount(); lod++) {
+            for (int offset : groups.getOffsets(lod)) {
+                buffer.putInt(offset);
+            }
+        }
+
+        buffer.putInt(meshletCount);
+        for (int m = 0; m < meshletCount; m++) {
+            buffer.putInt(meshlets.getFirstIndex(m)).putInt(meshlets.getIndexCount(m));
+            for (int i = 0; i < Meshlets.STRIDE; i++) {
+                buffer.putFloat(meshlets.getBounds()[m * Meshlets.STRIDE + i]);
+            }
+            for (int i = 0; i < Meshlets.STRIDE; i++) {
+                buffer.putFloat(meshlets.getCones()[m * Meshlets.STRIDE + i]);
+            }
+        }
+        if (meshletCount > 0) {
+            for (int start : meshlets.getGroupStarts()) {
+                buffer.putInt(start);
+            }
+        }
+
+        buffer.position(dataOffset);
+        buffer.asFloatBuffer().put(positions).put(texCoords).put(normals);
+        buffer.position(indexOffset);
+        for (int lod = 0; lod < mesh.getLodCount(); lod++) {
+            int[] indices = mesh.getLodIndices(lod);
+            if (shortIndices) {
+                for (int index : indices) {
+                    buffer.putShort((short) index);
+                }
+            } else {
+                for (int index : indices) {
+                    buffer.putInt(index);
+                }
+            }
+        }
+        buffer.position(0);
+
+        Files.createDirectories(directory);
+        Path entry = entryPath(source.key());
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        try {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path entryPath(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".mesh");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the material table at the position of the buffer
+     * @return the groups, or null if the table is malformed
+     */
+    private static MaterialGroups readMaterialGroups(ByteBuffer buffer, int lodCount) {
+        String library = getString(buffer);
+        int groupCount = buffer.getInt();
+        if (groupCount < 1 || buffer.remaining() < (long) groupCount * Integer.BYTES) {
+            return null;
+        }
+        String[] names = new String[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+            names[g] = getString(buffer);
+            if (names[g] == null) {
+                return null;
+            }
+        }
+        int[][] offsets = new int[lodCount][groupCount + 1];
+        for (int lod = 0; lod < lodCount; lod++) {
+            for (int g = 0; g <= groupCount; g++) {
+                offsets[lod][g] = buffer.getInt();
+            }
+        }
+        return new MaterialGroups(library, names, offsets);
+    }
+
+    /**
+     * Reads the meshlet table entries at the position of the buffer
+     */
+    private static Meshlets readMeshlets(ByteBuffer buffer, int count, int groupCount) {
+        int[] ranges = new int[count * 2];
+        float[] bounds = new float[count * Meshlets.STRIDE];
+        float[] cones = new float[count * Meshlets.STRIDE];
+        for (int m = 0; m < count; m++) {
+            ranges[m * 2] = buffer.getInt();
+            ranges[m * 2 + 1] = buffer.getInt();
+            for (int i = 0; i < Meshlets.STRIDE; i++) {
+                bounds[m * Meshlets.STRIDE + i] = buffer.getFloat();
+            }
+            for (int i = 0; i < Meshlets.STRIDE; i++) {
+                cones[m * Meshlets.STRIDE + i] = buffer.getFloat();
+            }
+        }
+        int[] groupStarts = new int[groupCount + 1];
+        for (int g = 0; g <= groupCount; g++) {
+            groupStarts[g] = buffer.getInt();
+        }
+        return new Meshlets(ranges, bounds, cones, groupStarts);
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * @return the string at the position of the buffer, null if it was stored as null or is malformed
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static Source resolve(String fileName) throws IOException {
+        URL url = MeshCache.class.getClassLoader().getResource(fileName);
+        if (url == null) {
+            throw new IOException("Resource not found: " + fileName);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return resolve(Path.of(url.toURI()), fileName);
+            } catch (Exception e) {
+                throw new IOException("Invalid resource path: " + url, e);
+            }
+        }
+
+        URLConnection connection = url.openConnection();
+        return new Source(fileName, url, connection.getContentLengthLong(), connection.getLastModified());
+    }
+
+    private static Source resolve(Path file, String key) throws IOException {
+        return new Source(key, file.toUri().toURL(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private static int checksum(URL url) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] block = new byte[64 * 1024];
+        try (InputStream in = url.openStream()) {
+            int read;
+            while ((read = in.read(block)) > 0) {
+                crc.update(block, 0, read);
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,145 @@
+package mjolk.engine.graphics.mesh;
+
+import org.joml.Vector3f;
+
+/**
+ * CPU side copy of an indexed triangle mesh, as produced by the importers before it is uploaded to the GPU.
+ * Coarser levels of detail, if any, are extra index lists into the same vertex arrays.
+ */
+public class MeshData {
+
+    private final float[] positions;
+    private final float[] texCoords;
+    private final float[] normals;
+    private final int[] indices;
+    private final int[][] lods;
+    private final MaterialGroups groups;
+    private final Meshlets meshlets;
+    private final boolean optimized;
+
+    private static final int[][] NO_LODS = new int[0][];
+
+    public MeshData(float[] positions, float[] texCoords, float[] normals, int[] indices) {
+        this(positions, texCoords, normals, indices, NO_LODS, false);
+    }
+
+    /**
+     * @param optimized whether the triangle and vertex order went through {@link MeshOptimizer}
+     */
+    public MeshData(float[] positions, float[] texCoords, float[] normals, int[] indices, boolean optimized) {
+        this(positions, texCoords, normals, indices, NO_LODS, optimized);
+    }
+
+    /**
+     * @param lods index lists of the coarser levels of detail, from finest to coarsest
+     */
+    public MeshData(float[] positions, float[] texCoords, float[] normals, int[] indices, int[][] lods,
+                    boolean optimized) {
+        this(positions, texCoords, normals, indices, lods, null, null, optimized);
+    }
+
+    /**
+     * @param groups material groups with offsets for every level, or null for a single unnamed group
+     * @param meshlets clusters of the full detail level, or null
+     */
+    public MeshData(float[] positions, float[] texCoords, float[] normals, int[] indices, int[][] lods,
+                    MaterialGroups groups, Meshlets meshlets, boolean optimized) {
+        this.positions = positions;
+        this.texCoords = texCoords;
+        this.normals = normals;
+        this.indices = indices;
+        this.lods = lods;
+        this.groups = groups != null ? groups : MaterialGroups.single(levelIndexCounts(indices, lods));
+        this.meshlets = meshlets;
+        this.optimized = optimized;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getTexCoords() {
+        return texCoords;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+
+    /**
+     * @return the index lists of the coarser levels, level 0 is {@link #getIndices()} and not included
+     */
+    public int[][] getLods() {
+        return lods;
+    }
+
+    /**
+     * @return the number of levels of detail including the full detail mesh
+     */
+    public int getLodCount() {
+        return lods.length + 1;
+    }
+
+    public int[] getLodIndices(int lod) {
+        return lod == 0 ? indices : lods[lod - 1];
+    }
+
+    /**
+     * @return the index count of every level, finest first
+     */
+    public int[] getLodIndexCounts() {
+        return levelIndexCounts(indices, lods);
+    }
+
+    public MaterialGroups getMaterialGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the clusters of the full detail level, or null if the mesh was not split
+     */
+    public Meshlets getMeshlets() {
+        return meshlets;
+    }
+
+    /**
+     * Writes the axis aligned bounds of the vertex positions, both are zero for an empty mesh
+     */
+    public void computeBounds(Vector3f min, Vector3f max) {
+        Bounds bounds = computeBounds();
+        min.set(bounds.min);
+        max.set(bounds.max);
+    }
+
+    /**
+     * @return the box and bounding sphere of the vertex positions
+     */
+    public Bounds computeBounds() {
+        return Bounds.of(positions);
+    }
+
+    public boolean isOptimized() {
+        return optimized;
+    }
+
+    private static int[] levelIndexCounts(int[] indices, int[][] lods) {
+        int[] counts = new int[lods.length + 1];
+        counts[0] = indices.length;
+        for (int lod = 0; lod < lods.length; lod++) {
+            counts[lod + 1] = lods[lod].length;
+        }
+        return counts;
+    }
+}
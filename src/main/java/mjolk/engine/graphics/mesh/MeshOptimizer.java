@@ -0,0 +1,378 @@
+package mjolk.engine.graphics.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of an indexed mesh for the GPU.
+ * <p>
+ * Three passes are applied in order: triangles are reordered for post-transform vertex cache hits (Forsyth's
+ * linear-speed algorithm), optionally grouped into clusters that are sorted outside-in to cut overdraw, and the
+ * vertices are finally renumbered in order of first use so vertex fetch walks memory linearly.
+ */
+public class MeshOptimizer {
+
+    /** FIFO size used when simulating the post-transform cache for ACMR/ATVR */
+    public static final int DEFAULT_SIMULATED_CACHE = 16;
+
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[64];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scale = 1.0f - (i - 3) / (float) (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(scale, CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i < VALENCE_SCORES.length; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    /**
+     * Runs all passes, with overdraw ordering enabled
+     */
+    public static MeshData optimize(MeshData mesh) {
+        return optimize(mesh, true);
+    }
+
+    /**
+     * Triangles are only reordered within their material group, so the groups stay contiguous index ranges.
+     * @param reduceOverdraw also sort triangle clusters outside-in, trading a little cache efficiency for less overdraw
+     * @return a new mesh with the same triangles in an optimized order, without meshlets since those depend on the
+     * triangle order
+     */
+    public static MeshData optimize(MeshData mesh, boolean reduceOverdraw) {
+        MaterialGroups groups = mesh.getMaterialGroups();
+        int[][] levels = new int[mesh.getLodCount()][];
+        for (int lod = 0; lod < levels.length; lod++) {
+            int[] level = mesh.getLodIndices(lod);
+            levels[lod] = new int[level.length];
+            for (int g = 0; g < groups.getCount(); g++) {
+                int first = groups.getFirstIndex(lod, g);
+                int[] indices = optimizeVertexCache(Arrays.copyOfRange(level, first, first + groups.getIndexCount(lod, g)),
+                        mesh.getVertexCount());
+                if (reduceOverdraw) {
+                    indices = optimizeOverdraw(indices, mesh.getPositions(), mesh.getVertexCount());
+                }
+                System.arraycopy(indices, 0, levels[lod], first, indices.length);
+            }
+        }
+        MeshData fetched = optimizeVertexFetch(mesh.getPositions(), mesh.getTexCoords(), mesh.getNormals(), levels);
+        return new MeshData(fetched.getPositions(), fetched.getTexCoords(), fetched.getNormals(),
+                fetched.getIndices(), fetched.getLods(), groups, null, true);
+    }
+
+    /**
+     * Reorders triangles so that consecutive triangles share vertices that are still in the post-transform cache
+     * @return the reordered index list
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0) {
+            return indices.clone();
+        }
+
+        // Triangle adjacency per vertex in compressed form
+        int[] remaining = new int[vertexCount];
+        for (int index : indices) {
+            remaining[index]++;
+        }
+        int[] adjacencyStart = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyStart[v + 1] = adjacencyStart[v] + remaining[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int c = 0; c < 3; c++) {
+                adjacency[fill[indices[t * 3 + c]]++] = t;
+            }
+        }
+
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = vertexScore(-1, remaining[v]);
+        }
+
+        float[] triangleScore = new float[triangleCount];
+        boolean[] emitted = new boolean[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] result = new int[indices.length];
+        int bestTriangle = -1;
+        int scanCursor = 0;
+
+        for (int out = 0; out < triangleCount; out++) {
+            if (bestTriangle < 0) {
+                // Nothing adjacent to the cache, continue with the best of the next unemitted triangles
+                while (emitted[scanCursor]) {
+                    scanCursor++;
+                }
+                bestTriangle = scanCursor;
+                float bestScore = triangleScore[scanCursor];
+                for (int t = scanCursor + 1; t < Math.min(triangleCount, scanCursor + 64); t++) {
+                    if (!emitted[t] && triangleScore[t] > bestScore) {
+                        bestScore = triangleScore[t];
+                        bestTriangle = t;
+                    }
+                }
+            }
+
+            int a = indices[bestTriangle * 3], b = indices[bestTriangle * 3 + 1], c = indices[bestTriangle * 3 + 2];
+            result[out * 3] = a;
+            result[out * 3 + 1] = b;
+            result[out * 3 + 2] = c;
+            emitted[bestTriangle] = true;
+
+            // Put the triangle's vertices at the front of the LRU cache
+            int newCount = 0;
+            newCache[newCount++] = a;
+            if (b != a) newCache[newCount++] = b;
+            if (c != a && c != b) newCache[newCount++] = c;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) {
+                    newCache[newCount++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCount;
+
+            // Remove the emitted triangle from its vertices' adjacency
+            for (int corner = 0; corner < 3; corner++) {
+                int v = indices[bestTriangle * 3 + corner];
+                int start = adjacencyStart[v];
+                int end = start + remaining[v];
+                for (int i = start; i < end; i++) {
+                    if (adjacency[i] == bestTriangle) {
+                        adjacency[i] = adjacency[end - 1];
+                        remaining[v]--;
+                        break;
+                    }
+                }
+            }
+
+            // Rescore the cached vertices, then pick the best triangle touching them
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                float score = vertexScore(i < CACHE_SIZE ? i : -1, remaining[v]);
+                float delta = score - vertexScore[v];
+                vertexScore[v] = score;
+
+                int start = adjacencyStart[v];
+                for (int j = start; j < start + remaining[v]; j++) {
+                    triangleScore[adjacency[j]] += delta;
+                }
+            }
+
+            bestTriangle = -1;
+            float bestScore = -1;
+            for (int i = 0; i < Math.min(cacheCount, CACHE_SIZE); i++) {
+                int v = cache[i];
+                int start = adjacencyStart[v];
+                for (int j = start; j < start + remaining[v]; j++) {
+                    int t = adjacency[j];
+                    if (triangleScore[t] > bestScore) {
+                        bestScore = triangleScore[t];
+                        bestTriangle = t;
+                    }
+                }
+            }
+            if (cacheCount > CACHE_SIZE) {
+                cacheCount = CACHE_SIZE;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Splits the cache optimized triangle order into clusters at cache flush points and draws the clusters that
+     * face away from the mesh centre first, so that occluding outer surfaces tend to be rasterized earlier
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0) {
+            return indices.clone();
+        }
+
+        // A triangle missing the cache with all three vertices starts a new cluster
+        int[] clusterStart = new int[triangleCount + 1];
+        int clusterCount = 0;
+        int[] timestamps = new int[vertexCount];
+        int time = DEFAULT_SIMULATED_CACHE + 1;
+        for (int t = 0; t < triangleCount; t++) {
+            int misses = 0;
+            for (int c = 0; c < 3; c++) {
+                int v = indices[t * 3 + c];
+                if (time - timestamps[v] > DEFAULT_SIMULATED_CACHE) {
+                    timestamps[v] = time++;
+                    misses++;
+                }
+            }
+            if (misses == 3 || t == 0) {
+                clusterStart[clusterCount++] = t;
+            }
+        }
+        clusterStart[clusterCount] = triangleCount;
+
+        float mx = 0, my = 0, mz = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            mx += positions[v * 3];
+            my += positions[v * 3 + 1];
+            mz += positions[v * 3 + 2];
+        }
+        mx /= Math.max(vertexCount, 1);
+        my /= Math.max(vertexCount, 1);
+        mz /= Math.max(vertexCount, 1);
+
+        float[] sortKey = new float[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            float cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int t = clusterStart[cluster]; t < clusterStart[cluster + 1]; t++) {
+                int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+                float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+                float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+                float x = e1y * e2z - e1z * e2y;
+                float y = e1z * e2x - e1x * e2z;
+                float z = e1x * e2y - e1y * e2x;
+                float w = (float) Math.sqrt(x * x + y * y + z * z);
+
+                cx += (positions[a] + positions[b] + positions[c]) / 3 * w;
+                cy += (positions[a + 1] + positions[b + 1] + positions[c + 1]) / 3 * w;
+                cz += (positions[a + 2] + positions[b + 2] + positions[c + 2]) / 3 * w;
+                nx += x;
+                ny += y;
+                nz += z;
+                area += w;
+            }
+            if (area > 0) {
+                cx /= area;
+                cy /= area;
+                cz /= area;
+            }
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            sortKey[cluster] = (cx - mx) * nx + (cy - my) * ny + (cz - mz) * nz;
+            order[cluster] = cluster;
+        }
+
+        Arrays.sort(order, (l, r) -> Float.compare(sortKey[r], sortKey[l]));
+
+        int[] result = new int[indices.length];
+        int out = 0;
+        for (int cluster : order) {
+            int from = clusterStart[cluster] * 3;
+            int length = clusterStart[cluster + 1] * 3 - from;
+            System.arraycopy(indices, from, result, out, length);
+            out += length;
+        }
+        return result;
+    }
+
+    /**
+     * Renumbers vertices in order of first use and reorders the attribute arrays to match.
+     * Vertices not referenced by any triangle are dropped.
+     */
+    public static MeshData optimizeVertexFetch(float[] positions, float[] texCoords, float[] normals, int[] indices) {
+        return optimizeVertexFetch(positions, texCoords, normals, new int[][]{indices});
+    }
+
+    /**
+     * Renumbers vertices for a whole LOD chain sharing one vertex buffer, in order of first use by the finest level
+     * @param levels the index lists of every level, from finest to coarsest
+     */
+    public static MeshData optimizeVertexFetch(float[] positions, float[] texCoords, float[] normals, int[][] levels) {
+        int vertexCount = positions.length / 3;
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+
+        int next = 0;
+        int[][] newLevels = new int[levels.length][];
+        for (int lod = 0; lod < levels.length; lod++) {
+            int[] indices = levels[lod];
+            int[] newIndices = new int[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                int v = indices[i];
+                if (remap[v] < 0) {
+                    remap[v] = next++;
+                }
+                newIndices[i] = remap[v];
+            }
+            newLevels[lod] = newIndices;
+        }
+
+        float[] newPositions = new float[next * 3];
+        float[] newTexCoords = new float[next * 2];
+        float[] newNormals = new float[next * 3];
+        for (int v = 0; v < vertexCount; v++) {
+            int target = remap[v];
+            if (target < 0) continue;
+            System.arraycopy(positions, v * 3, newPositions, target * 3, 3);
+            System.arraycopy(texCoords, v * 2, newTexCoords, target * 2, 2);
+            System.arraycopy(normals, v * 3, newNormals, target * 3, 3);
+        }
+
+        return new MeshData(newPositions, newTexCoords, newNormals, newLevels[0],
+                Arrays.copyOfRange(newLevels, 1, newLevels.length), true);
+    }
+
+    /**
+     * Average cache miss ratio: transformed vertices per triangle with a simulated FIFO cache, 0.5 is ideal for
+     * large grid-like meshes and 3 is the worst case
+     */
+    public static float acmr(int[] indices, int vertexCount, int cacheSize) {
+        int triangles = indices.length / 3;
+        return triangles == 0 ? 0 : (float) simulateMisses(indices, vertexCount, cacheSize) / triangles;
+    }
+
+    /**
+     * Average transform to vertex ratio: transformed vertices per unique vertex, 1 is ideal
+     */
+    public static float atvr(int[] indices, int vertexCount, int cacheSize) {
+        return vertexCount == 0 ? 0 : (float) simulateMisses(indices, vertexCount, cacheSize) / vertexCount;
+    }
+
+    private static int simulateMisses(int[] indices, int vertexCount, int cacheSize) {
+        int[] timestamps = new int[vertexCount];
+        int time = cacheSize + 1;
+        int misses = 0;
+        for (int v : indices) {
+            if (time - timestamps[v] > cacheSize) {
+                timestamps[v] = time++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    private static float vertexScore(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1;
+        }
+        float score = cachePosition < 0 ? 0 : CACHE_SCORES[cachePosition];
+        return score + VALENCE_SCORES[Math.min(remainingTriangles, VALENCE_SCORES.length - 1)];
+    }
+}
@@ -0,0 +1,481 @@
+package mjolk.engine.graphics.mesh;
+
+import mjolk.engine.core.utils.IntList;
+import mjolk.engine.core.utils.VertexIndexMap;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the triangle count of an indexed mesh by quadric error edge collapse (Garland and Heckbert).
+ * <p>
+ * Vertices are welded by position first, so texture and normal seams do not keep the surface from collapsing, and
+ * every edge collapses onto one of its existing endpoints. The simplified index list therefore still points into
+ * the original vertex arrays, which lets all levels of a LOD chain share a single vertex buffer.
+ * Open borders are kept in place: a border vertex may only collapse along the border. The same holds for the edges
+ * between material groups, and the triangles of every group stay one contiguous range in every level.
+ */
+public class MeshSimplifier {
+
+    /** Triangle ratios of the generated levels relative to the full detail mesh */
+    public static final float[] DEFAULT_LOD_RATIOS = {0.5f, 0.25f, 0.12f};
+
+    /** Meshes with fewer triangles are cheap enough to always draw at full detail */
+    public static final int MIN_LOD_TRIANGLES = 256;
+
+    private static final int MAX_PASSES = 64;
+    private static final float BORDER_WEIGHT = 10f;
+    /** Collapses that turn a neighbouring triangle further than ~75 degrees are rejected */
+    private static final float MIN_NORMAL_COS = 0.25f;
+    /** A level is only kept if it removes at least this share of the triangles of the previous one */
+    private static final float MIN_LEVEL_REDUCTION = 0.1f;
+
+    /** How many candidates per needed collapse are considered before a pass stops */
+    private static final int CANDIDATE_SLACK = 4;
+
+    /** Doubles per quadric, the upper triangle of a symmetric 4x4 matrix */
+    private static final int Q = 10;
+
+    /**
+     * Builds a LOD chain with the default ratios
+     */
+    public static MeshData generateLods(MeshData mesh) {
+        return generateLods(mesh, DEFAULT_LOD_RATIOS);
+    }
+
+    /**
+     * Builds a LOD chain, each level simplified from the previous one. The chain stops early once the mesh can not
+     * be reduced any further, meshes below {@link #MIN_LOD_TRIANGLES} are returned without one.
+     * @param ratios triangle ratio of every level relative to the full detail mesh, from finest to coarsest
+     * @return the mesh with its coarser levels attached, the vertex arrays are shared with the input
+     */
+    public static MeshData generateLods(MeshData mesh, float[] ratios) {
+        if (mesh.getIndexCount() < MIN_LOD_TRIANGLES * 3) {
+            return mesh;
+        }
+
+        MaterialGroups groups = mesh.getMaterialGroups();
+        int[][] lods = new int[ratios.length][];
+        int[][] offsets = new int[ratios.length + 1][];
+        offsets[0] = groups.getOffsets(0);
+        int count = 0;
+
+        int[] previous = mesh.getIndices();
+        int triangles = mesh.getIndexCount() / 3;
+        for (float ratio : ratios) {
+            int target = Math.round(triangles * ratio) * 3;
+            int[] simplifiedOffsets = new int[groups.getCount() + 1];
+            int[] simplified = simplify(previous, mesh.getPositions(), target, offsets[count], simplifiedOffsets);
+            if (simplified.length == 0 || simplified.length > previous.length * (1 - MIN_LEVEL_REDUCTION)) {
+                break;
+            }
+            lods[count++] = simplified;
+            offsets[count] = simplifiedOffsets;
+            previous = simplified;
+        }
+
+        return new MeshData(mesh.getPositions(), mesh.getTexCoords(), mesh.getNormals(), mesh.getIndices(),
+                Arrays.copyOf(lods, count), groups.withOffsets(Arrays.copyOf(offsets, count + 1)),
+                mesh.getMeshlets(), false);
+    }
+
+    /**
+     * Collapses edges in order of increasing error until the index count drops to the target or no collapse
+     * is left that keeps the surface intact
+     * @param targetIndexCount the number of indices to aim for
+     * @return the simplified index list, into the same vertices as the input
+     */
+    public static int[] simplify(int[] indices, float[] positions, int targetIndexCount) {
+        return simplify(indices, positions, targetIndexCount, new int[]{0, indices.length}, new int[2]);
+    }
+
+    /**
+     * Simplifies a mesh made of material groups. Edges between two groups are kept like open borders, so every
+     * group keeps its outline, and the surviving triangles stay in their group range.
+     * @param groupOffsets first index of every group in {@code indices}, followed by the end of the last
+     * @param simplifiedOffsets receives the group offsets of the result
+     */
+    static int[] simplify(int[] indices, float[] positions, int targetIndexCount, int[] groupOffsets,
+                          int[] simplifiedOffsets) {
+        int vertexCount = positions.length / 3;
+        int targetTriangles = targetIndexCount / 3;
+
+        int[] weld = weld(positions);
+        int[] triangles = indices.clone();
+        boolean[] dead = new boolean[indices.length / 3];
+
+        int[] groups = new int[dead.length];
+        for (int g = 0; g + 1 < groupOffsets.length; g++) {
+            Arrays.fill(groups, groupOffsets[g] / 3, groupOffsets[g + 1] / 3, g);
+        }
+
+        int live = 0;
+        for (int t = 0; t < dead.length; t++) {
+            int a = weld[triangles[t * 3]], b = weld[triangles[t * 3 + 1]], c = weld[triangles[t * 3 + 2]];
+            dead[t] = a == b || b == c || a == c;
+            if (!dead[t]) live++;
+        }
+
+        double[] quadrics = new double[vertexCount * Q];
+        int[] adjacencyStart = new int[vertexCount + 1];
+        int[] adjacency = buildAdjacency(triangles, dead, weld, adjacencyStart);
+
+        boolean[] border = new boolean[vertexCount];
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) continue;
+            addFaceQuadric(quadrics, positions, weld, triangles, t);
+            for (int i = 0; i < 3; i++) {
+                int from = weld[triangles[t * 3 + i]];
+                int to = weld[triangles[t * 3 + (i + 1) % 3]];
+                if (!hasDirectedEdge(triangles, dead, weld, groups, adjacencyStart, adjacency, to, from, groups[t])) {
+                    border[from] = true;
+                    border[to] = true;
+                    addBorderQuadric(quadrics, positions, weld, triangles, t, from, to);
+                }
+            }
+        }
+
+        int[] lockedPass = new int[vertexCount];
+        Arrays.fill(lockedPass, -1);
+        IntList pairs = new IntList();
+
+        for (int pass = 0; pass < MAX_PASSES && live > targetTriangles; pass++) {
+            if (pass > 0) {
+                adjacency = buildAdjacency(triangles, dead, weld, adjacencyStart);
+            }
+
+            // Every edge of every live triangle, collapsed in its cheaper valid direction
+            IntList candidates = new IntList(live * 6);
+            IntList costs = new IntList(live * 3);
+            for (int t = 0; t < dead.length; t++) {
+                if (dead[t]) continue;
+                for (int i = 0; i < 3; i++) {
+                    int a = weld[triangles[t * 3 + i]];
+                    int b = weld[triangles[t * 3 + (i + 1) % 3]];
+
+                    boolean ab = canCollapse(triangles, dead, weld, groups, adjacencyStart, adjacency, border, a, b);
+                    boolean ba = canCollapse(triangles, dead, weld, groups, adjacencyStart, adjacency, border, b, a);
+                    if (!ab && !ba) continue;
+
+                    float costAB = ab ? collapseError(quadrics, positions, a, b) : Float.MAX_VALUE;
+                    float costBA = ba ? collapseError(quadrics, positions, b, a) : Float.MAX_VALUE;
+                    if (costAB <= costBA) {
+                        candidates.add(a, b);
+                        costs.add(Float.floatToIntBits(costAB));
+                    } else {
+                        candidates.add(b, a);
+                        costs.add(Float.floatToIntBits(costBA));
+                    }
+                }
+            }
+            if (costs.size() == 0) break;
+
+            // Non-negative float bits sort like the floats themselves
+            long[] order = new long[costs.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = ((long) costs.get(i) << 32) | i;
+            }
+            Arrays.sort(order);
+
+            // Each collapse removes about two triangles, but every edge is listed twice and many candidates get
+            // locked or rejected, so the cost limit is taken well past the number of collapses still needed
+            int goal = Math.min(order.length - 1, (live - targetTriangles) / 2 * CANDIDATE_SLACK);
+            float costLimit = Float.intBitsToFloat((int) (order[goal] >>> 32)) * 1.5f;
+
+            int collapsed = 0;
+            for (long entry : order) {
+                if (live <= targetTriangles) break;
+
+                float cost = Float.intBitsToFloat((int) (entry >>> 32));
+                if (cost > costLimit && collapsed > 0) break;
+
+                int candidate = (int) entry;
+                int from = candidates.get(candidate * 2);
+                int to = candidates.get(candidate * 2 + 1);
+                if (lockedPass[from] == pass || lockedPass[to] == pass) continue;
+                if (flipsTriangle(triangles, dead, weld, adjacencyStart, adjacency, positions, from, to)) continue;
+
+                for (int q = 0; q < Q; q++) {
+                    quadrics[to * Q + q] += quadrics[from * Q + q];
+                }
+
+                // Lock the one-ring so that the adjacency of the remaining candidates stays valid for this pass
+                lockedPass[to] = pass;
+                for (int k = adjacencyStart[from]; k < adjacencyStart[from + 1]; k++) {
+                    int t = adjacency[k];
+                    lockedPass[weld[triangles[t * 3]]] = pass;
+                    lockedPass[weld[triangles[t * 3 + 1]]] = pass;
+                    lockedPass[weld[triangles[t * 3 + 2]]] = pass;
+                }
+
+                live -= collapse(triangles, dead, weld, adjacencyStart, adjacency, pairs, from, to);
+                collapsed++;
+            }
+
+            if (collapsed == 0) break;
+        }
+
+        // Triangles keep their order, so the survivors of every group stay together
+        int[] result = new int[live * 3];
+        int out = 0;
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) continue;
+            System.arraycopy(triangles, t * 3, result, out, 3);
+            simplifiedOffsets[groups[t] + 1] = out += 3;
+        }
+        for (int g = 1; g < simplifiedOffsets.length; g++) {
+            simplifiedOffsets[g] = Math.max(simplifiedOffsets[g], simplifiedOffsets[g - 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Maps every vertex to the first vertex with the same position
+     */
+    static int[] weld(float[] positions) {
+        int vertexCount = positions.length / 3;
+        int[] weld = new int[vertexCount];
+        VertexIndexMap map = new VertexIndexMap(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            // Adding zero folds -0 into +0 so both weld together
+            weld[v] = map.putIfAbsent(
+                    Float.floatToIntBits(positions[v * 3] + 0.0f),
+                    Float.floatToIntBits(positions[v * 3 + 1] + 0.0f),
+                    Float.floatToIntBits(positions[v * 3 + 2] + 0.0f), v);
+        }
+        return weld;
+    }
+
+    /**
+     * Lists the live triangles around every welded vertex, in compressed rows indexed by {@code start}
+     */
+    private static int[] buildAdjacency(int[] triangles, boolean[] dead, int[] weld, int[] start) {
+        Arrays.fill(start, 0);
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) continue;
+            start[weld[triangles[t * 3]] + 1]++;
+            start[weld[triangles[t * 3 + 1]] + 1]++;
+            start[weld[triangles[t * 3 + 2]] + 1]++;
+        }
+        for (int v = 0; v < start.length - 1; v++) {
+            start[v + 1] += start[v];
+        }
+
+        int[] adjacency = new int[start[start.length - 1]];
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) continue;
+            adjacency[fill[weld[triangles[t * 3]]]++] = t;
+            adjacency[fill[weld[triangles[t * 3 + 1]]]++] = t;
+            adjacency[fill[weld[triangles[t * 3 + 2]]]++] = t;
+        }
+        return adjacency;
+    }
+
+    private static boolean hasDirectedEdge(int[] triangles, boolean[] dead, int[] weld, int[] groups, int[] start,
+                                           int[] adjacency, int from, int to, int group) {
+        for (int k = start[from]; k < start[from + 1]; k++) {
+            int t = adjacency[k];
+            if (dead[t] || groups[t] != group) continue;
+            for (int i = 0; i < 3; i++) {
+                if (weld[triangles[t * 3 + i]] == from && weld[triangles[t * 3 + (i + 1) % 3]] == to) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Interior vertices may collapse anywhere, border vertices only along a border edge or an edge between two
+     * material groups
+     */
+    private static boolean canCollapse(int[] triangles, boolean[] dead, int[] weld, int[] groups, int[] start,
+                                       int[] adjacency, boolean[] border, int from, int to) {
+        if (!border[from]) {
+            return true;
+        }
+        if (!border[to]) {
+            return false;
+        }
+
+        int shared = 0;
+        int firstGroup = -1;
+        boolean seam = false;
+        for (int k = start[from]; k < start[from + 1]; k++) {
+            int t = adjacency[k];
+            if (!dead[t] && contains(triangles, weld, t, to)) {
+                if (shared++ == 0) {
+                    firstGroup = groups[t];
+                } else {
+                    seam = groups[t] != firstGroup;
+                }
+            }
+        }
+        return shared == 1 || (shared == 2 && seam);
+    }
+
+    /**
+     * Checks whether moving {@code from} onto {@code to} would turn any of the remaining triangles around it over
+     */
+    private static boolean flipsTriangle(int[] triangles, boolean[] dead, int[] weld, int[] start, int[] adjacency,
+                                         float[] positions, int from, int to) {
+        for (int k = start[from]; k < start[from + 1]; k++) {
+            int t = adjacency[k];
+            if (dead[t] || contains(triangles, weld, t, to)) continue;
+
+            int a = weld[triangles[t * 3]], b = weld[triangles[t * 3 + 1]], c = weld[triangles[t * 3 + 2]];
+            float[] before = normal(positions, a, b, c);
+            float[] after = normal(positions, a == from ? to : a, b == from ? to : b, c == from ? to : c);
+
+            float dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            float lengths = (float) Math.sqrt(
+                    (before[0] * before[0] + before[1] * before[1] + before[2] * before[2])
+                            * (after[0] * after[0] + after[1] * after[1] + after[2] * after[2]));
+            if (dot <= MIN_NORMAL_COS * lengths) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves every corner of {@code from} onto {@code to} and kills the triangles on the collapsed edge.
+     * Corners are moved to a vertex of {@code to} they shared a triangle edge with where possible, so texture and
+     * normal seams stay intact.
+     * @return the number of triangles removed
+     */
+    private static int collapse(int[] triangles, boolean[] dead, int[] weld, int[] start, int[] adjacency,
+                                IntList pairs, int from, int to) {
+        int removed = 0;
+        pairs.clear();
+        for (int k = start[from]; k < start[from + 1]; k++) {
+            int t = adjacency[k];
+            if (dead[t] || !contains(triangles, weld, t, to)) continue;
+
+            pairs.add(corner(triangles, weld, t, from), corner(triangles, weld, t, to));
+            dead[t] = true;
+            removed++;
+        }
+
+        for (int k = start[from]; k < start[from + 1]; k++) {
+            int t = adjacency[k];
+            if (dead[t]) continue;
+
+            for (int i = t * 3; i < t * 3 + 3; i++) {
+                if (weld[triangles[i]] != from) continue;
+
+                int target = pairs.size() > 0 ? pairs.get(1) : to;
+                for (int p = 0; p < pairs.size(); p += 2) {
+                    if (pairs.get(p) == triangles[i]) {
+                        target = pairs.get(p + 1);
+                        break;
+                    }
+                }
+                triangles[i] = target;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean contains(int[] triangles, int[] weld, int t, int vertex) {
+        return weld[triangles[t * 3]] == vertex || weld[triangles[t * 3 + 1]] == vertex
+                || weld[triangles[t * 3 + 2]] == vertex;
+    }
+
+    /**
+     * @return the unwelded vertex of the triangle corner at the given welded vertex
+     */
+    private static int corner(int[] triangles, int[] weld, int t, int vertex) {
+        for (int i = t * 3; i < t * 3 + 3; i++) {
+            if (weld[triangles[i]] == vertex) {
+                return triangles[i];
+            }
+        }
+        return vertex;
+    }
+
+    private static float[] normal(float[] positions, int a, int b, int c) {
+        float e1x = positions[b * 3] - positions[a * 3];
+        float e1y = positions[b * 3 + 1] - positions[a * 3 + 1];
+        float e1z = positions[b * 3 + 2] - positions[a * 3 + 2];
+        float e2x = positions[c * 3] - positions[a * 3];
+        float e2y = positions[c * 3 + 1] - positions[a * 3 + 1];
+        float e2z = positions[c * 3 + 2] - positions[a * 3 + 2];
+        return new float[]{e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x};
+    }
+
+    /**
+     * Adds the plane of the triangle to its three vertices, weighted by the triangle area
+     */
+    private static void addFaceQuadric(double[] quadrics, float[] positions, int[] weld, int[] triangles, int t) {
+        int a = weld[triangles[t * 3]], b = weld[triangles[t * 3 + 1]], c = weld[triangles[t * 3 + 2]];
+        float[] n = normal(positions, a, b, c);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0) return;
+
+        double nx = n[0] / length, ny = n[1] / length, nz = n[2] / length;
+        double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+        double area = length * 0.5;
+
+        addPlane(quadrics, a, nx, ny, nz, d, area);
+        addPlane(quadrics, b, nx, ny, nz, d, area);
+        addPlane(quadrics, c, nx, ny, nz, d, area);
+    }
+
+    /**
+     * Adds a plane through the border edge, perpendicular to the triangle, so border vertices resist moving inwards
+     */
+    private static void addBorderQuadric(double[] quadrics, float[] positions, int[] weld, int[] triangles, int t,
+                                         int from, int to) {
+        float[] n = normal(positions, weld[triangles[t * 3]], weld[triangles[t * 3 + 1]], weld[triangles[t * 3 + 2]]);
+        double ex = positions[to * 3] - positions[from * 3];
+        double ey = positions[to * 3 + 1] - positions[from * 3 + 1];
+        double ez = positions[to * 3 + 2] - positions[from * 3 + 2];
+
+        double px = ey * n[2] - ez * n[1];
+        double py = ez * n[0] - ex * n[2];
+        double pz = ex * n[1] - ey * n[0];
+        double length = Math.sqrt(px * px + py * py + pz * pz);
+        if (length == 0) return;
+
+        px /= length;
+        py /= length;
+        pz /= length;
+        double d = -(px * positions[from * 3] + py * positions[from * 3 + 1] + pz * positions[from * 3 + 2]);
+        double weight = (ex * ex + ey * ey + ez * ez) * BORDER_WEIGHT;
+
+        addPlane(quadrics, from, px, py, pz, d, weight);
+        addPlane(quadrics, to, px, py, pz, d, weight);
+    }
+
+    private static void addPlane(double[] quadrics, int vertex, double a, double b, double c, double d, double weight) {
+        int q = vertex * Q;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    /**
+     * Error of moving {@code from} onto {@code to}: the combined quadric evaluated at the position of {@code to}
+     */
+    private static float collapseError(double[] quadrics, float[] positions, int from, int to) {
+        double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        double error = evaluate(quadrics, from, x, y, z) + evaluate(quadrics, to, x, y, z);
+        return (float) Math.max(error, 0);
+    }
+
+    private static double evaluate(double[] quadrics, int vertex, double x, double y, double z) {
+        int q = vertex * Q;
+        return quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+                + 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+                + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z
+                + quadrics[q + 9];
+    }
+}
@@ -0,0 +1,260 @@
+package mjolk.engine.graphics.mesh;
+
+import mjolk.engine.core.utils.FloatList;
+import mjolk.engine.core.utils.IntList;
+
+import java.util.Arrays;
+
+/**
+ * Splits the full detail level of a mesh into clusters of up to {@link #DEFAULT_MAX_TRIANGLES} triangles for
+ * per-cluster culling, see {@link Meshlets}.
+ * <p>
+ * Clusters are grown greedily over the triangles of one material group sharing a vertex position with the cluster,
+ * preferring triangles that share the most vertices and then the ones closest to the cluster, which keeps clusters
+ * compact and their normal cones narrow. The triangles of the full detail level are reordered so every cluster is one index range;
+ * within a cluster they keep the order they were added in, which walks neighbouring triangles and stays friendly
+ * to the vertex cache. Coarser levels are left alone: they are only picked when the model is small on screen,
+ * where culling parts of it does not pay off.
+ */
+public class MeshletBuilder {
+
+    public static final int DEFAULT_MAX_TRIANGLES = 64;
+
+    /** Meshes with fewer triangles are drawn whole, culling a handful of clusters costs more than it saves */
+    public static final int MIN_TRIANGLES = 1024;
+
+    /** How strongly cluster growth avoids triangles facing away from the cluster */
+    private static final float CONE_WEIGHT = 8f;
+
+    public static MeshData build(MeshData mesh) {
+        return build(mesh, DEFAULT_MAX_TRIANGLES);
+    }
+
+    /**
+     * @return the mesh with its full detail triangles in cluster order and the clusters attached, or the mesh itself
+     * if it has fewer than {@link #MIN_TRIANGLES} triangles
+     */
+    public static MeshData build(MeshData mesh, int maxTriangles) {
+        if (mesh.getIndexCount() < MIN_TRIANGLES * 3) {
+            return mesh;
+        }
+
+        float[] positions = mesh.getPositions();
+        int[] indices = mesh.getIndices();
+        int triangleCount = indices.length / 3;
+        int vertexCount = mesh.getVertexCount();
+
+        int[] weld = MeshSimplifier.weld(positions);
+
+        MaterialGroups materialGroups = mesh.getMaterialGroups();
+        int[] groups = new int[triangleCount];
+        for (int g = 0; g < materialGroups.getCount(); g++) {
+            int first = materialGroups.getFirstIndex(0, g) / 3;
+            Arrays.fill(groups, first, first + materialGroups.getIndexCount(0, g) / 3, g);
+        }
+        int[] groupStarts = new int[materialGroups.getCount() + 1];
+
+        // Triangles around every welded vertex, in compressed rows
+        int[] adjacencyStart = new int[vertexCount + 1];
+        for (int index : indices) {
+            adjacencyStart[weld[index] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyStart[v + 1] += adjacencyStart[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[weld[indices[i]]]++] = i / 3;
+        }
+
+        float[] centroids = new float[triangleCount * 3];
+        float[] faceNormals = new float[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+            for (int i = 0; i < 3; i++) {
+                centroids[t * 3 + i] = (positions[a + i] + positions[b + i] + positions[c + i]) / 3;
+            }
+            faceNormal(positions, a, b, c, faceNormals, t * 3);
+        }
+
+        boolean[] emitted = new boolean[triangleCount];
+        int[] candidateStamp = new int[triangleCount];
+        int[] vertexStamp = new int[vertexCount];
+        Arrays.fill(candidateStamp, -1);
+        Arrays.fill(vertexStamp, -1);
+
+        int[] ordered = new int[indices.length];
+        int out = 0;
+        IntList ranges = new IntList();
+        FloatList bounds = new FloatList();
+        FloatList cones = new FloatList();
+        IntList candidates = new IntList();
+        IntList cluster = new IntList(maxTriangles);
+
+        // Seeds advance through the triangles in order and clusters never leave the group of their seed, so the
+        // clusters of every group come out together and the group ranges stay where they were
+        int seed = 0;
+        int currentGroup = -1;
+        for (int meshlet = 0; out < indices.length; meshlet++) {
+            while (emitted[seed]) {
+                seed++;
+            }
+            int group = groups[seed];
+            while (currentGroup < group) {
+                groupStarts[++currentGroup] = meshlet;
+            }
+
+            cluster.clear();
+            candidates.clear();
+            float cx = 0, cy = 0, cz = 0;
+            float nx = 0, ny = 0, nz = 0;
+            int next = seed;
+            while (next >= 0) {
+                emitted[next] = true;
+                cluster.add(next);
+
+                int n = cluster.size();
+                cx += (centroids[next * 3] - cx) / n;
+                cy += (centroids[next * 3 + 1] - cy) / n;
+                cz += (centroids[next * 3 + 2] - cz) / n;
+                nx += faceNormals[next * 3];
+                ny += faceNormals[next * 3 + 1];
+                nz += faceNormals[next * 3 + 2];
+                float normalLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                float inverseLength = normalLength > 0 ? 1 / normalLength : 0;
+
+                for (int c = 0; c < 3; c++) {
+                    int v = weld[indices[next * 3 + c]];
+                    vertexStamp[v] = meshlet;
+                    for (int k = adjacencyStart[v]; k < adjacencyStart[v + 1]; k++) {
+                        int t = adjacency[k];
+                        if (!emitted[t] && candidateStamp[t] != meshlet && groups[t] == group) {
+                            candidateStamp[t] = meshlet;
+                            candidates.add(t);
+                        }
+                    }
+                }
+                if (cluster.size() == maxTriangles) break;
+
+                // Most shared vertices first, then closest to the cluster, where distance is stretched for
+                // triangles facing away from the cluster so the normal cone stays narrow
+                next = -1;
+                int bestShared = -1;
+                float bestDistance = Float.MAX_VALUE;
+                for (int i = 0; i < candidates.size(); i++) {
+                    int t = candidates.get(i);
+                    if (emitted[t]) {
+                        candidates.swapRemove(i--);
+                        continue;
+                    }
+
+                    int shared = 0;
+                    for (int c = 0; c < 3; c++) {
+                        if (vertexStamp[weld[indices[t * 3 + c]]] == meshlet) shared++;
+                    }
+                    float dx = centroids[t * 3] - cx, dy = centroids[t * 3 + 1] - cy, dz = centroids[t * 3 + 2] - cz;
+                    float facing = (faceNormals[t * 3] * nx + faceNormals[t * 3 + 1] * ny
+                            + faceNormals[t * 3 + 2] * nz) * inverseLength;
+                    float distance = (dx * dx + dy * dy + dz * dz) * (1 + CONE_WEIGHT * (1 - facing));
+                    if (shared > bestShared || (shared == bestShared && distance < bestDistance)) {
+                        next = t;
+                        bestShared = shared;
+                        bestDistance = distance;
+                    }
+                }
+            }
+
+            ranges.add(out, cluster.size() * 3);
+            for (int i = 0; i < cluster.size(); i++) {
+                System.arraycopy(indices, cluster.get(i) * 3, ordered, out, 3);
+                out += 3;
+            }
+            computeBounds(positions, ordered, out - cluster.size() * 3, out, bounds, cones);
+        }
+
+        while (currentGroup < groupStarts.length - 1) {
+            groupStarts[++currentGroup] = ranges.size() / 2;
+        }
+        return new MeshData(positions, mesh.getTexCoords(), mesh.getNormals(), ordered, mesh.getLods(),
+                materialGroups, new Meshlets(ranges.toArray(), bounds.toArray(), cones.toArray(), groupStarts),
+                mesh.isOptimized());
+    }
+
+    /**
+     * Appends the bounding sphere and normal cone of the triangles in {@code indices[from, to)}
+     */
+    private static void computeBounds(float[] positions, int[] indices, int from, int to,
+                                      FloatList bounds, FloatList cones) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            int v = indices[i] * 3;
+            minX = Math.min(minX, positions[v]);
+            minY = Math.min(minY, positions[v + 1]);
+            minZ = Math.min(minZ, positions[v + 2]);
+            maxX = Math.max(maxX, positions[v]);
+            maxY = Math.max(maxY, positions[v + 1]);
+            maxZ = Math.max(maxZ, positions[v + 2]);
+        }
+
+        float cx = (minX + maxX) * 0.5f, cy = (minY + maxY) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+        float radius = 0;
+        for (int i = from; i < to; i++) {
+            int v = indices[i] * 3;
+            float dx = positions[v] - cx, dy = positions[v + 1] - cy, dz = positions[v + 2] - cz;
+            radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+        }
+        bounds.add(cx, cy, cz);
+        bounds.add((float) Math.sqrt(radius));
+
+        // Unit face normals, their average is the cone axis
+        int triangles = (to - from) / 3;
+        float[] normals = new float[triangles * 3];
+        float ax = 0, ay = 0, az = 0;
+        for (int t = 0; t < triangles; t++) {
+            faceNormal(positions, indices[from + t * 3] * 3, indices[from + t * 3 + 1] * 3,
+                    indices[from + t * 3 + 2] * 3, normals, t * 3);
+            ax += normals[t * 3];
+            ay += normals[t * 3 + 1];
+            az += normals[t * 3 + 2];
+        }
+
+        float axisLength = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (axisLength == 0) {
+            cones.add(0, 0, 1);
+            cones.add(1);
+            return;
+        }
+        ax /= axisLength;
+        ay /= axisLength;
+        az /= axisLength;
+
+        float minDot = 1;
+        for (int t = 0; t < triangles; t++) {
+            float nx = normals[t * 3], ny = normals[t * 3 + 1], nz = normals[t * 3 + 2];
+            if (nx == 0 && ny == 0 && nz == 0) continue;
+            minDot = Math.min(minDot, nx * ax + ny * ay + nz * az);
+        }
+
+        // A cone wider than a hemisphere can not be back facing as a whole
+        float cutoff = minDot <= 0 ? 1 : (float) Math.sqrt(1 - minDot * minDot);
+        cones.add(ax, ay, az);
+        cones.add(cutoff);
+    }
+
+    /**
+     * Writes the unit normal of a triangle, zero for degenerate triangles
+     */
+    private static void faceNormal(float[] positions, int a, int b, int c, float[] out, int offset) {
+        float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+        float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+        float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            out[offset] = nx / length;
+            out[offset + 1] = ny / length;
+            out[offset + 2] = nz / length;
+        }
+    }
+}
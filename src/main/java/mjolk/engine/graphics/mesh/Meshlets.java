@@ -0,0 +1,65 @@
+package mjolk.engine.graphics.mesh;
+
+/**
+ * The clusters ("meshlets") a full detail mesh is split into for culling. Every cluster is a contiguous range of
+ * the index list, inside a single material group, with a bounding sphere and a normal cone, all in model space.
+ * <p>
+ * The cone is stored as an axis and a cutoff: the cluster faces away from every point p for which
+ * {@code dot(centre - p, axis) >= cutoff * |centre - p| + radius}. Clusters with a cutoff of 1 or more are never
+ * back facing as a whole.
+ */
+public class Meshlets {
+
+    /** Floats per cluster in the bounds and cone arrays */
+    public static final int STRIDE = 4;
+
+    private final int[] ranges;
+    private final float[] bounds;
+    private final float[] cones;
+    private final int[] groupStarts;
+
+    /**
+     * @param ranges first index and index count of every cluster
+     * @param bounds centre x, y, z and radius of every cluster
+     * @param cones axis x, y, z and cutoff of every cluster
+     * @param groupStarts first cluster of every material group, followed by the cluster count
+     */
+    public Meshlets(int[] ranges, float[] bounds, float[] cones, int[] groupStarts) {
+        this.ranges = ranges;
+        this.bounds = bounds;
+        this.cones = cones;
+        this.groupStarts = groupStarts;
+    }
+
+    public int getCount() {
+        return ranges.length / 2;
+    }
+
+    public int getFirstIndex(int meshlet) {
+        return ranges[meshlet * 2];
+    }
+
+    public int getIndexCount(int meshlet) {
+        return ranges[meshlet * 2 + 1];
+    }
+
+    public int[] getRanges() {
+        return ranges;
+    }
+
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public float[] getCones() {
+        return cones;
+    }
+
+    /**
+     * @return the first cluster of every material group followed by the cluster count, a cluster never spans two
+     * groups
+     */
+    public int[] getGroupStarts() {
+        return groupStarts;
+    }
+}
@@ -1,37 +1,241 @@
 package mjolk.engine.graphics.mesh;
 
+import mjolk.engine.core.assets.Asset;
 import mjolk.engine.graphics.material.Material;
 import mjolk.engine.graphics.material.Texture;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
 
-public class Model {
+import java.util.ArrayList;
+import java.util.List;
+
+public class Model extends Asset {
+
+    /** Meshes with fewer vertices than this can be indexed with unsigned shorts */
+    public static final int SHORT_INDEX_LIMIT = 65536;
 
     private int id;
     private int vertexCount;
+    private int indexType;
+    private int[] lodIndexCounts;
+    private long[] lodIndexOffsets;
     private Material material;
 
+    private Bounds bounds = new Bounds();
+    private Meshlets meshlets;
+    private List<Submesh> submeshes;
+
+    private Vector3f positionOffset = new Vector3f();
+    private Vector3f positionScale = new Vector3f(1);
+    private boolean octahedralNormals;
+
+    private Model() {
+        super(false);
+        this.indexType = GL11.GL_UNSIGNED_INT;
+        this.material = new Material();
+        setLods(new int[]{0});
+    }
+
+    /**
+     * An empty model that is not drawn until {@link #resolve(Model)} fills it in. Its material can be set up front
+     * and is kept when it resolves.
+     */
+    public static Model placeholder() {
+        return new Model();
+    }
+
+    /**
+     * Takes over the buffers, levels, bounds, submeshes and vertex encoding of a loaded model and marks this one ready, called on
+     * the GL thread
+     */
+    public void resolve(Model loaded) {
+        this.id = loaded.id;
+        this.vertexCount = loaded.vertexCount;
+        this.indexType = loaded.indexType;
+        this.lodIndexCounts = loaded.lodIndexCounts;
+        this.lodIndexOffsets = loaded.lodIndexOffsets;
+        this.bounds = loaded.bounds;
+        this.meshlets = loaded.meshlets;
+        this.submeshes = loaded.submeshes;
+        this.positionOffset = loaded.positionOffset;
+        this.positionScale = loaded.positionScale;
+        this.octahedralNormals = loaded.octahedralNormals;
+        markReady();
+    }
+
     public Model(int id, int vertexCount) {
+        this(id, vertexCount, GL11.GL_UNSIGNED_INT);
+    }
+
+    /**
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, the type of the element buffer bound to the VAO
+     */
+    public Model(int id, int vertexCount, int indexType) {
+        this(id, new int[]{vertexCount}, indexType);
+    }
+
+    /**
+     * @param lodIndexCounts index count of every level of detail, stored back to back in the element buffer
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, the type of the element buffer bound to the VAO
+     */
+    public Model(int id, int[] lodIndexCounts, int indexType) {
         this.id = id;
-        this.vertexCount = vertexCount;
+        this.vertexCount = lodIndexCounts[0];
+        this.indexType = indexType;
         this.material = new Material();
+        setLods(lodIndexCounts);
     }
 
     public Model(int id, int vertexCount, Texture texture) {
         this.id = id;
         this.vertexCount = vertexCount;
+        this.indexType = GL11.GL_UNSIGNED_INT;
         this.material = new Material(texture);
+        setLods(new int[]{vertexCount});
     }
 
     public Model(Model model, Texture texture) {
         this.id = model.id;
         this.vertexCount = model.vertexCount;
+        this.indexType = model.indexType;
+        this.lodIndexCounts = model.lodIndexCounts;
+        this.lodIndexOffsets = model.lodIndexOffsets;
+        this.bounds = model.bounds;
+        this.meshlets = model.meshlets;
+        this.submeshes = model.submeshes;
+        this.positionOffset = model.positionOffset;
+        this.positionScale = model.positionScale;
+        this.octahedralNormals = model.octahedralNormals;
         this.material = model.getMaterial();
         this.material.setTexture(texture);
     }
 
+    private void setLods(int[] lodIndexCounts) {
+        int indexSize = indexType == GL11.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        this.lodIndexCounts = lodIndexCounts;
+        this.lodIndexOffsets = new long[lodIndexCounts.length];
+        for (int lod = 1; lod < lodIndexCounts.length; lod++) {
+            lodIndexOffsets[lod] = lodIndexOffsets[lod - 1] + (long) lodIndexCounts[lod - 1] * indexSize;
+        }
+        buildSubmeshes(MaterialGroups.single(lodIndexCounts));
+    }
+
+    /**
+     * Replaces the submeshes with one per material group, all without a material of their own
+     */
+    public void setMaterialGroups(MaterialGroups groups) {
+        buildSubmeshes(groups);
+    }
+
+    private void buildSubmeshes(MaterialGroups groups) {
+        int indexSize = indexType == GL11.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        submeshes = new ArrayList<>(groups.getCount());
+        for (int g = 0; g < groups.getCount(); g++) {
+            int[] counts = new int[lodIndexCounts.length];
+            long[] offsets = new long[lodIndexCounts.length];
+            for (int lod = 0; lod < counts.length; lod++) {
+                counts[lod] = groups.getIndexCount(lod, g);
+                offsets[lod] = lodIndexOffsets[lod] + (long) groups.getFirstIndex(lod, g) * indexSize;
+            }
+            submeshes.add(new Submesh(g, groups.getName(g), counts, offsets));
+        }
+    }
+
+    /**
+     * Picks the smallest index type able to address every vertex of a mesh
+     */
+    public static int indexTypeFor(int meshVertexCount) {
+        return meshVertexCount < SHORT_INDEX_LIMIT ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+    }
+
     public int getVertexCount() {
         return vertexCount;
     }
 
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return the number of levels of detail, level 0 being the full detail mesh
+     */
+    public int getLodCount() {
+        return lodIndexCounts.length;
+    }
+
+    public int getLodIndexCount(int lod) {
+        return lodIndexCounts[lod];
+    }
+
+    /**
+     * @return the byte offset of the level in the element buffer, as passed to glDrawElements
+     */
+    public long getLodIndexOffset(int lod) {
+        return lodIndexOffsets[lod];
+    }
+
+    /**
+     * @return the model space box and bounding sphere, computed at import
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the centre of the bounding sphere in model space
+     */
+    public Vector3f getBoundsCentre() {
+        return bounds.centre;
+    }
+
+    public float getBoundsRadius() {
+        return bounds.radius;
+    }
+
+    /**
+     * Sets the box and the bounding sphere enclosing it
+     */
+    public void setBounds(Vector3f min, Vector3f max) {
+        bounds = new Bounds().set(min, max);
+    }
+
+    public void setBounds(Bounds bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * @return the model space position of a stored position of 0, see {@link VertexQuantizer}
+     */
+    public Vector3f getPositionOffset() {
+        return positionOffset;
+    }
+
+    /**
+     * @return the model space size of a stored position step from 0 to 1
+     */
+    public Vector3f getPositionScale() {
+        return positionScale;
+    }
+
+    /**
+     * Sets how the shaders turn stored positions into model space, as offset + position * scale
+     */
+    public void setPositionDecode(Vector3f offset, Vector3f scale) {
+        this.positionOffset = new Vector3f(offset);
+        this.positionScale = new Vector3f(scale);
+    }
+
+    /**
+     * @return whether the normals are stored as two octahedral components instead of three
+     */
+    public boolean hasOctahedralNormals() {
+        return octahedralNormals;
+    }
+
+    public void setOctahedralNormals(boolean octahedralNormals) {
+        this.octahedralNormals = octahedralNormals;
+    }
+
     public int getId() {
         return id;
     }
@@ -44,10 +248,35 @@ public class Model {
         material.setTexture(texture);
     }
 
+    /**
+     * @return the clusters of the full detail level for per-cluster culling, or null if the model is drawn whole
+     */
+    public Meshlets getMeshlets() {
+        return meshlets;
+    }
+
+    public void setMeshlets(Meshlets meshlets) {
+        this.meshlets = meshlets;
+    }
+
+    /**
+     * @return the material groups in draw order, at least one
+     */
+    public List<Submesh> getSubmeshes() {
+        return submeshes;
+    }
+
     public Material getMaterial() {
         return material;
     }
 
+    /**
+     * @return the material of the submesh, falling back to the model material
+     */
+    public Material getMaterial(Submesh submesh) {
+        return submesh.getMaterial() != null ? submesh.getMaterial() : material;
+    }
+
     public void setTexture(Texture texture, float reflectance) {
         this.material.setTexture(texture);
         this.material.setReflectance(reflectance);
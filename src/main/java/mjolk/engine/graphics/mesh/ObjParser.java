@@ -0,0 +1,670 @@
+package mjolk.engine.graphics.mesh;
+
+import mjolk.engine.core.utils.FloatList;
+import mjolk.engine.core.utils.IntList;
+import mjolk.engine.core.utils.Utils;
+import mjolk.engine.core.utils.VertexIndexMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Byte level Wavefront OBJ reader.
+ * <p>
+ * The file is streamed through a fixed buffer and every line is tokenized in place, so numbers are parsed
+ * straight out of the byte buffer into primitive arrays without creating Strings or boxed values.
+ */
+public class ObjParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Target size of one parallel chunk, small enough to balance well and large enough to amortise a task */
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Every value below this fits a double mantissa exactly */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    final FloatList positions = new FloatList(1024);
+    final FloatList texCoords = new FloatList(1024);
+    final FloatList normals = new FloatList(1024);
+
+    /** Face corners as (position, texture, normal) triples, zero based with -1 for a missing reference */
+    final IntList corners = new IntList(1024);
+    /**
+     * Where in {@link #corners} a negative index was resolved, counting back from the elements this parser read
+     * alone. Fixed by {@link #resolveRelative(List)} once the counts of the chunks before are known.
+     */
+    final IntList relativeCorners = new IntList();
+
+    /** Material names in the order this parser first saw them in a usemtl */
+    final List<String> materials = new ArrayList<>();
+    /** (first triangle, material) pairs, one per usemtl, the material an index into {@link #materials} */
+    final IntList materialSwitches = new IntList();
+    String materialLibrary;
+
+    private byte[] buf;
+    private int pos, end;
+
+    interface ByteSource {
+        int read(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Parses an OBJ file from the resources folder
+     * @param fileName resource path of the OBJ file
+     * @return the deduplicated, indexed mesh
+     */
+    public static MeshData parse(String fileName) throws Exception {
+        ObjParser parser = new ObjParser();
+        try (InputStream in = Utils.openResource(fileName)) {
+            parser.parse(in::read);
+        }
+        return assemble(List.of(parser));
+    }
+
+    /**
+     * Parses an OBJ file from disk using a single thread
+     */
+    public static MeshData parse(Path file) throws IOException {
+        ObjParser parser = new ObjParser();
+        try (InputStream in = Files.newInputStream(file)) {
+            parser.parse(in::read);
+        }
+        return assemble(List.of(parser));
+    }
+
+    /**
+     * Parses an OBJ file on the common ForkJoin pool
+     * @see #parseParallel(Path, ForkJoinPool)
+     */
+    public static MeshData parseParallel(Path file) throws IOException {
+        return parseParallel(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Memory maps the file, splits it into chunks at line boundaries and parses the v/vt/vn/f records of every
+     * chunk as a separate task. The chunk results are concatenated in file order before the vertices are
+     * deduplicated, so the mesh is identical to {@link #parse(Path)} whatever the pool size.
+     * @param file OBJ file on disk
+     * @param pool pool the chunks are parsed on
+     */
+    public static MeshData parseParallel(Path file, ForkJoinPool pool) throws IOException {
+        List<ObjParser> parsers = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = splitAtLines(channel);
+
+            List<ForkJoinTask<ObjParser>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+                tasks.add(pool.submit(() -> {
+                    ObjParser parser = new ObjParser();
+                    parser.parse((buffer, offset, length) -> {
+                        if (!region.hasRemaining()) return -1;
+                        int count = Math.min(length, region.remaining());
+                        region.get(buffer, offset, count);
+                        return count;
+                    });
+                    return parser;
+                }));
+            }
+
+            for (ForkJoinTask<ObjParser> task : tasks) {
+                parsers.add(task.join());
+            }
+        }
+
+        return assemble(parsers);
+    }
+
+    /**
+     * Concatenates the results of the chunk parsers in file order. A chunk inherits the material that was active at
+     * the end of the chunk before it.
+     */
+    private static MeshData assemble(List<ObjParser> parsers) {
+        resolveRelative(parsers);
+        List<String> names = new ArrayList<>();
+        int[] triangleMaterials = triangleMaterials(parsers, names);
+        String library = parsers.stream().map(p -> p.materialLibrary).filter(l -> l != null).findFirst().orElse(null);
+
+        if (parsers.size() == 1) {
+            ObjParser only = parsers.get(0);
+            return assemble(only.positions, only.texCoords, only.normals, only.corners, triangleMaterials, names, library);
+        }
+
+        FloatList positions = new FloatList(parsers.stream().mapToInt(p -> p.positions.size()).sum());
+        FloatList texCoords = new FloatList(parsers.stream().mapToInt(p -> p.texCoords.size()).sum());
+        FloatList normals = new FloatList(parsers.stream().mapToInt(p -> p.normals.size()).sum());
+        IntList corners = new IntList(parsers.stream().mapToInt(p -> p.corners.size()).sum());
+
+        for (ObjParser parser : parsers) {
+            positions.addAll(parser.positions);
+            texCoords.addAll(parser.texCoords);
+            normals.addAll(parser.normals);
+            corners.addAll(parser.corners);
+        }
+
+        return assemble(positions, texCoords, normals, corners, triangleMaterials, names, library);
+    }
+
+    /**
+     * Moves the negative indices of every chunk past the positions, texture coordinates and normals of the chunks
+     * before it
+     */
+    private static void resolveRelative(List<ObjParser> parsers) {
+        int[] before = new int[3];
+        for (ObjParser parser : parsers) {
+            for (int i = 0; i < parser.relativeCorners.size(); i++) {
+                int slot = parser.relativeCorners.get(i);
+                int index = parser.corners.get(slot) + before[slot % 3];
+                if (index < 0) {
+                    String type = slot % 3 == 0 ? "position" : slot % 3 == 1 ? "texture coordinate" : "normal";
+                    throw new IndexOutOfBoundsException("OBJ face counts back past the first " + type);
+                }
+                parser.corners.set(slot, index);
+            }
+            before[0] += parser.positions.size() / 3;
+            before[1] += parser.texCoords.size() / 2;
+            before[2] += parser.normals.size() / 3;
+        }
+    }
+
+    /**
+     * Resolves the material of every triangle across all chunks
+     * @param names receives the material names in order of first use, triangle materials index into it
+     */
+    private static int[] triangleMaterials(List<ObjParser> parsers, List<String> names) {
+        int total = 0;
+        for (ObjParser parser : parsers) {
+            total += parser.corners.size() / 9;
+        }
+
+        int[] materials = new int[total];
+        int current = -1;
+        int base = 0;
+        for (ObjParser parser : parsers) {
+            int from = 0;
+            for (int s = 0; s < parser.materialSwitches.size(); s += 2) {
+                int at = parser.materialSwitches.get(s);
+                Arrays.fill(materials, base + from, base + at, current);
+                from = at;
+                current = materialIndex(names, parser.materials.get(parser.materialSwitches.get(s + 1)));
+            }
+            int count = parser.corners.size() / 9;
+            Arrays.fill(materials, base + from, base + count, current);
+            base += count;
+        }
+
+        // Faces before the first usemtl
+        for (int t = 0; t < total; t++) {
+            if (materials[t] < 0) {
+                materials[t] = materialIndex(names, MaterialGroups.NO_MATERIAL);
+            }
+        }
+        return materials;
+    }
+
+    private static int materialIndex(List<String> names, String name) {
+        int index = names.indexOf(name);
+        if (index < 0) {
+            index = names.size();
+            names.add(name);
+        }
+        return index;
+    }
+
+    /**
+     * Picks chunk boundaries roughly {@link #CHUNK_SIZE} apart, each moved forward to just after a newline
+     * @return ascending offsets, starting at 0 and ending at the file size
+     */
+    private static long[] splitAtLines(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (long i = 1; i < chunks; i++) {
+            long position = Math.max(size * i / chunks, bounds.get(bounds.size() - 1));
+            long lineStart = -1;
+
+            while (lineStart < 0 && position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) break;
+                for (int j = 0; j < read; j++) {
+                    if (probe.get(j) == '\n') {
+                        lineStart = position + j + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+
+            if (lineStart < 0 || lineStart >= size) break;
+            if (lineStart > bounds.get(bounds.size() - 1)) {
+                bounds.add(lineStart);
+            }
+        }
+
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Reads the source to the end, parsing every complete line as soon as it is buffered
+     */
+    void parse(ByteSource source) throws IOException {
+        buf = new byte[BUFFER_SIZE];
+        int start = 0, scan = 0, filled = 0;
+        boolean eof = false;
+
+        while (true) {
+            int newline = -1;
+            for (int i = scan; i < filled; i++) {
+                if (buf[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if (newline >= 0) {
+                parseLine(start, newline);
+                start = newline + 1;
+                scan = start;
+                continue;
+            }
+
+            if (eof) {
+                if (start < filled) {
+                    parseLine(start, filled);
+                }
+                buf = null;
+                break;
+            }
+
+            // Keep the partial line and make room behind it for the next read
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, filled - start);
+                filled -= start;
+                start = 0;
+            } else if (filled == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            scan = filled;
+
+            int read = source.read(buf, filled, buf.length - filled);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    private void parseLine(int lineStart, int lineEnd) {
+        pos = lineStart;
+        end = lineEnd;
+
+        skipWhitespace();
+        if (pos >= end) return;
+
+        byte first = buf[pos];
+        byte second = pos + 1 < end ? buf[pos + 1] : (byte) ' ';
+
+        if (first == 'v' && isWhitespace(second)) {
+            pos += 1;
+            positions.add(nextFloat(), nextFloat(), nextFloat());
+        } else if (first == 'v' && second == 't' && (pos + 2 >= end || isWhitespace(buf[pos + 2]))) {
+            pos += 2;
+            texCoords.add(nextFloat(), nextFloat());
+        } else if (first == 'v' && second == 'n' && (pos + 2 >= end || isWhitespace(buf[pos + 2]))) {
+            pos += 2;
+            normals.add(nextFloat(), nextFloat(), nextFloat());
+        } else if (first == 'f' && isWhitespace(second)) {
+            pos += 1;
+            // Only the first three corners are read, larger polygons are not triangulated
+            for (int i = 0; i < 3; i++) {
+                parseCorner();
+            }
+        } else if (keyword("usemtl")) {
+            String name = restOfLine();
+            int material = materials.indexOf(name);
+            if (material < 0) {
+                material = materials.size();
+                materials.add(name);
+            }
+            materialSwitches.add(corners.size() / 9, material);
+        } else if (keyword("mtllib")) {
+            if (materialLibrary == null) {
+                materialLibrary = restOfLine();
+            }
+        }
+    }
+
+    /**
+     * Consumes the keyword if the line starts with it followed by whitespace or the end of the line
+     */
+    private boolean keyword(String keyword) {
+        int length = keyword.length();
+        if (end - pos < length || (end - pos > length && !isWhitespace(buf[pos + length]))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[pos + i] != keyword.charAt(i)) return false;
+        }
+        pos += length;
+        return true;
+    }
+
+    /**
+     * @return the rest of the line without surrounding whitespace, names may contain spaces
+     */
+    private String restOfLine() {
+        skipWhitespace();
+        int last = end;
+        while (last > pos && isWhitespace(buf[last - 1])) {
+            last--;
+        }
+        return new String(buf, pos, last - pos, StandardCharsets.UTF_8);
+    }
+
+    private void parseCorner() {
+        skipWhitespace();
+        if (pos >= end) {
+            throw malformed("face with fewer than three corners");
+        }
+
+        int posIndex = nextIndex(positions.size() / 3, 0);
+        int texIndex = -1;
+        int normIndex = -1;
+
+        if (pos < end && buf[pos] == '/') {
+            pos++;
+            if (pos < end && buf[pos] != '/' && !isWhitespace(buf[pos])) {
+                texIndex = nextIndex(texCoords.size() / 2, 1);
+            }
+            if (pos < end && buf[pos] == '/') {
+                pos++;
+                if (pos < end && !isWhitespace(buf[pos])) {
+                    normIndex = nextIndex(normals.size() / 3, 2);
+                }
+            }
+        }
+
+        corners.add(posIndex, texIndex, normIndex);
+    }
+
+    /**
+     * Reads a one based index, or a negative one counting back from the last element read so far, -1 being the last
+     * @param count the number of elements of the kind this parser has read
+     * @param slot the place of the reference in its corner triple
+     * @return the zero based index, for a negative index relative to the first element of this parser
+     */
+    private int nextIndex(int count, int slot) {
+        int index = nextInt();
+        if (index > 0) {
+            return index - 1;
+        }
+        if (index == 0) {
+            throw malformed("index 0");
+        }
+        relativeCorners.add(corners.size() + slot);
+        return count + index;
+    }
+
+    private int nextInt() {
+        boolean negative = false;
+        if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+
+        int start = pos;
+        long value = 0;
+        while (pos < end && isDigit(buf[pos])) {
+            value = value * 10 + (buf[pos] - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw malformed("index out of range");
+            }
+            pos++;
+        }
+
+        if (pos == start) {
+            throw malformed("expected an index");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parses the next whitespace separated float. Decimals that a double holds exactly are converted with a
+     * single correctly rounded operation and everything else falls back to {@link Float#parseFloat}, so the
+     * result always matches Float.parseFloat bit for bit.
+     */
+    private float nextFloat() {
+        skipWhitespace();
+        int start = pos;
+        if (pos >= end) {
+            throw malformed("expected a number");
+        }
+
+        boolean negative = false;
+        if (buf[pos] == '-' || buf[pos] == '+') {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true;
+
+        while (pos < end && isDigit(buf[pos])) {
+            if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+            } else {
+                exact = false;
+            }
+            digits++;
+            pos++;
+        }
+
+        if (pos < end && buf[pos] == '.') {
+            pos++;
+            while (pos < end && isDigit(buf[pos])) {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                digits++;
+                pos++;
+            }
+        }
+
+        if (digits > 0 && pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+                negativeExponent = buf[pos] == '-';
+                pos++;
+            }
+            int value = 0;
+            int expStart = pos;
+            while (pos < end && isDigit(buf[pos])) {
+                value = Math.min(value * 10 + (buf[pos] - '0'), 1000);
+                pos++;
+            }
+            if (pos == expStart) {
+                exact = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (pos < end && !isWhitespace(buf[pos])) {
+            exact = false;
+        }
+
+        if (exact && digits > 0 && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            if (isSafeToNarrow(value)) {
+                return (float) (negative ? -value : value);
+            }
+        }
+
+        while (pos < end && !isWhitespace(buf[pos])) {
+            pos++;
+        }
+        return Float.parseFloat(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Narrowing a correctly rounded double to float only loses correct rounding when the double landed exactly
+     * halfway between two floats, or when the result is subnormal
+     */
+    private static boolean isSafeToNarrow(double value) {
+        if (value == 0) return true;
+        if (value < Float.MIN_NORMAL || value > Float.MAX_VALUE) return false;
+        long halfwayBits = 1L << 28;
+        return (Double.doubleToRawLongBits(value) & ((1L << 29) - 1)) != halfwayBits;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(buf[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || b == 0x0B;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private NumberFormatException malformed(String reason) {
+        int lineStart = Math.min(pos, end);
+        while (lineStart > 0 && buf[lineStart - 1] != '\n') lineStart--;
+        String line = new String(buf, lineStart, end - lineStart, StandardCharsets.ISO_8859_1).trim();
+        return new NumberFormatException("Malformed OBJ line, " + reason + ": " + line);
+    }
+
+    /**
+     * Builds the final vertex and index arrays, creating one vertex per unique (position, texture, normal)
+     * combination in the order they are first referenced
+     */
+    static MeshData assemble(FloatList positions, FloatList texCoords, FloatList normals, IntList corners) {
+        return assemble(positions, texCoords, normals, corners, new int[corners.size() / 9],
+                List.of(MaterialGroups.NO_MATERIAL), null);
+    }
+
+    /**
+     * Builds the final arrays like {@link #assemble(FloatList, FloatList, FloatList, IntList)} and then sorts the
+     * triangles by material, keeping their file order within a material
+     * @param triangleMaterials material of every triangle, an index into {@code names}
+     */
+    static MeshData assemble(FloatList positions, FloatList texCoords, FloatList normals, IntList corners,
+                             int[] triangleMaterials, List<String> names, String library) {
+        int cornerCount = corners.size() / 3;
+        float[] pos = positions.getData();
+        float[] tex = texCoords.getData();
+        float[] norm = normals.getData();
+        int[] refs = corners.getData();
+
+        FloatList finalPositions = new FloatList(cornerCount * 3);
+        FloatList finalTexCoords = new FloatList(cornerCount * 2);
+        FloatList finalNormals = new FloatList(cornerCount * 3);
+        int[] indices = new int[cornerCount];
+
+        VertexIndexMap vertexMap = new VertexIndexMap(cornerCount);
+
+        for (int c = 0; c < cornerCount; c++) {
+            int posIndex = refs[c * 3];
+            int texIndex = refs[c * 3 + 1];
+            int normIndex = refs[c * 3 + 2];
+
+            int next = finalPositions.size() / 3;
+            int index = vertexMap.putIfAbsent(posIndex, texIndex, normIndex, next);
+            if (index == next) {
+                checkReference(posIndex, positions.size() / 3, "position");
+                finalPositions.add(pos[posIndex * 3], pos[posIndex * 3 + 1], pos[posIndex * 3 + 2]);
+
+                if (texIndex >= 0) {
+                    checkReference(texIndex, texCoords.size() / 2, "texture coordinate");
+                    finalTexCoords.add(tex[texIndex * 2], 1.0f - tex[texIndex * 2 + 1]);
+                } else {
+                    finalTexCoords.add(0f, 0f);
+                }
+
+                if (normIndex >= 0) {
+                    checkReference(normIndex, normals.size() / 3, "normal");
+                    finalNormals.add(norm[normIndex * 3], norm[normIndex * 3 + 1], norm[normIndex * 3 + 2]);
+                } else {
+                    finalNormals.add(0f, 0f, 1f);
+                }
+            }
+
+            indices[c] = index;
+        }
+
+        // Counting sort of the triangles by material, dropping materials without faces
+        int[] starts = new int[names.size() + 1];
+        for (int material : triangleMaterials) {
+            starts[material + 1] += 3;
+        }
+        List<String> groupNames = new ArrayList<>();
+        IntList offsets = new IntList();
+        for (int m = 0; m < names.size(); m++) {
+            if (starts[m + 1] > 0) {
+                groupNames.add(names.get(m));
+                offsets.add(starts[m]);
+            }
+            starts[m + 1] += starts[m];
+        }
+        offsets.add(indices.length);
+
+        int[] sorted = indices;
+        if (groupNames.size() > 1) {
+            sorted = new int[indices.length];
+            for (int t = 0; t < triangleMaterials.length; t++) {
+                System.arraycopy(indices, t * 3, sorted, starts[triangleMaterials[t]], 3);
+                starts[triangleMaterials[t]] += 3;
+            }
+        } else if (groupNames.isEmpty()) {
+            groupNames.add(MaterialGroups.NO_MATERIAL);
+            offsets.add(0);
+        }
+
+        MaterialGroups groups = new MaterialGroups(library, groupNames.toArray(new String[0]),
+                new int[][]{offsets.toArray()});
+        return new MeshData(finalPositions.toArray(), finalTexCoords.toArray(), finalNormals.toArray(), sorted,
+                new int[0][], groups, null, false);
+    }
+
+    private static void checkReference(int index, int count, String type) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("OBJ face references " + type + " " + (index + 1)
+                    + " but only " + count + " are defined");
+        }
+    }
+}
@@ -1,188 +1,557 @@
 package mjolk.engine.graphics.mesh;
 
+import mjolk.engine.core.utils.IntList;
 import mjolk.engine.core.utils.Utils;
-import mjolk.engine.core.utils.VertexKey;
-import org.joml.Vector2f;
+import mjolk.engine.graphics.material.Material;
+import mjolk.engine.graphics.material.MtlParser;
+import mjolk.engine.graphics.material.Texture;
+import mjolk.engine.graphics.material.TextureArrays;
+import mjolk.engine.graphics.material.TextureCache;
+import mjolk.engine.graphics.material.TextureContainer;
+import mjolk.engine.graphics.material.TextureData;
+import mjolk.engine.graphics.material.TextureStreamer;
 import org.joml.Vector3f;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static mjolk.engine.core.maths.Constants.TEXTURE_BUDGET_MB;
 
 public class ObjectLoader {
+    private static final Logger LOGGER = Logger.getLogger(ObjectLoader.class.getName());
 
     private List<Integer> vaos = new ArrayList<>();
-    private List<Integer> vbos = new ArrayList<>();
+    /** The buffers of every VAO, so a single model can be unloaded */
+    private Map<Integer, List<Integer>> vbos = new HashMap<>();
     private List<Integer> textures = new ArrayList<>();
+    private int currentVao;
+
+    /** Floats per vertex in the interleaved layout: position, texture coordinate, normal */
+    private static final int INTERLEAVED_FLOATS = 3 + 2 + 3;
+
+    private MeshCache meshCache = new MeshCache(MeshCache.DEFAULT_DIRECTORY);
+    private final TextureArrays textureArrays = new TextureArrays();
+    private final TextureCache textureCache;
+    private final TextureStreamer textureStreamer = new TextureStreamer();
+    private TextureContainer textureContainer = new TextureContainer(TextureContainer.DEFAULT_DIRECTORY);
+    private VertexLayout vertexLayout = VertexLayout.SEPARATE;
+    private boolean optimizeMeshes = false;
+    private boolean generateLods = false;
+    private boolean buildMeshlets = false;
+    private boolean quantizePositions = false;
+
+    public ObjectLoader() {
+        // Evicting only needs the texture list, so the loader itself is not handed to the cache
+        List<Integer> loaded = textures;
+        textureCache = new TextureCache(TEXTURE_BUDGET_MB * 1_000_000L, textureArrays,
+                texture -> deleteTexture(loaded, texture.getId()));
+    }
 
+    /**
+     * Loads an OBJ from the resources folder. The first load writes the mesh to the mesh cache, later loads
+     * map the cached copy and upload it without parsing.
+     */
     public Model loadOBJModel(String fileName) throws Exception {
+        return importOBJModel(fileName, false).call();
+    }
 
-        List<String> lines = Utils.readAllLines(fileName);
-
-        List<Vector3f> positions = new ArrayList<>();
-        List<Vector2f> texCoords = new ArrayList<>();
-        List<Vector3f> normals   = new ArrayList<>();
-
-        List<Float> finalPositions = new ArrayList<>();
-        List<Float> finalTexCoords = new ArrayList<>();
-        List<Float> finalNormals   = new ArrayList<>();
-        List<Integer> indices      = new ArrayList<>();
-
-        Map<VertexKey, Integer> vertexMap = new HashMap<>();
-
-        for (String line : lines) {
-            String[] tokens = line.split("\\s+");
-
-            switch (tokens[0]) {
-
-                case "v":
-                    positions.add(new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3])));
-                    break;
-
-                case "vt":
-                    texCoords.add(new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2])));
-                    break;
-
-                case "vn":
-                    normals.add(new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3])));
-                    break;
-
-                case "f":
-                    for (int i = 1; i <= 3; i++) {
-                        String[] parts = tokens[i].split("/");
-
-                        int posIndex  = Integer.parseInt(parts[0]) - 1;
-                        int texIndex  = parts.length > 1 && !parts[1].isEmpty()
-                                ? Integer.parseInt(parts[1]) - 1 : -1;
-                        int normIndex = parts.length > 2
-                                ? Integer.parseInt(parts[2]) - 1 : -1;
-
-                        VertexKey key = new VertexKey(posIndex, texIndex, normIndex);
-
-                        Integer index = vertexMap.get(key);
-                        if (index == null) {
-                            index = finalPositions.size() / 3;
-                            vertexMap.put(key, index);
-
-                            Vector3f pos = positions.get(posIndex);
-                            finalPositions.add(pos.x);
-                            finalPositions.add(pos.y);
-                            finalPositions.add(pos.z);
-
-                            if (texIndex >= 0) {
-                                Vector2f uv = texCoords.get(texIndex);
-                                finalTexCoords.add(uv.x);
-                                finalTexCoords.add(1.0f - uv.y);
-                            } else {
-                                finalTexCoords.add(0f);
-                                finalTexCoords.add(0f);
-                            }
-
-                            if (normIndex >= 0) {
-                                Vector3f n = normals.get(normIndex);
-                                finalNormals.add(n.x);
-                                finalNormals.add(n.y);
-                                finalNormals.add(n.z);
-                            } else {
-                                finalNormals.add(0f);
-                                finalNormals.add(0f);
-                                finalNormals.add(1f);
-                            }
-                        }
+    /**
+     * The part of {@link #loadOBJModel(String)} that does not touch GL: reads the cache entry, or parses, prepares
+     * and caches the OBJ, and reads its materials. May run on any thread.
+     * @return the upload of the mesh, to be called on the GL thread. The diffuse maps of its materials go through the
+     * {@link TextureStreamer} and are drawn once they are in.
+     */
+    public Callable<Model> importOBJModel(String fileName) throws Exception {
+        return importOBJModel(fileName, true);
+    }
+
+    /**
+     * @param stream whether the upload streams the diffuse maps or uploads them before returning
+     */
+    private Callable<Model> importOBJModel(String fileName, boolean stream) throws Exception {
+        Path file = Utils.getResourcePath(fileName);
+        Path directory = file == null ? null : file.getParent();
+
+        if (meshCache != null) {
+            CompiledMesh cached = usable(meshCache.load(fileName));
+            if (cached != null) {
+                MaterialImport materials = importMaterials(cached.getMaterialGroups(), directory);
+                return () -> materials.apply(loadModel(cached), stream);
+            }
+        }
+
+        MeshData mesh = prepare(ObjParser.parse(fileName));
+        if (meshCache != null) {
+            meshCache.store(fileName, mesh);
+        }
+        MaterialImport materials = importMaterials(mesh.getMaterialGroups(), directory);
+        return () -> materials.apply(loadModel(mesh), stream);
+    }
+
+    /**
+     * Loads a resource OBJ with the parallel memory mapped importer, which pays off for very large files.
+     * Resources that are not plain files (e.g. packed in a jar) can not be mapped and are streamed instead.
+     */
+    public Model loadOBJModelParallel(String fileName) throws Exception {
+        Path file = Utils.getResourcePath(fileName);
+        if (file == null) {
+            return loadOBJModel(fileName);
+        }
+
+        if (meshCache != null) {
+            CompiledMesh cached = usable(meshCache.load(fileName));
+            if (cached != null) {
+                return importMaterials(cached.getMaterialGroups(), file.getParent()).apply(loadModel(cached), false);
+            }
+        }
+
+        MeshData mesh = prepare(ObjParser.parseParallel(file));
+        if (meshCache != null) {
+            meshCache.store(fileName, mesh);
+        }
+        return importMaterials(mesh.getMaterialGroups(), file.getParent()).apply(loadModel(mesh), false);
+    }
+
+    public Model loadOBJModelParallel(Path file) throws Exception {
+        Path directory = file.toAbsolutePath().getParent();
+        if (meshCache != null) {
+            CompiledMesh cached = usable(meshCache.load(file));
+            if (cached != null) {
+                return importMaterials(cached.getMaterialGroups(), directory).apply(loadModel(cached), false);
+            }
+        }
+
+        MeshData mesh = prepare(ObjParser.parseParallel(file));
+        if (meshCache != null) {
+            meshCache.store(file, mesh);
+        }
+        return importMaterials(mesh.getMaterialGroups(), directory).apply(loadModel(mesh), false);
+    }
+
+    /**
+     * Reads the mtllib of an OBJ and decodes its diffuse maps, without touching GL. May run on any thread.
+     * @param directory the directory of the OBJ file, null if it is not on disk
+     * @return the materials, to be given to the uploaded model on the GL thread
+     */
+    private MaterialImport importMaterials(MaterialGroups groups, Path directory) throws Exception {
+        if (groups.getLibrary() == null || directory == null) {
+            return new MaterialImport(Map.of(), Map.of());
+        }
+
+        Path library = directory.resolve(groups.getLibrary());
+        if (!Files.isRegularFile(library)) {
+            LOGGER.warning("Material library not found: " + library);
+            return new MaterialImport(Map.of(), Map.of());
+        }
+
+        // One placeholder per map, however many materials share it
+        Map<String, Texture> placeholders = new HashMap<>();
+        Map<Texture, DecodedMap> maps = new IdentityHashMap<>();
+        Map<String, Material> materials = MtlParser.parse(Files.readAllLines(library), path -> {
+            Texture texture = placeholders.get(path);
+            if (texture == null) {
+                String file = directory.resolve(path).toString();
+                TextureData data = decodeTexture(file);
+                texture = Texture.placeholder();
+                placeholders.put(path, texture);
+                maps.put(texture, new DecodedMap(file, data));
+            }
+            return texture;
+        });
+        return new MaterialImport(materials, maps);
+    }
 
-                        indices.add(index);
+    /**
+     * The file and decoded pixels of a diffuse map
+     */
+    private record DecodedMap(String file, TextureData data) {
+    }
+
+    /**
+     * The materials of an OBJ with their diffuse maps decoded, each map a placeholder texture until it is uploaded
+     */
+    private class MaterialImport {
+        private final Map<String, Material> materials;
+        private final Map<Texture, DecodedMap> maps;
+
+        MaterialImport(Map<String, Material> materials, Map<Texture, DecodedMap> maps) {
+            this.materials = materials;
+            this.maps = maps;
+        }
+
+        /**
+         * Uploads the maps that are not in the texture cache yet, taking one cache reference per map, and gives
+         * every submesh its material. Submeshes without a match in the library keep using the model material, as do
+         * all submeshes when the library is missing. Must be called on the GL thread.
+         * @param stream whether to upload the maps over the next frames through the {@link TextureStreamer},
+         * materials drawing untextured until their map is in, rather than in one blocking upload each
+         */
+        Model apply(Model model, boolean stream) {
+            for (Map.Entry<Texture, DecodedMap> map : maps.entrySet()) {
+                Texture placeholder = map.getKey();
+                String file = map.getValue().file();
+                TextureData data = map.getValue().data();
+
+                Texture cached = textureCache.acquire(file);
+                if (cached != null) {
+                    // Decoded for nothing, the cache is only asked on the GL thread
+                    data.free();
+                    for (Material material : materials.values()) {
+                        if (material.getTexture() == placeholder) {
+                            material.setTexture(cached);
+                        }
                     }
-                    break;
+                    continue;
+                }
+                textureCache.add(file, placeholder);
+                if (stream) {
+                    streamTexture(data, loaded -> {
+                        placeholder.resolve(loaded);
+                        textureCache.accountLoaded(placeholder);
+                    });
+                } else {
+                    placeholder.resolve(uploadTexture(data));
+                    textureCache.accountLoaded(placeholder);
+                }
+            }
+
+            for (Submesh submesh : model.getSubmeshes()) {
+                submesh.setMaterial(materials.get(submesh.getMaterialName()));
             }
+            return model;
         }
+    }
 
-        float[] verticesArray = toFloatArray(finalPositions);
-        float[] texArray = toFloatArray(finalTexCoords);
-        float[] normalArray = toFloatArray(finalNormals);
-        int[] indexArray = indices.stream().mapToInt(i -> i).toArray();
+    /**
+     * Cache entries written without optimization or without a LOD chain are not good enough for a loader that
+     * asks for them
+     */
+    private CompiledMesh usable(CompiledMesh cached) {
+        if (cached == null || (optimizeMeshes && !cached.isOptimized())) {
+            return null;
+        }
+        if (generateLods && cached.getLodIndexCounts().length == 1
+                && cached.getIndexCount() >= MeshSimplifier.MIN_LOD_TRIANGLES * 3) {
+            return null;
+        }
+        if (buildMeshlets && cached.getMeshlets() == null
+                && cached.getLodIndexCounts()[0] >= MeshletBuilder.MIN_TRIANGLES * 3) {
+            return null;
+        }
+        return cached;
+    }
 
-        return loadModel(verticesArray, texArray, normalArray, indexArray);
+    private MeshData prepare(MeshData mesh) {
+        if (generateLods) {
+            mesh = MeshSimplifier.generateLods(mesh);
+        }
+        if (optimizeMeshes) {
+            mesh = MeshOptimizer.optimize(mesh);
+        }
+        // Last, the cluster order replaces the triangle order of the full detail level
+        return buildMeshlets ? MeshletBuilder.build(mesh) : mesh;
     }
 
     public Model loadModel(float[] vertices, float[] textureCoords, float[] normals, int[] indices) {
+        return loadModel(new MeshData(vertices, textureCoords, normals, indices));
+    }
+
+    /**
+     * Uploads a mesh, with all its levels of detail back to back in one element buffer
+     */
+    public Model loadModel(MeshData mesh) {
+        float[] vertices = mesh.getPositions();
+        float[] textureCoords = mesh.getTexCoords();
+        float[] normals = mesh.getNormals();
+
+        int[] lodIndexCounts = new int[mesh.getLodCount()];
+        int[] indices = mesh.getIndices();
+        lodIndexCounts[0] = indices.length;
+        if (lodIndexCounts.length > 1) {
+            IntList levels = new IntList(indices.length * 2);
+            for (int lod = 0; lod < lodIndexCounts.length; lod++) {
+                int[] level = mesh.getLodIndices(lod);
+                lodIndexCounts[lod] = level.length;
+                for (int index : level) {
+                    levels.add(index);
+                }
+            }
+            indices = levels.toArray();
+        }
+
+        Bounds bounds = mesh.computeBounds();
+
         int id = createVAO();
-        storeIndicesBuffer(indices);
-        storeDataInAttribList(0, 3, vertices);
-        storeDataInAttribList(1, 2, textureCoords);
-        storeDataInAttribList(2, 3, normals);
+        int indexType = storeIndicesBuffer(indices, vertices.length / 3);
+
+        if (vertexLayout == VertexLayout.QUANTIZED) {
+            storeQuantized(vertices, textureCoords, normals, bounds);
+        } else if (vertexLayout == VertexLayout.INTERLEAVED) {
+            FloatBuffer buffer = MemoryUtil.memAllocFloat(vertices.length / 3 * INTERLEAVED_FLOATS);
+            for (int v = 0; v < vertices.length / 3; v++) {
+                buffer.put(vertices, v * 3, 3).put(textureCoords, v * 2, 2).put(normals, v * 3, 3);
+            }
+            buffer.flip();
+            storeInterleaved(MemoryUtil.memByteBuffer(buffer));
+            MemoryUtil.memFree(buffer);
+        } else {
+            storeDataInAttribList(0, 3, vertices);
+            storeDataInAttribList(1, 2, textureCoords);
+            storeDataInAttribList(2, 3, normals);
+        }
+
         unbind();
-        return new Model(id, indices.length);
+
+        Model model = new Model(id, lodIndexCounts, indexType);
+        model.setBounds(bounds);
+        setVertexEncoding(model, bounds);
+        model.setMeshlets(mesh.getMeshlets());
+        model.setMaterialGroups(mesh.getMaterialGroups());
+        return model;
     }
 
-    public int loadTexture(String filename) throws Exception {
-        int width, height;
-        ByteBuffer buffer;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer c = stack.mallocInt(1);
+    /**
+     * Uploads a cached mesh. With the separate layout the mapped buffers go to the driver without an intermediate
+     * copy, the interleaved and quantized layouts need one pass to weave the attributes together.
+     */
+    public Model loadModel(CompiledMesh mesh) {
+        int id = createVAO();
+        storeIndicesBuffer(mesh.getIndices());
+
+        if (vertexLayout == VertexLayout.QUANTIZED) {
+            float[] positions = new float[mesh.getVertexCount() * 3];
+            float[] texCoords = new float[mesh.getVertexCount() * 2];
+            float[] normals = new float[mesh.getVertexCount() * 3];
+            mesh.getPositions().asFloatBuffer().get(positions);
+            mesh.getTexCoords().asFloatBuffer().get(texCoords);
+            mesh.getNormals().asFloatBuffer().get(normals);
+            storeQuantized(positions, texCoords, normals, mesh.getBounds());
+        } else if (vertexLayout == VertexLayout.INTERLEAVED) {
+            ByteBuffer positions = mesh.getPositions();
+            ByteBuffer texCoords = mesh.getTexCoords();
+            ByteBuffer normals = mesh.getNormals();
+
+            FloatBuffer buffer = MemoryUtil.memAllocFloat(mesh.getVertexCount() * INTERLEAVED_FLOATS);
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                int p = v * 3 * Float.BYTES;
+                int t = v * 2 * Float.BYTES;
+                buffer.put(positions.getFloat(p)).put(positions.getFloat(p + 4)).put(positions.getFloat(p + 8))
+                        .put(texCoords.getFloat(t)).put(texCoords.getFloat(t + 4))
+                        .put(normals.getFloat(p)).put(normals.getFloat(p + 4)).put(normals.getFloat(p + 8));
+            }
+            buffer.flip();
+            storeInterleaved(MemoryUtil.memByteBuffer(buffer));
+            MemoryUtil.memFree(buffer);
+        } else {
+            storeDataInAttribList(0, 3, mesh.getPositions());
+            storeDataInAttribList(1, 2, mesh.getTexCoords());
+            storeDataInAttribList(2, 3, mesh.getNormals());
+        }
 
-            buffer = STBImage.stbi_load(filename, w, h, c, 4);
+        unbind();
 
-            if (buffer == null) {
-                throw new Exception("Failed to load texture: " + filename);
-            }
+        Model model = new Model(id, mesh.getLodIndexCounts(), mesh.getIndexType());
+        model.setBounds(mesh.getBounds());
+        setVertexEncoding(model, mesh.getBounds());
+        model.setMeshlets(mesh.getMeshlets());
+        model.setMaterialGroups(mesh.getMaterialGroups());
+        return model;
+    }
 
-            width = w.get();
-            height = h.get();
+    /**
+     * Loads a texture through the texture cache, sharing the resident copy if the file was loaded before. The
+     * texture is held until it is passed to {@link #releaseTexture(Texture)}.
+     */
+    public Texture loadTexture(String filename) throws Exception {
+        Texture cached = textureCache.acquire(filename);
+        if (cached != null) {
+            return cached;
         }
+        Texture texture = importTexture(filename).call();
+        textureCache.add(filename, texture);
+        return texture;
+    }
+
+    /**
+     * Drops a reference taken by {@link #loadTexture(String)}, the texture stays resident until the cache needs
+     * its memory
+     */
+    public void releaseTexture(Texture texture) {
+        textureCache.release(texture);
+    }
 
+    /**
+     * Decodes an image without touching GL and without the texture cache, may run on any thread
+     * @return the upload of the image, to be called on the GL thread; it frees the decoded pixels
+     */
+    public Callable<Texture> importTexture(String filename) throws Exception {
+        TextureData data = decodeTexture(filename);
+        return () -> uploadTexture(data);
+    }
+
+    /**
+     * Reads the cooked copy of an image from the texture container if there is a valid one, with its mip chain,
+     * and otherwise decodes the image file. May run on any thread.
+     */
+    public TextureData decodeTexture(String filename) throws Exception {
+        if (textureContainer != null) {
+            TextureData cooked = textureContainer.load(filename);
+            if (cooked != null) {
+                return cooked;
+            }
+        }
+        return TextureData.decode(Path.of(filename));
+    }
+
+    /**
+     * Uploads a decoded image in one go, blocking until the driver has copied it, and frees its pixels
+     */
+    private Texture uploadTexture(TextureData data) {
         int id = GL11.glGenTextures();
         textures.add(id);
         GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
         GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
-        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
-        GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
-        STBImage.stbi_image_free(buffer);
-        return id;
+        for (int level = 0; level < data.getLevelCount(); level++) {
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, GL11.GL_RGBA8, data.getLevelWidth(level),
+                    data.getLevelHeight(level), 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data.getLevel(level));
+        }
+        int levels = data.getLevelCount();
+        if (data.needsMipmaps()) {
+            GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+            levels = TextureData.fullMipCount(data.getWidth(), data.getHeight());
+        } else {
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1);
+        }
+        data.free();
+        return new Texture(id, data.getWidth(), data.getHeight(), levels);
+    }
+
+    /**
+     * Uploads a decoded image over the next frames through the {@link TextureStreamer}, which frees its pixels
+     * @param done receives the texture once it is complete, on the GL thread
+     */
+    public void streamTexture(TextureData data, Consumer<Texture> done) {
+        textures.add(textureStreamer.enqueue(data, done));
     }
 
     private int createVAO() {
         int id = GL30.glGenVertexArrays();
         vaos.add(id);
+        vbos.put(id, new ArrayList<>());
+        currentVao = id;
         GL30.glBindVertexArray(id);
         return id;
     }
 
-    private void storeIndicesBuffer(int[] indices) {
+    /**
+     * Frees the buffers of a model loaded by this loader and releases the diffuse maps of its MTL materials. The
+     * materials of the model let go of their textures, so the texture cache may evict them.
+     */
+    public void unloadModel(Model model) {
+        List<Integer> buffers = vbos.remove(model.getId());
+        if (buffers == null) {
+            return;
+        }
+        for (int vbo : buffers) {
+            GL15.glDeleteBuffers(vbo);
+        }
+        vaos.remove(Integer.valueOf(model.getId()));
+        GL30.glDeleteVertexArrays(model.getId());
+
+        Set<Texture> maps = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Submesh submesh : model.getSubmeshes()) {
+            if (submesh.getMaterial() != null && submesh.getMaterial().hasTexture()) {
+                maps.add(submesh.getMaterial().getTexture());
+            }
+        }
+        for (Submesh submesh : model.getSubmeshes()) {
+            if (submesh.getMaterial() != null) {
+                submesh.getMaterial().setTexture(null);
+            }
+        }
+        model.getMaterial().setTexture(null);
+        for (Texture texture : maps) {
+            releaseTexture(texture);
+        }
+    }
+
+    /**
+     * Frees a texture loaded by this loader
+     */
+    public void unloadTexture(int id) {
+        deleteTexture(textures, id);
+    }
+
+    private static void deleteTexture(List<Integer> textures, int id) {
+        if (textures.remove(Integer.valueOf(id))) {
+            GL11.glDeleteTextures(id);
+        }
+    }
+
+    /**
+     * Stores the indices as unsigned shorts when every vertex is addressable with 16 bits, as ints otherwise
+     * @return the GL type the indices were stored as
+     */
+    private int storeIndicesBuffer(int[] indices, int meshVertexCount) {
         int vbo = GL15.glGenBuffers();
-        vbos.add(vbo);
+        vbos.get(currentVao).add(vbo);
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vbo);
-        IntBuffer buffer = Utils.storeDataInIntBuffer(indices);
-        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+        int indexType = Model.indexTypeFor(meshVertexCount);
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            ShortBuffer buffer = MemoryUtil.memAllocShort(indices.length);
+            for (int index : indices) {
+                buffer.put((short) index);
+            }
+            buffer.flip();
+            GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+            MemoryUtil.memFree(buffer);
+        } else {
+            IntBuffer buffer = Utils.storeDataInIntBuffer(indices);
+            GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+            MemoryUtil.memFree(buffer);
+        }
+        return indexType;
+    }
+
+    private void storeIndicesBuffer(ByteBuffer indices) {
+        int vbo = GL15.glGenBuffers();
+        vbos.get(currentVao).add(vbo);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
     }
 
     private void storeDataInAttribList(int attribNo, int vertexCount, float[] data) {
         int vbo = GL15.glGenBuffers();
-        vbos.add(vbo);
+        vbos.get(currentVao).add(vbo);
 
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
 
         FloatBuffer buffer = Utils.storeDataInFloatBuffer(data);
         GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+        MemoryUtil.memFree(buffer);
 
         GL20.glVertexAttribPointer(attribNo, vertexCount, GL11.GL_FLOAT, false, 0, 0);
         GL20.glEnableVertexAttribArray(attribNo);
@@ -190,25 +559,200 @@ public class ObjectLoader {
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
     }
 
-    private void unbind() {
-        GL30.glBindVertexArray(0);
+    private void storeDataInAttribList(int attribNo, int vertexCount, ByteBuffer data) {
+        int vbo = GL15.glGenBuffers();
+        vbos.get(currentVao).add(vbo);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+
+        GL20.glVertexAttribPointer(attribNo, vertexCount, GL11.GL_FLOAT, false, 0, 0);
+        GL20.glEnableVertexAttribArray(attribNo);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
     }
 
-    private static float[] toFloatArray(List<Float> list) {
-        float[] array = new float[list.size()];
-        for (int i = 0; i < list.size(); i++) {
-            array[i] = list.get(i);
+    /**
+     * Stores position, texture coordinate and normal of every vertex side by side in a single VBO
+     */
+    private void storeInterleaved(ByteBuffer data) {
+        int vbo = GL15.glGenBuffers();
+        vbos.get(currentVao).add(vbo);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+
+        int stride = INTERLEAVED_FLOATS * Float.BYTES;
+        GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, stride, 0);
+        GL20.glEnableVertexAttribArray(0);
+        GL20.glVertexAttribPointer(1, 2, GL11.GL_FLOAT, false, stride, 3 * Float.BYTES);
+        GL20.glEnableVertexAttribArray(1);
+        GL20.glVertexAttribPointer(2, 3, GL11.GL_FLOAT, false, stride, 5 * Float.BYTES);
+        GL20.glEnableVertexAttribArray(2);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Stores the vertices in the compressed layout of {@link VertexQuantizer} in a single VBO. Positions are
+     * normalised unsigned shorts or floats, texture coordinates half floats and normals normalised shorts.
+     */
+    private void storeQuantized(float[] positions, float[] texCoords, float[] normals, Bounds bounds) {
+        ByteBuffer data = VertexQuantizer.encode(positions, texCoords, normals, quantizePositions, bounds.min,
+                bounds.max);
+        int vbo = GL15.glGenBuffers();
+        vbos.get(currentVao).add(vbo);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STATIC_DRAW);
+        MemoryUtil.memFree(data);
+
+        int stride = VertexQuantizer.stride(quantizePositions);
+        int positionBytes;
+        if (quantizePositions) {
+            GL20.glVertexAttribPointer(0, 3, GL11.GL_UNSIGNED_SHORT, true, stride, 0);
+            positionBytes = VertexQuantizer.QUANTIZED_POSITION_BYTES;
+        } else {
+            GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, stride, 0);
+            positionBytes = VertexQuantizer.FLOAT_POSITION_BYTES;
         }
-        return array;
+        GL20.glEnableVertexAttribArray(0);
+        GL20.glVertexAttribPointer(1, 2, GL30.GL_HALF_FLOAT, false, stride, positionBytes);
+        GL20.glEnableVertexAttribArray(1);
+        GL20.glVertexAttribPointer(2, 2, GL11.GL_SHORT, true, stride, positionBytes + VertexQuantizer.TEX_COORD_BYTES);
+        GL20.glEnableVertexAttribArray(2);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Tells the shaders how to decode the vertices of a model stored in the current layout
+     */
+    private void setVertexEncoding(Model model, Bounds bounds) {
+        if (vertexLayout != VertexLayout.QUANTIZED) {
+            return;
+        }
+        if (quantizePositions) {
+            model.setPositionDecode(bounds.min, new Vector3f(bounds.max).sub(bounds.min));
+        }
+        model.setOctahedralNormals(true);
+    }
+
+    /**
+     * @return the settings that change what a model load produces, loads of the same file with equal options give
+     * the same model
+     */
+    public String getImportOptions() {
+        return vertexLayout + (vertexLayout == VertexLayout.QUANTIZED && quantizePositions ? "+positions" : "")
+                + (optimizeMeshes ? "+optimize" : "") + (generateLods ? "+lods" : "")
+                + (buildMeshlets ? "+meshlets" : "");
+    }
+
+    public VertexLayout getVertexLayout() {
+        return vertexLayout;
+    }
+
+    public void setVertexLayout(VertexLayout vertexLayout) {
+        this.vertexLayout = vertexLayout;
+    }
+
+    public boolean isOptimizeMeshes() {
+        return optimizeMeshes;
+    }
+
+    /**
+     * @param optimizeMeshes run imported meshes through {@link MeshOptimizer} before they are cached and uploaded
+     */
+    public void setOptimizeMeshes(boolean optimizeMeshes) {
+        this.optimizeMeshes = optimizeMeshes;
+    }
+
+    public boolean isGenerateLods() {
+        return generateLods;
+    }
+
+    /**
+     * @param generateLods build a LOD chain for imported meshes with {@link MeshSimplifier}
+     */
+    public void setGenerateLods(boolean generateLods) {
+        this.generateLods = generateLods;
+    }
+
+    public boolean isBuildMeshlets() {
+        return buildMeshlets;
+    }
+
+    /**
+     * @param buildMeshlets split large imported meshes into clusters with {@link MeshletBuilder} for culling
+     */
+    public void setBuildMeshlets(boolean buildMeshlets) {
+        this.buildMeshlets = buildMeshlets;
+    }
+
+    public boolean isQuantizePositions() {
+        return quantizePositions;
+    }
+
+    /**
+     * @param quantizePositions store positions as 16 bit values relative to the mesh bounds in the
+     * {@link VertexLayout#QUANTIZED} layout, instead of floats
+     */
+    public void setQuantizePositions(boolean quantizePositions) {
+        this.quantizePositions = quantizePositions;
+    }
+
+    /**
+     * @return the arrays the textures of this loader are packed into, for renderers that draw from arrays
+     */
+    public TextureArrays getTextureArrays() {
+        return textureArrays;
+    }
+
+    public TextureContainer getTextureContainer() {
+        return textureContainer;
+    }
+
+    /**
+     * @param textureContainer the cooked textures to prefer over decoding image files, or null to always decode
+     */
+    public void setTextureContainer(TextureContainer textureContainer) {
+        this.textureContainer = textureContainer;
+    }
+
+    public TextureStreamer getTextureStreamer() {
+        return textureStreamer;
+    }
+
+    public TextureCache getTextureCache() {
+        return textureCache;
+    }
+
+    public MeshCache getMeshCache() {
+        return meshCache;
+    }
+
+    /**
+     * @param meshCache the cache to compile meshes into, or null to always parse the source files
+     */
+    public void setMeshCache(MeshCache meshCache) {
+        this.meshCache = meshCache;
+    }
+
+    private void unbind() {
+        GL30.glBindVertexArray(0);
     }
 
 
     public void cleanup() {
+        textureStreamer.cleanup();
+        textureArrays.cleanup();
         for (int vao : vaos) {
             GL30.glDeleteVertexArrays(vao);
         }
-        for (int vbo : vbos) {
-            GL30.glDeleteBuffers(vbo);
+        for (List<Integer> buffers : vbos.values()) {
+            for (int vbo : buffers) {
+                GL30.glDeleteBuffers(vbo);
+            }
         }
         for (int texture : textures) {
             GL30.glDeleteTextures(texture);
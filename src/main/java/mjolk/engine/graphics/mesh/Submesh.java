@@ -0,0 +1,61 @@
+package mjolk.engine.graphics.mesh;
+
+import mjolk.engine.graphics.material.Material;
+
+/**
+ * One material group of a {@link Model}: an index range in every level of detail of the shared element buffer,
+ * drawn with its own material.
+ */
+public class Submesh {
+
+    private final int group;
+    private final String materialName;
+    private final int[] indexCounts;
+    private final long[] indexOffsets;
+    private Material material;
+
+    /**
+     * @param group index of the material group, also the group of the meshlets drawn for it
+     * @param indexCounts index count in every level of detail
+     * @param indexOffsets byte offset in the element buffer in every level of detail
+     */
+    public Submesh(int group, String materialName, int[] indexCounts, long[] indexOffsets) {
+        this.group = group;
+        this.materialName = materialName;
+        this.indexCounts = indexCounts;
+        this.indexOffsets = indexOffsets;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    /**
+     * @return the usemtl name of the group, empty for faces without a material
+     */
+    public String getMaterialName() {
+        return materialName;
+    }
+
+    public int getIndexCount(int lod) {
+        return indexCounts[lod];
+    }
+
+    /**
+     * @return the byte offset of the range in the element buffer, as passed to glDrawElements
+     */
+    public long getIndexOffset(int lod) {
+        return indexOffsets[lod];
+    }
+
+    /**
+     * @return the material of the group, or null if the model material is used
+     */
+    public Material getMaterial() {
+        return material;
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+}
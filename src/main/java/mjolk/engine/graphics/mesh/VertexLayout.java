@@ -0,0 +1,16 @@
+package mjolk.engine.graphics.mesh;
+
+/**
+ * How the vertex attributes of a mesh are laid out in GPU memory
+ */
+public enum VertexLayout {
+    /** One VBO per attribute: positions, texture coordinates and normals */
+    SEPARATE,
+    /** A single VBO holding position, texture coordinate and normal of each vertex next to each other */
+    INTERLEAVED,
+    /**
+     * Interleaved like {@link #INTERLEAVED}, with octahedral normals, half float texture coordinates and optionally
+     * quantized positions, see {@link VertexQuantizer}
+     */
+    QUANTIZED
+}
@@ -0,0 +1,128 @@
+package mjolk.engine.graphics.mesh;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs vertices into the compressed layout of {@link VertexLayout#QUANTIZED}.
+ * <p>
+ * Normals are folded onto an octahedron and stored as two 16 bit snorm values, texture coordinates as two half
+ * floats. Positions are either kept as floats or stored as three 16 bit unorm values relative to the bounds of the
+ * mesh, which the shaders undo with {@link Model#getPositionOffset()} and {@link Model#getPositionScale()}. A vertex
+ * takes 16 bytes with quantized positions and 20 bytes without, instead of 32.
+ */
+public class VertexQuantizer {
+
+    /** Three unsigned shorts, padded to keep the following attributes 4 byte aligned */
+    public static final int QUANTIZED_POSITION_BYTES = 4 * Short.BYTES;
+    public static final int FLOAT_POSITION_BYTES = 3 * Float.BYTES;
+    public static final int TEX_COORD_BYTES = 2 * Short.BYTES;
+    public static final int NORMAL_BYTES = 2 * Short.BYTES;
+
+    private static final int UNORM16_MAX = 65535;
+    private static final int SNORM16_MAX = 32767;
+
+    /**
+     * @return the size of one vertex in the quantized layout
+     */
+    public static int stride(boolean quantizePositions) {
+        return (quantizePositions ? QUANTIZED_POSITION_BYTES : FLOAT_POSITION_BYTES) + TEX_COORD_BYTES + NORMAL_BYTES;
+    }
+
+    /**
+     * Encodes every vertex of a mesh
+     * @param min the minimum corner of the mesh bounds, only used to quantize positions
+     * @param max the maximum corner of the mesh bounds, only used to quantize positions
+     * @return the vertices in native order, to be freed with {@link MemoryUtil#memFree}
+     */
+    public static ByteBuffer encode(float[] positions, float[] texCoords, float[] normals, boolean quantizePositions,
+                                    Vector3f min, Vector3f max) {
+        int vertexCount = positions.length / 3;
+        ByteBuffer buffer = MemoryUtil.memAlloc(vertexCount * stride(quantizePositions));
+        Vector3f extent = new Vector3f(max).sub(min);
+        short[] octahedral = new short[2];
+
+        for (int v = 0; v < vertexCount; v++) {
+            int p = v * 3;
+            if (quantizePositions) {
+                buffer.putShort(quantizeUnorm(positions[p], min.x, extent.x))
+                        .putShort(quantizeUnorm(positions[p + 1], min.y, extent.y))
+                        .putShort(quantizeUnorm(positions[p + 2], min.z, extent.z))
+                        .putShort((short) 0);
+            } else {
+                buffer.putFloat(positions[p]).putFloat(positions[p + 1]).putFloat(positions[p + 2]);
+            }
+
+            buffer.putShort(Float.floatToFloat16(texCoords[v * 2]))
+                    .putShort(Float.floatToFloat16(texCoords[v * 2 + 1]));
+
+            encodeOctahedral(normals[p], normals[p + 1], normals[p + 2], octahedral);
+            buffer.putShort(octahedral[0]).putShort(octahedral[1]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * @param extent the size of the bounds along the axis, 0 for a flat mesh
+     */
+    public static short quantizeUnorm(float value, float min, float extent) {
+        if (extent <= 0) {
+            return 0;
+        }
+        float normalised = Math.clamp((value - min) / extent, 0f, 1f);
+        return (short) Math.round(normalised * UNORM16_MAX);
+    }
+
+    public static float dequantizeUnorm(short value, float min, float extent) {
+        return min + Short.toUnsignedInt(value) / (float) UNORM16_MAX * extent;
+    }
+
+    /**
+     * Projects a unit vector onto the octahedron and unfolds the lower half over the upper one
+     * @param out receives the two snorm components
+     */
+    public static void encodeOctahedral(float x, float y, float z, short[] out) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0) {
+            out[0] = 0;
+            out[1] = 0;
+            return;
+        }
+
+        float u = x / length;
+        float v = y / length;
+        if (z < 0) {
+            float foldedU = (1 - Math.abs(v)) * signNotZero(u);
+            v = (1 - Math.abs(u)) * signNotZero(v);
+            u = foldedU;
+        }
+        out[0] = toSnorm(u);
+        out[1] = toSnorm(v);
+    }
+
+    /**
+     * The inverse of {@link #encodeOctahedral}, the same decode the shaders run
+     * @param out receives the unit normal
+     */
+    public static void decodeOctahedral(short encodedU, short encodedV, Vector3f out) {
+        float u = fromSnorm(encodedU);
+        float v = fromSnorm(encodedV);
+        float z = 1 - Math.abs(u) - Math.abs(v);
+        float t = Math.max(-z, 0);
+        out.set(u >= 0 ? u - t : u + t, v >= 0 ? v - t : v + t, z).normalize();
+    }
+
+    private static float signNotZero(float value) {
+        return value >= 0 ? 1 : -1;
+    }
+
+    private static short toSnorm(float value) {
+        return (short) Math.round(Math.clamp(value, -1f, 1f) * SNORM16_MAX);
+    }
+
+    private static float fromSnorm(short value) {
+        return Math.max(value / (float) SNORM16_MAX, -1);
+    }
+}
@@ -0,0 +1,124 @@
+package mjolk.engine.graphics.rendering;
+
+import mjolk.engine.core.entity.ComponentListener;
+import mjolk.engine.core.entity.components.Component;
+import mjolk.engine.core.entity.components.RenderableComponent;
+import mjolk.engine.graphics.mesh.Model;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+
+/**
+ * The renderables of a scene in flat arrays for the renderers to walk.
+ * <p>
+ * A renderable gets an entry when its entity enters the scene and loses it when it leaves, the last entry moving
+ * into the gap. The matrix of an entry is the model matrix of the renderable itself, so moves need no copying, and
+ * {@link #update(RenderableComponent, boolean)} changes the model and whether the entry is drawn in place. Before
+ * drawing, {@link #interpolate(float)} points the entries of moving renderables at matrices between their last two
+ * ticks instead. Nothing is allocated unless the arrays have to grow.
+ */
+public class DrawList implements ComponentListener {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private RenderableComponent[] renderables = new RenderableComponent[INITIAL_CAPACITY];
+    private Matrix4f[] matrices = new Matrix4f[INITIAL_CAPACITY];
+    private Matrix4f[] interpolated = new Matrix4f[INITIAL_CAPACITY];
+    private Model[] models = new Model[INITIAL_CAPACITY];
+    private boolean[] drawable = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public void added(Component component) {
+        if (component instanceof RenderableComponent renderable && renderable.drawIndex < 0) {
+            if (size == renderables.length) {
+                renderables = Arrays.copyOf(renderables, size * 2);
+                matrices = Arrays.copyOf(matrices, size * 2);
+                interpolated = Arrays.copyOf(interpolated, size * 2);
+                models = Arrays.copyOf(models, size * 2);
+                drawable = Arrays.copyOf(drawable, size * 2);
+            }
+            renderables[size] = renderable;
+            matrices[size] = renderable.modelMatrix;
+            if (interpolated[size] == null) {
+                interpolated[size] = new Matrix4f();
+            }
+            models[size] = renderable.model;
+            // Not drawn until its first update has found the model ready and a world matrix
+            drawable[size] = false;
+            renderable.drawIndex = size++;
+        }
+    }
+
+    @Override
+    public void removed(Component component) {
+        if (component instanceof RenderableComponent renderable && renderable.drawIndex >= 0) {
+            int index = renderable.drawIndex;
+            int last = --size;
+            renderables[index] = renderables[last];
+            matrices[index] = matrices[last];
+            // The interpolation matrices stay with their slots, swapped so none is lost
+            Matrix4f spare = interpolated[index];
+            interpolated[index] = interpolated[last];
+            interpolated[last] = spare;
+            models[index] = models[last];
+            drawable[index] = drawable[last];
+            renderables[index].drawIndex = index;
+
+            renderables[last] = null;
+            matrices[last] = null;
+            models[last] = null;
+            renderable.drawIndex = -1;
+        }
+    }
+
+    /**
+     * Updates the entry of a renderable in place
+     * @param drawable whether the renderable should be drawn this frame
+     */
+    public void update(RenderableComponent renderable, boolean drawable) {
+        int index = renderable.drawIndex;
+        if (index < 0) {
+            return;
+        }
+        models[index] = renderable.model;
+        this.drawable[index] = drawable;
+    }
+
+    /**
+     * Points every entry at the matrix to draw it with between two ticks: the model matrix itself for renderables
+     * that did not move in the last tick, a blend of their last two matrices for the ones that did. The blend is
+     * linear per element, close enough for the small steps of one tick.
+     * @param alpha 0 for the tick before, 1 for the last tick
+     */
+    public void interpolate(float alpha) {
+        for (int i = 0; i < size; i++) {
+            RenderableComponent renderable = renderables[i];
+            if (renderable.moving) {
+                matrices[i] = renderable.previousMatrix.lerp(renderable.modelMatrix, alpha, interpolated[i]);
+            } else {
+                matrices[i] = renderable.modelMatrix;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isDrawable(int index) {
+        return drawable[index];
+    }
+
+    public RenderableComponent getRenderable(int index) {
+        return renderables[index];
+    }
+
+    public Matrix4f getMatrix(int index) {
+        return matrices[index];
+    }
+
+    public Model getModel(int index) {
+        return models[index];
+    }
+}
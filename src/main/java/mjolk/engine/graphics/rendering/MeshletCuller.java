@@ -0,0 +1,150 @@
+package mjolk.engine.graphics.rendering;
+
+import mjolk.engine.core.utils.IntList;
+import mjolk.engine.graphics.camera.Camera;
+import mjolk.engine.graphics.mesh.Meshlets;
+import mjolk.engine.graphics.mesh.Model;
+import mjolk.engine.graphics.mesh.Submesh;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+/**
+ * Culls the clusters of a model on the CPU and draws the rest as index sub-ranges.
+ * <p>
+ * A cluster is dropped when its bounding sphere is outside the view frustum or its normal cone faces away from the
+ * camera. The test runs in model space, so the frustum and camera are transformed once per model rather than every
+ * cluster. Neighbouring visible clusters are merged into one range and all ranges go out in a single
+ * glMultiDrawElements call.
+ */
+public class MeshletCuller {
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final Matrix4f modelViewProjection = new Matrix4f();
+    private final Matrix4f inverseModel = new Matrix4f();
+    private final Vector3f eye = new Vector3f();
+    private final IntList ranges = new IntList();
+
+    private IntBuffer counts = MemoryUtil.memAllocInt(64);
+    private PointerBuffer offsets = MemoryUtil.memAllocPointer(64);
+
+    private int testedMeshlets;
+    private int visibleMeshlets;
+
+    /**
+     * Draws the visible clusters of one submesh in the full detail level of a model, its VAO has to be bound
+     * @param viewProjection projection * view of the camera
+     * @return the number of indices drawn
+     */
+    public int draw(Model model, Submesh submesh, Matrix4f modelMatrix, Matrix4f viewProjection, Camera camera) {
+        Meshlets meshlets = model.getMeshlets();
+        modelViewProjection.set(viewProjection).mul(modelMatrix);
+        modelMatrix.invertAffine(inverseModel).transformPosition(camera.getPosition(), eye);
+
+        int[] groupStarts = meshlets.getGroupStarts();
+        cull(meshlets, groupStarts[submesh.getGroup()], groupStarts[submesh.getGroup() + 1], modelViewProjection, eye,
+                camera.getPerspective() == Camera.Perspective.NORMAL, ranges);
+        int rangeCount = ranges.size() / 2;
+        if (rangeCount == 0) {
+            return 0;
+        }
+
+        if (counts.capacity() < rangeCount) {
+            MemoryUtil.memFree(counts);
+            MemoryUtil.memFree(offsets);
+            counts = MemoryUtil.memAllocInt(meshlets.getCount());
+            offsets = MemoryUtil.memAllocPointer(meshlets.getCount());
+        }
+
+        int indexSize = model.getIndexType() == GL11.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+        long base = model.getLodIndexOffset(0);
+        int drawn = 0;
+        counts.clear();
+        offsets.clear();
+        for (int r = 0; r < rangeCount; r++) {
+            counts.put(ranges.get(r * 2 + 1));
+            offsets.put(base + (long) ranges.get(r * 2) * indexSize);
+            drawn += ranges.get(r * 2 + 1);
+        }
+        counts.flip();
+        offsets.flip();
+
+        GL14.glMultiDrawElements(GL11.GL_TRIANGLES, counts, model.getIndexType(), offsets);
+        return drawn;
+    }
+
+    /**
+     * Collects the index ranges of the visible clusters, neighbouring clusters merged into one range
+     * @param modelViewProjection transforms model space into clip space
+     * @param eye the camera position in model space
+     * @param perspective whether the cone test may use the camera position, orthographic views skip it
+     * @param out receives first index and index count of every range
+     */
+    public void cull(Meshlets meshlets, Matrix4f modelViewProjection, Vector3f eye, boolean perspective, IntList out) {
+        cull(meshlets, 0, meshlets.getCount(), modelViewProjection, eye, perspective, out);
+    }
+
+    /**
+     * Culls the clusters {@code [first, last)}, e.g. those of one material group
+     */
+    public void cull(Meshlets meshlets, int first, int last, Matrix4f modelViewProjection, Vector3f eye,
+                     boolean perspective, IntList out) {
+        frustum.set(modelViewProjection);
+        out.clear();
+
+        float[] bounds = meshlets.getBounds();
+        float[] cones = meshlets.getCones();
+        int runStart = -1, runCount = 0;
+        for (int m = first; m < last; m++) {
+            int b = m * Meshlets.STRIDE;
+            float cx = bounds[b], cy = bounds[b + 1], cz = bounds[b + 2], radius = bounds[b + 3];
+            testedMeshlets++;
+
+            if (!frustum.testSphere(cx, cy, cz, radius)) continue;
+
+            if (perspective) {
+                float dx = cx - eye.x, dy = cy - eye.y, dz = cz - eye.z;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (dx * cones[b] + dy * cones[b + 1] + dz * cones[b + 2] >= cones[b + 3] * distance + radius) {
+                    continue;
+                }
+            }
+
+            visibleMeshlets++;
+            int firstIndex = meshlets.getFirstIndex(m);
+            int count = meshlets.getIndexCount(m);
+            if (runStart >= 0 && runStart + runCount == firstIndex) {
+                runCount += count;
+            } else {
+                if (runStart >= 0) out.add(runStart, runCount);
+                runStart = firstIndex;
+                runCount = count;
+            }
+        }
+        if (runStart >= 0) out.add(runStart, runCount);
+    }
+
+    public int getTestedMeshlets() {
+        return testedMeshlets;
+    }
+
+    public int getVisibleMeshlets() {
+        return visibleMeshlets;
+    }
+
+    public void resetStats() {
+        testedMeshlets = 0;
+        visibleMeshlets = 0;
+    }
+
+    public void cleanup() {
+        MemoryUtil.memFree(counts);
+        MemoryUtil.memFree(offsets);
+    }
+}
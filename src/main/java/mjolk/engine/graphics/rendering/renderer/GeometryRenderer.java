@@ -1,19 +1,30 @@
 package mjolk.engine.graphics.rendering.renderer;
 
 import mjolk.engine.Launcher;
-import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.components.RenderableComponent;
+import mjolk.engine.graphics.material.Material;
+import mjolk.engine.graphics.material.Texture;
+import mjolk.engine.graphics.material.TextureArrays;
 import mjolk.engine.graphics.mesh.Model;
+import mjolk.engine.graphics.mesh.Submesh;
 import mjolk.engine.graphics.shader.ShaderManager;
 import mjolk.engine.core.entity.Scene;
 import mjolk.engine.core.maths.Transformation;
 import mjolk.engine.core.utils.Utils;
+import mjolk.engine.graphics.rendering.DrawList;
 import mjolk.engine.graphics.rendering.GBuffer;
+import mjolk.engine.graphics.rendering.MeshletCuller;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.GL_MAX_TEXTURE_IMAGE_UNITS;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 public class GeometryRenderer {
@@ -21,10 +32,20 @@ public class GeometryRenderer {
 
     private GBuffer gBuffer;
     private ShaderManager shader;
+    private MeshletCuller meshletCuller;
+    private Texture whiteTexture;
+    private TextureArrays textureArrays;
+    /** The array bound to every unit from 1 on in this pass, by GL name */
+    private int[] arrayUnits;
+    private int textureBinds;
+    private int textureBindsAvoided;
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
 
     public GeometryRenderer(int width, int height) throws Exception {
         gBuffer = new GBuffer(width, height);
         shader = new ShaderManager();
+        meshletCuller = new MeshletCuller();
     }
 
     public void init() throws Exception {
@@ -39,9 +60,33 @@ public class GeometryRenderer {
         shader.createUniform("model");
         shader.createUniform("view");
         shader.createUniform("projection");
+        shader.createUniform("positionOffset");
+        shader.createUniform("positionScale");
+        shader.createUniform("octahedralNormals");
 
         shader.createUniform("texture_diffuse1");
+        shader.createUniform("diffuseArray");
+        shader.createUniform("diffuseLayer");
+        shader.createUniform("useTextureArrays");
+        shader.createUniform("materialDiffuse");
         shader.createUniform("materialSpecular");
+
+        whiteTexture = createWhiteTexture();
+        // Unit 0 is for textures drawn on their own
+        arrayUnits = new int[Math.max(1, glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS) - 1)];
+    }
+
+    /**
+     * A 1x1 white texture bound for untextured materials, so their diffuse colour comes through unchanged
+     */
+    private static Texture createWhiteTexture() {
+        Texture texture = new Texture(1, 1, GL_RGBA8, GL_RGBA, GL_UNSIGNED_BYTE);
+        ByteBuffer white = MemoryUtil.memAlloc(4).put(new byte[]{-1, -1, -1, -1}).flip();
+        glBindTexture(GL_TEXTURE_2D, texture.getId());
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, 1, 1, GL_RGBA, GL_UNSIGNED_BYTE, white);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        MemoryUtil.memFree(white);
+        return texture;
     }
 
     public void geometryPass(Scene scene) {
@@ -51,23 +96,91 @@ public class GeometryRenderer {
 
         shader.bind();
 
-        shader.setUniform("view", Transformation.getViewMatrix(scene.getCamera()));
-        shader.setUniform("projection", Launcher.getWindow().updateProjectionMatrix(scene.getCamera()));
+        Matrix4f view = Transformation.getViewMatrix(scene.getRenderCamera());
+        Matrix4f projection = Launcher.getWindow().updateProjectionMatrix(scene.getRenderCamera());
+        shader.setUniform("view", view);
+        shader.setUniform("projection", projection);
+        viewProjection.set(projection).mul(view);
+        frustum.set(viewProjection);
+        meshletCuller.resetStats();
 
         shader.setUniform("texture_diffuse1", 0);
-
-        for (Entity e : scene.renderQueue.keySet()) {
-
-            Matrix4f modelMatrix = scene.renderQueue.get(e).first;
-            Model model = scene.renderQueue.get(e).second;
+        // Never left on unit 0, where a sampler of another type is
+        shader.setUniform("diffuseArray", 1);
+        shader.setUniform("useTextureArrays", textureArrays != null);
+        textureBinds = 0;
+        textureBindsAvoided = 0;
+
+        // Material and texture changes are skipped when consecutive submeshes share them. With texture arrays every
+        // array keeps a unit of its own for the pass, so it is bound once however the draws alternate between
+        // arrays, and a texture change only points the sampler at another unit and picks another layer.
+        Material boundMaterial = null;
+        Texture boundTexture = null;
+        Arrays.fill(arrayUnits, 0);
+        int boundUnit = 1;
+        int boundLayer = -1;
+        DrawList drawList = scene.getDrawList();
+        for (int i = 0; i < drawList.size(); i++) {
+            if (!drawList.isDrawable(i)) continue;
+            RenderableComponent renderable = drawList.getRenderable(i);
+            if (!frustum.testAab(renderable.worldBounds.min, renderable.worldBounds.max)) continue;
+
+            Matrix4f modelMatrix = drawList.getMatrix(i);
+            Model model = drawList.getModel(i);
 
             shader.setUniform("model", modelMatrix);
-            shader.setUniform("materialSpecular", model.getMaterial().getSpecularColour());
-
-            model.getTexture().bind(0);
+            shader.setUniform("positionOffset", model.getPositionOffset());
+            shader.setUniform("positionScale", model.getPositionScale());
+            shader.setUniform("octahedralNormals", model.hasOctahedralNormals());
 
+            int lod = renderable.lod;
             glBindVertexArray(model.getId());
-            GL11.glDrawElements(GL11.GL_TRIANGLES, model.getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+            for (Submesh submesh : model.getSubmeshes()) {
+                if (submesh.getIndexCount(lod) == 0) continue;
+
+                Material material = model.getMaterial(submesh);
+                if (material != boundMaterial) {
+                    shader.setUniform("materialDiffuse", material.getDiffuseColour());
+                    shader.setUniform("materialSpecular", material.getSpecularColour());
+                    boundMaterial = material;
+                }
+                Texture texture = material.hasTexture() && material.getTexture().isReady()
+                        ? material.getTexture() : whiteTexture;
+                if (texture != boundTexture) {
+                    if (textureArrays == null) {
+                        texture.bind(0);
+                        textureBinds++;
+                    } else {
+                        TextureArrays.Layer layer = textureArrays.layerOf(texture);
+                        TextureArrays.TextureArray array = layer.getArray();
+                        int slot = array.getOrdinal() % arrayUnits.length;
+                        // Also rebinds an array that grew, which gives it a new name
+                        if (arrayUnits[slot] != array.getId()) {
+                            array.bind(1 + slot);
+                            arrayUnits[slot] = array.getId();
+                            textureBinds++;
+                        } else {
+                            textureBindsAvoided++;
+                        }
+                        if (1 + slot != boundUnit) {
+                            shader.setUniform("diffuseArray", 1 + slot);
+                            boundUnit = 1 + slot;
+                        }
+                        if (layer.getIndex() != boundLayer) {
+                            shader.setUniform("diffuseLayer", layer.getIndex());
+                            boundLayer = layer.getIndex();
+                        }
+                    }
+                    boundTexture = texture;
+                }
+
+                if (lod == 0 && model.getMeshlets() != null) {
+                    meshletCuller.draw(model, submesh, modelMatrix, viewProjection, scene.getRenderCamera());
+                } else {
+                    GL11.glDrawElements(GL11.GL_TRIANGLES, submesh.getIndexCount(lod), model.getIndexType(),
+                            submesh.getIndexOffset(lod));
+                }
+            }
             glBindVertexArray(0);
         }
 
@@ -80,8 +193,41 @@ public class GeometryRenderer {
         gBuffer.getDiffuseSpecTexture().bind(albedoSpecUnit);
     }
 
+    public TextureArrays getTextureArrays() {
+        return textureArrays;
+    }
+
+    /**
+     * @param textureArrays the arrays to draw material textures from, selected per draw by layer, or null to bind
+     *                      every texture on its own
+     */
+    public void setTextureArrays(TextureArrays textureArrays) {
+        this.textureArrays = textureArrays;
+    }
+
+    /**
+     * @return the material textures or texture arrays bound in the last geometry pass
+     */
+    public int getTextureBinds() {
+        return textureBinds;
+    }
+
+    /**
+     * @return the texture changes in the last geometry pass that needed no bind, the texture being in an array
+     * already bound to its unit
+     */
+    public int getTextureBindsAvoided() {
+        return textureBindsAvoided;
+    }
+
+    public MeshletCuller getMeshletCuller() {
+        return meshletCuller;
+    }
+
     public void cleanup() {
         shader.cleanup();
+        meshletCuller.cleanup();
+        whiteTexture.cleanup();
         gBuffer.cleanup();
     }
 }
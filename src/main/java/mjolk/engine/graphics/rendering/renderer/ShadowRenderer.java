@@ -1,16 +1,19 @@
 package mjolk.engine.graphics.rendering.renderer;
 
 import mjolk.engine.Launcher;
-import mjolk.engine.core.entity.Entity;
 import mjolk.engine.core.entity.Scene;
+import mjolk.engine.core.entity.components.RenderableComponent;
 import mjolk.engine.core.maths.Transformation;
 import mjolk.engine.core.utils.Utils;
 import mjolk.engine.graphics.lighting.Light;
 import mjolk.engine.graphics.lighting.PointLight;
 import mjolk.engine.graphics.lighting.SpotLight;
 import mjolk.engine.graphics.lighting.shadow.ShadowAtlas;
+import mjolk.engine.graphics.mesh.Bounds;
 import mjolk.engine.graphics.mesh.Model;
+import mjolk.engine.graphics.rendering.DrawList;
 import mjolk.engine.graphics.shader.ShaderManager;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -27,6 +30,8 @@ public class ShadowRenderer {
     private ShaderManager pointLightShader;
 
     private ShadowAtlas atlas;
+    private final FrustumIntersection lightFrustum = new FrustumIntersection();
+    private final Matrix4f hemisphereView = new Matrix4f();
 
     public ShadowRenderer() throws Exception {
         shader = new ShaderManager();
@@ -41,6 +46,8 @@ public class ShadowRenderer {
 
         shader.createUniform("lightSpaceMatrix");
         shader.createUniform("model");
+        shader.createUniform("positionOffset");
+        shader.createUniform("positionScale");
 
         pointLightShader.createVertexShader(Utils.loadShader("/shader/pointlight/point_shadow.vsh"));
         pointLightShader.createFragmentShader(Utils.loadShader("/shader/pointlight/point_shadow.fsh"));
@@ -48,6 +55,8 @@ public class ShadowRenderer {
         pointLightShader.link();
 
         pointLightShader.createUniform("model");
+        pointLightShader.createUniform("positionOffset");
+        pointLightShader.createUniform("positionScale");
         pointLightShader.createUniform("lightView");
         pointLightShader.createUniform("paraboloidSide");
         pointLightShader.createUniform("farPlane");
@@ -81,15 +90,26 @@ public class ShadowRenderer {
             );
 
             shader.setUniform("lightSpaceMatrix", lightSpaceMatrix);
+            lightFrustum.set(lightSpaceMatrix);
 
-            for (Entity e : scene.renderQueue.keySet()) {
-                Matrix4f modelMatrix = scene.renderQueue.get(e).first;
-                Model model = scene.renderQueue.get(e).second;
+            DrawList drawList = scene.getDrawList();
+            for (int i = 0; i < drawList.size(); i++) {
+                if (!drawList.isDrawable(i)) continue;
+                RenderableComponent renderable = drawList.getRenderable(i);
+                // Only casters inside the light volume can land in its shadow map
+                if (!lightFrustum.testAab(renderable.worldBounds.min, renderable.worldBounds.max)) continue;
+
+                Matrix4f modelMatrix = drawList.getMatrix(i);
+                Model model = drawList.getModel(i);
 
                 shader.setUniform("model", modelMatrix);
+                shader.setUniform("positionOffset", model.getPositionOffset());
+                shader.setUniform("positionScale", model.getPositionScale());
 
+                int lod = renderable.shadowLod;
                 glBindVertexArray(model.getId());
-                glDrawElements(GL_TRIANGLES, model.getVertexCount(), GL_UNSIGNED_INT, 0);
+                glDrawElements(GL_TRIANGLES, model.getLodIndexCount(lod), model.getIndexType(),
+                        model.getLodIndexOffset(lod));
                 glBindVertexArray(0);
             }
 
@@ -123,14 +143,15 @@ public class ShadowRenderer {
         glEnable(GL_CULL_FACE);
 
         glCullFace(GL_BACK);
-        renderHemisphere(scene, frontRect, 1, light.getPosition());
+        renderHemisphere(scene, frontRect, 1, light);
         glCullFace(GL_FRONT);
-        renderHemisphere(scene, backRect, -1, light.getPosition());
+        renderHemisphere(scene, backRect, -1, light);
         glCullFace(GL_BACK);
         shader.bind();
     }
 
-    private void renderHemisphere(Scene scene, Vector4f r, int hemi, Vector3f lightPos) {
+    private void renderHemisphere(Scene scene, Vector4f r, int hemi, PointLight light) {
+        Vector3f lightPos = light.getPosition();
         int x = Math.round(r.x * ShadowAtlas.SIZE);
         int y = Math.round(r.y * ShadowAtlas.SIZE);
         int w = Math.round(r.z * ShadowAtlas.SIZE);
@@ -138,19 +159,31 @@ public class ShadowRenderer {
 
         glViewport(x, y, w, h);
 
-        Matrix4f view = new Matrix4f().identity();
-        view.translate(-lightPos.x, -lightPos.y, -lightPos.z);
+        hemisphereView.translation(-lightPos.x, -lightPos.y, -lightPos.z);
 
         pointLightShader.setUniform("paraboloidSide", hemi);
-        pointLightShader.setUniform("lightView", view);
-
-        for (Entity e : scene.renderQueue.keySet()) {
-            Matrix4f modelMatrix = scene.renderQueue.get(e).first;
-            Model model = scene.renderQueue.get(e).second;
+        pointLightShader.setUniform("lightView", hemisphereView);
+
+        DrawList drawList = scene.getDrawList();
+        for (int i = 0; i < drawList.size(); i++) {
+            if (!drawList.isDrawable(i)) continue;
+            RenderableComponent renderable = drawList.getRenderable(i);
+            Bounds bounds = renderable.worldBounds;
+            // Casters beyond the far plane of the light fall outside its depth range
+            if (bounds.centre.distance(lightPos) - bounds.radius > light.getFarPlane()) continue;
+            // and each paraboloid only sees the half space in front of it
+            if ((bounds.centre.z - lightPos.z) * hemi < -bounds.radius) continue;
+
+            Matrix4f modelMatrix = drawList.getMatrix(i);
+            Model model = drawList.getModel(i);
             pointLightShader.setUniform("model", modelMatrix);
+            pointLightShader.setUniform("positionOffset", model.getPositionOffset());
+            pointLightShader.setUniform("positionScale", model.getPositionScale());
 
+            int lod = renderable.shadowLod;
             glBindVertexArray(model.getId());
-            glDrawElements(GL_TRIANGLES, model.getVertexCount(), GL_UNSIGNED_INT, 0);
+            glDrawElements(GL_TRIANGLES, model.getLodIndexCount(lod), model.getIndexType(),
+                    model.getLodIndexOffset(lod));
             glBindVertexArray(0);
         }
     }
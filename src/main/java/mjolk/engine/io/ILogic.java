@@ -6,9 +6,17 @@ public interface ILogic {
 
     void input(float interval) throws Exception;
 
+    /**
+     * Advances the simulation by one fixed tick
+     */
     void update(float interval, MouseInput mouseInput);
 
-    void render() throws Exception;
+    /**
+     * Draws a frame
+     * @param alpha how far the frame lies between the last tick and the next, from 0 to 1, to interpolate between
+     *              the states of the last two ticks with
+     */
+    void render(float alpha) throws Exception;
 
     void cleanup();
 }
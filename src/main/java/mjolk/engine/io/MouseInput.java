@@ -36,24 +36,13 @@ public class MouseInput {
         });
     }
 
+    /**
+     * Adds the movement since the last call to the display vector, which keeps growing until it is cleared
+     */
     public void input() {
-        displayVec.x = 0;
-        displayVec.y = 0;
-
         if (previousPos.x > 0 && previousPos.y > 0 && inWindow) {
-            double x = currentPos.x - previousPos.x;
-            double y = currentPos.y - previousPos.y;
-
-            boolean rotateX = x != 0;
-            boolean rotateY = y != 0;
-
-            if (rotateX) {
-                displayVec.y = (float) x;
-            }
-
-            if (rotateY) {
-                displayVec.x = (float) y;
-            }
+            displayVec.y += (float) (currentPos.x - previousPos.x);
+            displayVec.x += (float) (currentPos.y - previousPos.y);
         }
 
         previousPos.x = currentPos.x;
@@ -61,6 +50,11 @@ public class MouseInput {
 
     }
 
+    public void clearDisplayVec() {
+        displayVec.x = 0;
+        displayVec.y = 0;
+    }
+
     public Vector2f getDisplayVec() {
         return displayVec;
     }
@@ -0,0 +1,138 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.CommandBuffer;
+import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.PackedComponent;
+import mjolk.engine.core.entity.Scene;
+import mjolk.engine.core.entity.components.MoveableComponent;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.core.entity.systems.EntitySystem;
+import mjolk.engine.graphics.camera.Camera;
+import org.joml.Vector3f;
+
+/**
+ * Runs a particle scene where a system despawns every particle that outlived its lifetime and spawns a new one in
+ * its place, from inside its update through the command buffers, and times the sync points that apply the changes.
+ * Then spawns a burst of particles once through a command buffer and once by adding each entity to the scene before
+ * giving it its components, as had to be done before the buffers, to compare the storage churn.
+ * <p>
+ * Usage: CommandBufferBenchmark [particles] [frames] (defaults to 50000 and 300)
+ */
+public class CommandBufferBenchmark {
+
+    private static final float DELTA = 1f / 60f;
+
+    public static class ParticleComponent extends PackedComponent {
+        public static final int AGE = 0;
+        public static final int LIFETIME = 1;
+
+        public ParticleComponent(float lifetime) {
+            super(new float[]{0, lifetime});
+        }
+
+        @Override
+        public void setEntity(Entity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public void update(float deltaTime, Scene scene) {
+        }
+    }
+
+    private static class LifetimeSystem extends EntitySystem {
+        private final Scene scene;
+
+        LifetimeSystem(Scene scene) {
+            super(new Access().writes(ParticleComponent.class));
+            this.scene = scene;
+        }
+
+        @Override
+        public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+            int column = column(archetype, 0);
+            float[] age = chunk.getField(column, ParticleComponent.AGE);
+            float[] lifetime = chunk.getField(column, ParticleComponent.LIFETIME);
+            CommandBuffer commands = null;
+            for (int i = start; i < end; i++) {
+                age[i] += delta;
+                if (age[i] > lifetime[i]) {
+                    if (commands == null) commands = scene.commands();
+                    commands.destroy(chunk.getEntity(i));
+                    spawn(commands, i, lifetime[i]);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        Scene scene = new Scene(new Camera(), null);
+        scene.addSystem(new LifetimeSystem(scene));
+        CommandBuffer commands = scene.commands();
+        for (int i = 0; i < count; i++) {
+            spawn(commands, i, 0.5f + (i % 100) / 50f);
+        }
+        scene.getCommandQueue().apply(scene);
+
+        long syncTime = 0;
+        long changes = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            scene.getScheduler().update(DELTA);
+            long start = System.nanoTime();
+            scene.getCommandQueue().apply(scene);
+            syncTime += System.nanoTime() - start;
+            changes += scene.getCommandQueue().getAppliedCount();
+        }
+        System.out.printf("%d particles, %d frames%n", scene.getEntities().size(), frames);
+        System.out.printf("  %.0f commands per frame applied in %.3f ms per frame%n", changes / (double) frames,
+                syncTime / 1e6 / frames);
+
+        // Bursts into a fresh scene each, best of a few rounds as the timing is mostly allocation
+        long deferredTime = Long.MAX_VALUE, immediateTime = Long.MAX_VALUE;
+        long deferredMoves = 0, immediateMoves = 0;
+        for (int round = 0; round < 5; round++) {
+            Scene deferred = new Scene(new Camera(), null);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                spawn(deferred.commands(), i, 1);
+            }
+            deferred.getCommandQueue().apply(deferred);
+            deferredTime = Math.min(deferredTime, System.nanoTime() - start);
+            deferredMoves = deferred.getStorage().getMoveCount();
+
+            Scene immediate = new Scene(new Camera(), null);
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Entity entity = new Entity();
+                immediate.addEntity(entity);
+                entity.addComponent(new TransformComponent(new Vector3f(i, 0, 0), new Vector3f(), 1));
+                entity.addComponent(newMoveable(i));
+                entity.addComponent(new ParticleComponent(1));
+            }
+            immediateTime = Math.min(immediateTime, System.nanoTime() - start);
+            immediateMoves = immediate.getStorage().getMoveCount();
+        }
+        System.out.printf("  burst of %d through a command buffer: %.2f ms, %d archetype moves%n", count,
+                deferredTime / 1e6, deferredMoves);
+        System.out.printf("  burst of %d added one by one:        %.2f ms, %d archetype moves%n", count,
+                immediateTime / 1e6, immediateMoves);
+    }
+
+    private static void spawn(CommandBuffer commands, int i, float lifetime) {
+        Entity entity = new Entity();
+        commands.create(entity);
+        commands.add(entity, new TransformComponent(new Vector3f(i, 0, 0), new Vector3f(), 1));
+        commands.add(entity, newMoveable(i));
+        commands.add(entity, new ParticleComponent(lifetime));
+    }
+
+    private static MoveableComponent newMoveable(int i) {
+        MoveableComponent moveable = new MoveableComponent();
+        moveable.setPositionVelocity(0, 1 + i % 7, 0);
+        return moveable;
+    }
+}
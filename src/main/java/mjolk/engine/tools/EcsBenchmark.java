@@ -0,0 +1,182 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.entity.Chunk;
+import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.PackedComponent;
+import mjolk.engine.core.entity.Scene;
+import mjolk.engine.core.entity.components.MoveableComponent;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.core.entity.systems.EntitySystem;
+import mjolk.engine.core.entity.systems.SystemScheduler;
+import mjolk.engine.graphics.camera.Camera;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the systems of a scene full of moving entities, once with every batch on the updating thread and once on
+ * the fork join pool, and checks that both end with exactly the same transforms.
+ * <p>
+ * Besides {@link mjolk.engine.core.entity.systems.MovementSystem} the scene runs a steering system that pulls every
+ * entity back towards the origin, which conflicts with the movement over positions and velocities and so runs in the
+ * stage after it, and an ageing system that touches neither and so shares the first stage with the movement. Both
+ * runs are also checked against a plain replay of the same frames, one entity at a time.
+ * <p>
+ * Usage: EcsBenchmark [entity count] [frames] (defaults to 100000 and 300)
+ */
+public class EcsBenchmark {
+
+    private static final float DELTA = 1f / 60f;
+
+    /** Seconds an entity has been alive, touched only by the ageing system */
+    public static class AgeComponent extends PackedComponent {
+        public AgeComponent() {
+            super(1);
+        }
+
+        @Override
+        public void setEntity(Entity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public void update(float deltaTime, Scene scene) {
+        }
+    }
+
+    private static class SteeringSystem extends EntitySystem {
+        private static final int MOVEABLE = 0;
+        private static final int TRANSFORM = 1;
+
+        SteeringSystem() {
+            super(new Access().writes(MoveableComponent.class).reads(TransformComponent.class));
+        }
+
+        @Override
+        public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+            int t = column(archetype, TRANSFORM);
+            int m = column(archetype, MOVEABLE);
+            float[] x = chunk.getField(t, TransformComponent.X);
+            float[] y = chunk.getField(t, TransformComponent.Y);
+            float[] z = chunk.getField(t, TransformComponent.Z);
+            float[] velocityX = chunk.getField(m, MoveableComponent.VELOCITY_X);
+            float[] velocityY = chunk.getField(m, MoveableComponent.VELOCITY_Y);
+            float[] velocityZ = chunk.getField(m, MoveableComponent.VELOCITY_Z);
+            for (int i = start; i < end; i++) {
+                float distance = (float) Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]) + 1;
+                velocityX[i] -= x[i] / distance * delta;
+                velocityY[i] -= y[i] / distance * delta;
+                velocityZ[i] -= z[i] / distance * delta;
+            }
+        }
+    }
+
+    private static class AgeingSystem extends EntitySystem {
+        AgeingSystem() {
+            super(new Access().writes(AgeComponent.class));
+        }
+
+        @Override
+        public void update(Chunk chunk, int archetype, int start, int end, float delta) {
+            float[] seconds = chunk.getField(column(archetype, 0), 0);
+            for (int i = start; i < end; i++) {
+                seconds[i] += delta;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        System.out.printf("%d entities, %d frames, %d cores, %d pool threads%n", count, frames,
+                Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool().getParallelism());
+        List<Entity> serial = run(count, frames, false);
+        List<Entity> parallel = run(count, frames, true);
+
+        Vector3f a = new Vector3f(), b = new Vector3f();
+        int differing = 0;
+        for (int i = 0; i < count; i++) {
+            serial.get(i).getComponent(TransformComponent.class).getPosition(a);
+            parallel.get(i).getComponent(TransformComponent.class).getPosition(b);
+            if (!a.equals(b)) differing++;
+        }
+        System.out.printf("%d of %d transforms differ between serial and parallel%n", differing, count);
+        if (differing > 0) {
+            throw new IllegalStateException(differing + " transforms differ between serial and parallel");
+        }
+
+        // Replays the movement and steering of every entity in the order the stages run them
+        Random random = new Random(1);
+        int wrong = 0;
+        Vector3f expected = new Vector3f();
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 200 - 100, y = random.nextFloat() * 200 - 100,
+                    z = random.nextFloat() * 200 - 100;
+            float velocityX = random.nextFloat() - 0.5f, velocityY = random.nextFloat() - 0.5f,
+                    velocityZ = random.nextFloat() - 0.5f;
+            random.nextFloat();
+            for (int frame = 0; frame < frames / 4 + frames; frame++) {
+                x += velocityX * DELTA;
+                y += velocityY * DELTA;
+                z += velocityZ * DELTA;
+                float distance = (float) Math.sqrt(x * x + y * y + z * z) + 1;
+                velocityX -= x / distance * DELTA;
+                velocityY -= y / distance * DELTA;
+                velocityZ -= z / distance * DELTA;
+            }
+            serial.get(i).getComponent(TransformComponent.class).getPosition(a);
+            if (!a.equals(expected.set(x, y, z))) {
+                if (wrong++ == 0) {
+                    System.out.printf("entity %d ended at %s, expected %s%n", i, a, expected);
+                }
+            }
+        }
+        System.out.printf("%d of %d transforms differ from the replay%n", wrong, count);
+        if (wrong > 0) {
+            throw new IllegalStateException(wrong + " transforms differ from the replay");
+        }
+    }
+
+    private static List<Entity> run(int count, int frames, boolean parallel) {
+        Scene scene = new Scene(new Camera(), null);
+        scene.addSystem(new SteeringSystem());
+        scene.addSystem(new AgeingSystem());
+
+        Random random = new Random(1);
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Entity entity = new Entity();
+            entity.addComponent(new TransformComponent(new Vector3f(random.nextFloat() * 200 - 100,
+                    random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100), new Vector3f(), 1));
+            MoveableComponent moveable = new MoveableComponent();
+            moveable.setPositionVelocity(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f);
+            moveable.setAngularVelocity(0, random.nextFloat() * 90, 0);
+            entity.addComponent(moveable);
+            entity.addComponent(new AgeComponent());
+            scene.addEntity(entity);
+            entities.add(entity);
+        }
+
+        SystemScheduler scheduler = scene.getScheduler();
+        scheduler.setParallel(parallel);
+        // Warm up the JIT before timing
+        for (int frame = 0; frame < frames / 4; frame++) {
+            scheduler.update(DELTA);
+        }
+
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            scheduler.update(DELTA);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("  %-8s %d systems in %d stages: %.3f ms per frame%n", parallel ? "parallel" : "serial",
+                scheduler.getSystems().size(), scheduler.getStageCount(), elapsed / 1e6 / frames);
+        return entities;
+    }
+}
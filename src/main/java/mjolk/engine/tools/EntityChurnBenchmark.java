@@ -0,0 +1,63 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.EntityRegistry;
+import mjolk.engine.core.entity.Scene;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.graphics.camera.Camera;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Keeps a scene at a fixed number of live entities while removing a random one and adding another over and over,
+ * then times it and checks that no handle of a removed entity finds the entity that took over its slot. Removed
+ * entities are added back later, as a game pooling its entities would, so the garbage collector does not swamp the
+ * timing.
+ * <p>
+ * Usage: EntityChurnBenchmark [live entities] [replacements] (defaults to 100000 and 2000000)
+ */
+public class EntityChurnBenchmark {
+
+    public static void main(String[] args) {
+        int live = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int replacements = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        Scene scene = new Scene(new Camera(), null);
+        EntityRegistry entities = scene.getEntities();
+        for (int i = 0; i < live; i++) {
+            scene.addEntity(newEntity(i));
+        }
+        Entity spare = newEntity(live);
+
+        Random random = new Random(1);
+        long[] removed = new long[Math.min(replacements, 100_000)];
+        long start = System.nanoTime();
+        for (int i = 0; i < replacements; i++) {
+            long handle = entities.getAt(random.nextInt(entities.size())).getHandle();
+            Entity entity = scene.removeEntity(handle);
+            removed[i % removed.length] = handle;
+            scene.addEntity(spare);
+            spare = entity;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int aliased = 0;
+        for (long handle : removed) {
+            if (scene.getEntity(handle) != null) aliased++;
+        }
+
+        double perSecond = replacements / (elapsed / 1e9);
+        System.out.printf("%d live entities, %d replacements in %.1f ms%n", entities.size(), replacements,
+                elapsed / 1e6);
+        System.out.printf("  %.0f removals and additions per second, %.1f million per minute%n", perSecond,
+                perSecond * 60 / 1e6);
+        System.out.printf("  %d of %d stale handles found an entity%n", aliased, removed.length);
+    }
+
+    private static Entity newEntity(int i) {
+        Entity entity = new Entity();
+        entity.addComponent(new TransformComponent(new Vector3f(i, 0, 0), new Vector3f(), 1));
+        return entity;
+    }
+}
@@ -0,0 +1,74 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.mesh.MeshCache;
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.MeshOptimizer;
+import mjolk.engine.graphics.mesh.MeshSimplifier;
+import mjolk.engine.graphics.mesh.MeshletBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Offline converter that compiles every OBJ under a resources folder into the binary mesh cache, so the game
+ * never has to parse them at runtime.
+ * <p>
+ * Usage: MeshCooker [--lods] [--optimize] [--meshlets] [resources root] [cache directory]
+ * (defaults to src/main/resources and {@link MeshCache#DEFAULT_DIRECTORY}). With --optimize the meshes are run
+ * through {@link MeshOptimizer} before they are written, with --lods they get a LOD chain from
+ * {@link MeshSimplifier} and with --meshlets they are split into clusters by {@link MeshletBuilder}.
+ */
+public class MeshCooker {
+
+    public static void main(String[] args) throws Exception {
+        boolean lods = false, optimize = false, meshlets = false;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            switch (args[first]) {
+                case "--lods" -> lods = true;
+                case "--optimize" -> optimize = true;
+                case "--meshlets" -> meshlets = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[first]);
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+
+        Path root = Path.of(args.length > 0 ? args[0] : "src/main/resources");
+        Path output = args.length > 1 ? Path.of(args[1]) : MeshCache.DEFAULT_DIRECTORY;
+        MeshCache cache = new MeshCache(output);
+        UnaryOperator<MeshData> process = process(lods, optimize, meshlets);
+
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(root.resolve("models"))) {
+            sources = files.filter(p -> p.toString().toLowerCase().endsWith(".obj")).sorted().toList();
+        }
+
+        for (Path source : sources) {
+            // Entries are keyed by the resource path the loader asks for, e.g. "models/box.obj"
+            String key = root.relativize(source).toString().replace('\\', '/');
+
+            long start = System.nanoTime();
+            Path entry = cache.cook(source, key, process);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-24s -> %s (%d KB, %.1f ms)%n", key, entry,
+                    Files.size(entry) / 1024, elapsed / 1e6);
+        }
+    }
+
+    /**
+     * The processing steps in the same order ObjectLoader applies them at runtime
+     */
+    private static UnaryOperator<MeshData> process(boolean lods, boolean optimize, boolean meshlets) {
+        return mesh -> {
+            if (lods) mesh = MeshSimplifier.generateLods(mesh);
+            if (optimize) mesh = MeshOptimizer.optimize(mesh);
+            if (meshlets) mesh = MeshletBuilder.build(mesh);
+            return mesh;
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.MeshSimplifier;
+import mjolk.engine.graphics.mesh.ObjParser;
+import org.joml.Intersectionf;
+import org.joml.Vector3f;
+
+/**
+ * Builds the LOD chain of the bundled models and prints the triangle count of every level, the time it took and
+ * how far the simplified surface strays from the original. The deviation is the largest distance from a sample of
+ * original vertices to the simplified triangles, relative to the bounding sphere radius.
+ * <p>
+ * Usage: MeshLodReport [model resource...] (defaults to the bundled models)
+ */
+public class MeshLodReport {
+
+    private static final String[] DEFAULT_MODELS = {
+            "models/flat.obj", "models/church_2.obj", "models/head2.obj"
+    };
+
+    private static final int SAMPLES = 2000;
+
+    public static void main(String[] args) throws Exception {
+        String[] models = args.length > 0 ? args : DEFAULT_MODELS;
+
+        for (String model : models) {
+            MeshData mesh = ObjParser.parse(model);
+
+            long start = System.nanoTime();
+            MeshData chain = MeshSimplifier.generateLods(mesh);
+            long elapsed = System.nanoTime() - start;
+
+            Vector3f min = new Vector3f();
+            Vector3f max = new Vector3f();
+            mesh.computeBounds(min, max);
+            float radius = min.distance(max) * 0.5f;
+
+            System.out.printf("%s: %d levels in %.1f ms%n", model, chain.getLodCount(), elapsed / 1e6);
+            for (int lod = 0; lod < chain.getLodCount(); lod++) {
+                int[] indices = chain.getLodIndices(lod);
+                float deviation = lod == 0 ? 0 : deviation(mesh.getPositions(), indices) / radius;
+                System.out.printf("  lod %d: %7d triangles (%5.1f%%)  deviation %.4f%n", lod, indices.length / 3,
+                        100f * indices.length / mesh.getIndexCount(), deviation);
+            }
+        }
+    }
+
+    private static float deviation(float[] positions, int[] indices) {
+        int vertexCount = positions.length / 3;
+        int step = Math.max(1, vertexCount / SAMPLES);
+
+        Vector3f point = new Vector3f();
+        Vector3f a = new Vector3f(), b = new Vector3f(), c = new Vector3f();
+        Vector3f closest = new Vector3f();
+
+        float worst = 0;
+        for (int v = 0; v < vertexCount; v += step) {
+            point.set(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+
+            float nearest = Float.MAX_VALUE;
+            for (int i = 0; i < indices.length; i += 3) {
+                a.set(positions[indices[i] * 3], positions[indices[i] * 3 + 1], positions[indices[i] * 3 + 2]);
+                b.set(positions[indices[i + 1] * 3], positions[indices[i + 1] * 3 + 1], positions[indices[i + 1] * 3 + 2]);
+                c.set(positions[indices[i + 2] * 3], positions[indices[i + 2] * 3 + 1], positions[indices[i + 2] * 3 + 2]);
+                Intersectionf.findClosestPointOnTriangle(a, b, c, point, closest);
+                nearest = Math.min(nearest, closest.distanceSquared(point));
+            }
+            worst = Math.max(worst, nearest);
+        }
+        return (float) Math.sqrt(worst);
+    }
+}
@@ -0,0 +1,48 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.MeshOptimizer;
+import mjolk.engine.graphics.mesh.ObjParser;
+
+/**
+ * Prints the simulated post-transform cache efficiency of the bundled models before and after
+ * {@link MeshOptimizer}. ACMR is transformed vertices per triangle (0.5 is ideal for large grids, 3 is the worst
+ * case), ATVR is transformed vertices per unique vertex (1 is ideal).
+ * <p>
+ * Usage: MeshOptimizerReport [model resource...] (defaults to the bundled models)
+ */
+public class MeshOptimizerReport {
+
+    private static final String[] DEFAULT_MODELS = {
+            "models/box.obj", "models/cube.obj", "models/flat.obj", "models/church_2.obj", "models/head2.obj"
+    };
+
+    private static final int[] CACHE_SIZES = {16, 32};
+
+    public static void main(String[] args) throws Exception {
+        String[] models = args.length > 0 ? args : DEFAULT_MODELS;
+
+        System.out.printf("%-22s %8s %8s  %-22s %-22s %8s%n", "model", "verts", "tris",
+                "acmr(16/32) before", "acmr(16/32) after", "ms");
+        for (String model : models) {
+            MeshData mesh = ObjParser.parse(model);
+
+            long start = System.nanoTime();
+            MeshData optimized = MeshOptimizer.optimize(mesh);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-22s %8d %8d  %-22s %-22s %8.2f%n", model, mesh.getVertexCount(),
+                    mesh.getIndexCount() / 3, stats(mesh), stats(optimized), elapsed / 1e6);
+        }
+    }
+
+    private static String stats(MeshData mesh) {
+        StringBuilder builder = new StringBuilder();
+        for (int cacheSize : CACHE_SIZES) {
+            if (!builder.isEmpty()) builder.append(" / ");
+            builder.append(String.format("%.3f", MeshOptimizer.acmr(mesh.getIndices(), mesh.getVertexCount(), cacheSize)));
+        }
+        builder.append(String.format(" (%.2f)", MeshOptimizer.atvr(mesh.getIndices(), mesh.getVertexCount(), 32)));
+        return builder.toString();
+    }
+}
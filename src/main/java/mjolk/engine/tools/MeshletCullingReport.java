@@ -0,0 +1,111 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.utils.IntList;
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.MeshOptimizer;
+import mjolk.engine.graphics.mesh.MeshletBuilder;
+import mjolk.engine.graphics.mesh.Meshlets;
+import mjolk.engine.graphics.mesh.ObjParser;
+import mjolk.engine.graphics.rendering.MeshletCuller;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Splits the bundled models into meshlets and measures how much of them {@link MeshletCuller} keeps from a set of
+ * random viewpoints, without a GPU. Orbit views look at the model from twice its bounding radius, close views stand
+ * inside the bounding sphere and look in a random direction, like a camera walking through a building.
+ * <p>
+ * Usage: MeshletCullingReport [model resource...] (defaults to the bundled models)
+ */
+public class MeshletCullingReport {
+
+    private static final String[] DEFAULT_MODELS = {"models/church_2.obj", "models/head2.obj"};
+
+    private static final int VIEWS = 500;
+    private static final float FOV = (float) Math.toRadians(60);
+    private static final float ASPECT = 16f / 9f;
+
+    public static void main(String[] args) throws Exception {
+        String[] models = args.length > 0 ? args : DEFAULT_MODELS;
+
+        for (String model : models) {
+            long start = System.nanoTime();
+            MeshData mesh = MeshletBuilder.build(MeshOptimizer.optimize(ObjParser.parse(model)));
+            long elapsed = System.nanoTime() - start;
+
+            Meshlets meshlets = mesh.getMeshlets();
+            if (meshlets == null) {
+                System.out.printf("%s: too small to split%n", model);
+                continue;
+            }
+
+            float averageRadius = 0;
+            int narrowCones = 0;
+            for (int m = 0; m < meshlets.getCount(); m++) {
+                averageRadius += meshlets.getBounds()[m * Meshlets.STRIDE + 3] / meshlets.getCount();
+                if (meshlets.getCones()[m * Meshlets.STRIDE + 3] < 1) narrowCones++;
+            }
+
+            Vector3f min = new Vector3f(), max = new Vector3f();
+            mesh.computeBounds(min, max);
+            Vector3f centre = new Vector3f(min).add(max).mul(0.5f);
+            float radius = min.distance(max) * 0.5f;
+
+            System.out.printf("%s: %d meshlets (%.1f ms), mean radius %.3f of the model, %d%% with a usable cone%n",
+                    model, meshlets.getCount(), elapsed / 1e6, averageRadius / radius,
+                    100 * narrowCones / meshlets.getCount());
+            report("orbit", mesh, centre, radius, true);
+            report("close", mesh, centre, radius, false);
+        }
+    }
+
+    private static void report(String name, MeshData mesh, Vector3f centre, float radius, boolean orbit) {
+        Random random = new Random(42);
+        MeshletCuller culler = new MeshletCuller();
+        IntList ranges = new IntList();
+
+        Matrix4f projection = new Matrix4f().setPerspective(FOV, ASPECT, radius * 0.001f, radius * 10);
+        Matrix4f viewProjection = new Matrix4f();
+        Vector3f eye = new Vector3f();
+        Vector3f target = new Vector3f();
+
+        long drawn = 0;
+        long draws = 0;
+        long time = 0;
+        for (int view = 0; view < VIEWS; view++) {
+            Vector3f direction = randomDirection(random);
+            if (orbit) {
+                eye.set(direction).mul(radius * 2).add(centre);
+                target.set(centre);
+            } else {
+                eye.set(randomDirection(random)).mul(radius * 0.5f * random.nextFloat()).add(centre);
+                target.set(eye).add(direction);
+            }
+            viewProjection.set(projection).lookAt(eye, target, Math.abs(direction.y) > 0.99f
+                    ? new Vector3f(1, 0, 0) : new Vector3f(0, 1, 0));
+
+            long start = System.nanoTime();
+            culler.cull(mesh.getMeshlets(), viewProjection, eye, true, ranges);
+            time += System.nanoTime() - start;
+
+            for (int r = 0; r < ranges.size(); r += 2) {
+                drawn += ranges.get(r + 1);
+            }
+            draws += ranges.size() / 2;
+        }
+
+        System.out.printf("  %-5s %5.1f%% of triangles drawn, %.1f ranges per draw, %.1f us per cull%n", name,
+                100.0 * drawn / ((long) VIEWS * mesh.getIndexCount()), (double) draws / VIEWS, time / 1e3 / VIEWS);
+        culler.cleanup();
+    }
+
+    private static Vector3f randomDirection(Random random) {
+        Vector3f direction = new Vector3f();
+        do {
+            direction.set(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+        } while (direction.lengthSquared() > 1 || direction.lengthSquared() < 1e-4f);
+        return direction.normalize();
+    }
+}
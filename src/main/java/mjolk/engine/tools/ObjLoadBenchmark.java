@@ -0,0 +1,187 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.utils.Utils;
+import mjolk.engine.core.utils.VertexKey;
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.ObjParser;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the streaming {@link ObjParser} against the original line splitting loader on the bundled models.
+ * Only the CPU side is measured, so no GL context is needed.
+ * <p>
+ * Usage: ObjLoadBenchmark [iterations] [model...]
+ */
+public class ObjLoadBenchmark {
+
+    private static final String[] DEFAULT_MODELS = {
+            "models/box.obj", "models/cube.obj", "models/flat.obj", "models/church_2.obj", "models/head2.obj"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String[] models = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_MODELS;
+
+        System.out.printf("%-22s %12s %12s %14s %14s %9s%n",
+                "model", "legacy ms", "stream ms", "legacy alloc", "stream alloc", "identical");
+
+        for (String model : models) {
+            MeshData legacy = legacyParse(model);
+            MeshData streamed = ObjParser.parse(model);
+            boolean identical = sameMesh(legacy, streamed);
+
+            // Warm both paths up before timing
+            for (int i = 0; i < 5; i++) {
+                legacyParse(model);
+                ObjParser.parse(model);
+            }
+
+            long[] legacyResult = measure(iterations, () -> legacyParse(model));
+            long[] streamResult = measure(iterations, () -> ObjParser.parse(model));
+
+            System.out.printf("%-22s %12.3f %12.3f %12d KB %12d KB %9s%n", model,
+                    legacyResult[0] / 1e6, streamResult[0] / 1e6,
+                    legacyResult[1] / 1024, streamResult[1] / 1024, identical);
+        }
+    }
+
+    interface Loader {
+        MeshData load() throws Exception;
+    }
+
+    /**
+     * @return average nanoseconds and average bytes allocated per load
+     */
+    private static long[] measure(int iterations, Loader loader) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            loader.load();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new long[]{elapsed / iterations, allocated / iterations};
+    }
+
+    private static boolean sameMesh(MeshData a, MeshData b) {
+        return Arrays.equals(a.getPositions(), b.getPositions())
+                && Arrays.equals(a.getTexCoords(), b.getTexCoords())
+                && Arrays.equals(a.getNormals(), b.getNormals())
+                && Arrays.equals(a.getIndices(), b.getIndices());
+    }
+
+    /**
+     * The loader as it was before the streaming parser, kept as the reference for timing and output comparison
+     */
+    static MeshData legacyParse(String fileName) throws Exception {
+        List<String> lines = Utils.readAllLines(fileName);
+
+        List<Vector3f> positions = new ArrayList<>();
+        List<Vector2f> texCoords = new ArrayList<>();
+        List<Vector3f> normals   = new ArrayList<>();
+
+        List<Float> finalPositions = new ArrayList<>();
+        List<Float> finalTexCoords = new ArrayList<>();
+        List<Float> finalNormals   = new ArrayList<>();
+        List<Integer> indices      = new ArrayList<>();
+
+        Map<VertexKey, Integer> vertexMap = new HashMap<>();
+
+        for (String line : lines) {
+            String[] tokens = line.split("\\s+");
+
+            switch (tokens[0]) {
+
+                case "v":
+                    positions.add(new Vector3f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2]),
+                            Float.parseFloat(tokens[3])));
+                    break;
+
+                case "vt":
+                    texCoords.add(new Vector2f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2])));
+                    break;
+
+                case "vn":
+                    normals.add(new Vector3f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2]),
+                            Float.parseFloat(tokens[3])));
+                    break;
+
+                case "f":
+                    for (int i = 1; i <= 3; i++) {
+                        String[] parts = tokens[i].split("/");
+
+                        int posIndex  = Integer.parseInt(parts[0]) - 1;
+                        int texIndex  = parts.length > 1 && !parts[1].isEmpty()
+                                ? Integer.parseInt(parts[1]) - 1 : -1;
+                        int normIndex = parts.length > 2
+                                ? Integer.parseInt(parts[2]) - 1 : -1;
+
+                        VertexKey key = new VertexKey(posIndex, texIndex, normIndex);
+
+                        Integer index = vertexMap.get(key);
+                        if (index == null) {
+                            index = finalPositions.size() / 3;
+                            vertexMap.put(key, index);
+
+                            Vector3f pos = positions.get(posIndex);
+                            finalPositions.add(pos.x);
+                            finalPositions.add(pos.y);
+                            finalPositions.add(pos.z);
+
+                            if (texIndex >= 0) {
+                                Vector2f uv = texCoords.get(texIndex);
+                                finalTexCoords.add(uv.x);
+                                finalTexCoords.add(1.0f - uv.y);
+                            } else {
+                                finalTexCoords.add(0f);
+                                finalTexCoords.add(0f);
+                            }
+
+                            if (normIndex >= 0) {
+                                Vector3f n = normals.get(normIndex);
+                                finalNormals.add(n.x);
+                                finalNormals.add(n.y);
+                                finalNormals.add(n.z);
+                            } else {
+                                finalNormals.add(0f);
+                                finalNormals.add(0f);
+                                finalNormals.add(1f);
+                            }
+                        }
+
+                        indices.add(index);
+                    }
+                    break;
+            }
+        }
+
+        return new MeshData(toFloatArray(finalPositions), toFloatArray(finalTexCoords), toFloatArray(finalNormals),
+                indices.stream().mapToInt(i -> i).toArray());
+    }
+
+    private static float[] toFloatArray(List<Float> list) {
+        float[] array = new float[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,62 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.ObjParser;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the parallel memory mapped OBJ import at increasing pool sizes and checks that every pool size produces
+ * the same mesh as the single threaded streaming parser.
+ * <p>
+ * Usage: ParallelObjBenchmark &lt;file.obj&gt; [iterations] [max threads]
+ */
+public class ParallelObjBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ParallelObjBenchmark <file.obj> [iterations] [max threads]");
+            return;
+        }
+
+        Path file = Path.of(args[0]);
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        MeshData reference = ObjParser.parse(file);
+        long streamNanos = time(iterations, () -> ObjParser.parse(file));
+        System.out.printf("%-12s %10.1f ms%n", "streaming", streamNanos / 1e6);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                MeshData mesh = ObjParser.parseParallel(file, pool);
+                boolean identical = Arrays.equals(reference.getPositions(), mesh.getPositions())
+                        && Arrays.equals(reference.getTexCoords(), mesh.getTexCoords())
+                        && Arrays.equals(reference.getNormals(), mesh.getNormals())
+                        && Arrays.equals(reference.getIndices(), mesh.getIndices());
+
+                long nanos = time(iterations, () -> ObjParser.parseParallel(file, pool));
+                System.out.printf("%-12s %10.1f ms  speedup %.2fx  identical %s%n", threads + " threads",
+                        nanos / 1e6, (double) streamNanos / nanos, identical);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    interface Parse {
+        MeshData run() throws Exception;
+    }
+
+    private static long time(int iterations, Parse parse) throws Exception {
+        parse.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse.run();
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+}
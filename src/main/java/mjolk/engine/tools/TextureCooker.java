@@ -0,0 +1,72 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.material.MipChainBuilder;
+import mjolk.engine.graphics.material.TextureContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Offline converter that cooks every image in a textures folder into the {@link TextureContainer}, with a mip chain
+ * filtered by {@link MipChainBuilder}, so the game neither decodes images nor generates mips at runtime. Images are
+ * cooked in parallel, one per core.
+ * <p>
+ * Usage: TextureCooker [--linear] [textures directory] [cache directory]
+ * (defaults to textures and {@link TextureContainer#DEFAULT_DIRECTORY}). With --linear the images are filtered as
+ * data, e.g. normal maps, instead of sRGB colour.
+ */
+public class TextureCooker {
+
+    private static final Set<String> EXTENSIONS = Set.of("png", "jpg", "jpeg", "tga", "bmp");
+
+    public static void main(String[] args) throws Exception {
+        boolean linear = false;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            switch (args[first]) {
+                case "--linear" -> linear = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[first]);
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+
+        Path root = Path.of(args.length > 0 ? args[0] : "textures");
+        Path output = args.length > 1 ? Path.of(args[1]) : TextureContainer.DEFAULT_DIRECTORY;
+        TextureContainer container = new TextureContainer(output);
+
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(root)) {
+            sources = files.filter(TextureCooker::isImage).sorted().toList();
+        }
+
+        boolean filterLinear = linear;
+        long start = System.nanoTime();
+        long busy = sources.parallelStream().mapToLong(source -> {
+            long begin = System.nanoTime();
+            try {
+                Path entry = container.cook(source, filterLinear);
+                long elapsed = System.nanoTime() - begin;
+                System.out.printf("%-24s -> %s (%d KB, %.1f ms)%n", source, entry,
+                        Files.size(entry) / 1024, elapsed / 1e6);
+                return elapsed;
+            } catch (Exception e) {
+                System.out.printf("%-24s failed: %s%n", source, e.getMessage());
+                return 0;
+            }
+        }).sum();
+        long wall = System.nanoTime() - start;
+
+        System.out.printf("Cooked %d textures in %.1f ms, %.1f ms of work in total%n", sources.size(),
+                wall / 1e6, busy / 1e6);
+    }
+
+    private static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && EXTENSIONS.contains(name.substring(dot + 1)) && Files.isRegularFile(path);
+    }
+}
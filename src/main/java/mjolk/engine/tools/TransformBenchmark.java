@@ -0,0 +1,121 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.entity.Entity;
+import mjolk.engine.core.entity.Scene;
+import mjolk.engine.core.entity.components.TransformComponent;
+import mjolk.engine.core.entity.components.TransformHierarchy;
+import mjolk.engine.graphics.camera.Camera;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Times the world matrices of a scene of nested transforms: rebuilt from scratch every frame as before the
+ * hierarchy, kept by the hierarchy while nothing moves, and kept by the hierarchy while a few transforms move. The
+ * matrices of the hierarchy are then checked against ones rebuilt from scratch.
+ * <p>
+ * Every node past the roots gets a random earlier node as parent, so the trees are a few levels deep.
+ * <p>
+ * Usage: TransformBenchmark [node count] [frames] (defaults to 50000 and 300)
+ */
+public class TransformBenchmark {
+
+    private static final int ROOTS = 500;
+    private static final int MOVING = 100;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        Scene scene = new Scene(new Camera(), null);
+        Random random = new Random(1);
+        TransformComponent[] transforms = new TransformComponent[count];
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            transforms[i] = new TransformComponent(new Vector3f(random.nextFloat() * 10 - 5,
+                    random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5),
+                    new Vector3f(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360),
+                    0.5f + random.nextFloat());
+            parents[i] = i < ROOTS ? -1 : random.nextInt(i);
+            if (parents[i] >= 0) {
+                transforms[i].setParent(transforms[parents[i]]);
+            }
+            Entity entity = new Entity();
+            entity.addComponent(transforms[i]);
+            scene.addEntity(entity);
+        }
+        TransformHierarchy hierarchy = scene.getStorage().getTransforms();
+        hierarchy.update();
+        System.out.printf("%d nodes under %d roots, %d frames%n", count, ROOTS, frames);
+
+        // Before the hierarchy every model matrix was rebuilt every frame, here including the parent
+        Matrix4f[] rebuilt = new Matrix4f[count];
+        for (int i = 0; i < count; i++) {
+            rebuilt[i] = new Matrix4f();
+        }
+        Vector3f position = new Vector3f(), rotation = new Vector3f();
+        long start = 0;
+        for (int frame = -frames / 4; frame < frames; frame++) {
+            if (frame == 0) start = System.nanoTime();
+            rebuildAll(transforms, parents, rebuilt, position, rotation);
+        }
+        report("rebuild all", start, frames, count);
+
+        for (int frame = -frames / 4; frame < frames; frame++) {
+            if (frame == 0) start = System.nanoTime();
+            hierarchy.update();
+        }
+        report("static", start, frames, hierarchy.getRebuiltCount());
+
+        int rebuiltNodes = 0;
+        for (int frame = -frames / 4; frame < frames; frame++) {
+            if (frame == 0) {
+                start = System.nanoTime();
+                rebuiltNodes = 0;
+            }
+            for (int i = 0; i < MOVING; i++) {
+                TransformComponent transform = transforms[random.nextInt(count)];
+                transform.getPosition(position);
+                transform.setPosition(position.add(0.01f, 0, 0));
+            }
+            hierarchy.update();
+            rebuiltNodes += hierarchy.getRebuiltCount();
+        }
+        report(MOVING + " moving", start, frames, rebuiltNodes / Math.max(1, frames));
+
+        rebuildAll(transforms, parents, rebuilt, position, rotation);
+        float maxError = 0;
+        for (int i = 0; i < count; i++) {
+            Matrix4f world = transforms[i].getWorldMatrix();
+            for (int column = 0; column < 4; column++) {
+                for (int row = 0; row < 4; row++) {
+                    maxError = Math.max(maxError, Math.abs(world.get(column, row) - rebuilt[i].get(column, row)));
+                }
+            }
+        }
+        System.out.printf("largest difference from rebuilding from scratch: %.3g%n", maxError);
+    }
+
+    private static void rebuildAll(TransformComponent[] transforms, int[] parents, Matrix4f[] dest,
+                                   Vector3f position, Vector3f rotation) {
+        for (int i = 0; i < transforms.length; i++) {
+            transforms[i].getPosition(position);
+            transforms[i].getRotation(rotation);
+            Matrix4f matrix = dest[i].identity();
+            if (parents[i] >= 0) {
+                matrix.set(dest[parents[i]]);
+            }
+            matrix.translate(position).
+                    rotateX((float) Math.toRadians(rotation.x)).
+                    rotateY((float) Math.toRadians(rotation.y)).
+                    rotateZ((float) Math.toRadians(rotation.z)).
+                    scale(transforms[i].getScale());
+        }
+    }
+
+    private static void report(String name, long start, int frames, int rebuiltNodes) {
+        System.out.printf("  %-12s %.4f ms per frame, %d nodes rebuilt per frame%n", name,
+                (System.nanoTime() - start) / 1e6 / frames, rebuiltNodes);
+    }
+}
@@ -0,0 +1,93 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.core.utils.IntList;
+import mjolk.engine.core.utils.Utils;
+import mjolk.engine.core.utils.VertexIndexMap;
+import mjolk.engine.core.utils.VertexKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures face corner deduplication throughput of {@link VertexIndexMap} against the HashMap&lt;VertexKey, Integer&gt;
+ * it replaced, on the corner stream of a bundled model.
+ * <p>
+ * Usage: VertexDedupBenchmark [model] [rounds]
+ */
+public class VertexDedupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String model = args.length > 0 ? args[0] : "models/head2.obj";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        int[] corners = readCorners(model);
+        int cornerCount = corners.length / 3;
+
+        long checksum = 0;
+        for (int i = 0; i < 20; i++) {
+            checksum += dedupHashMap(corners) + dedupOpenAddressing(corners);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            checksum += dedupHashMap(corners);
+        }
+        long hashMapNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            checksum += dedupOpenAddressing(corners);
+        }
+        long openNanos = System.nanoTime() - start;
+
+        double lookups = (double) cornerCount * rounds;
+        System.out.printf("%s: %d corners, %d unique vertices%n", model, cornerCount, dedupOpenAddressing(corners));
+        System.out.printf("HashMap<VertexKey, Integer> %8.1f M lookups/s%n", lookups / hashMapNanos * 1e3);
+        System.out.printf("VertexIndexMap              %8.1f M lookups/s (%.2fx)%n",
+                lookups / openNanos * 1e3, (double) hashMapNanos / openNanos);
+        System.out.println("checksum " + checksum);
+    }
+
+    private static int dedupHashMap(int[] corners) {
+        Map<VertexKey, Integer> map = new HashMap<>();
+        int next = 0;
+        for (int i = 0; i < corners.length; i += 3) {
+            VertexKey key = new VertexKey(corners[i], corners[i + 1], corners[i + 2]);
+            Integer index = map.get(key);
+            if (index == null) {
+                map.put(key, next++);
+            }
+        }
+        return next;
+    }
+
+    private static int dedupOpenAddressing(int[] corners) {
+        VertexIndexMap map = new VertexIndexMap(corners.length / 3);
+        int next = 0;
+        for (int i = 0; i < corners.length; i += 3) {
+            if (map.putIfAbsent(corners[i], corners[i + 1], corners[i + 2], next) == next) {
+                next++;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Collects the (position, texture, normal) triple of the first three corners of every face
+     */
+    private static int[] readCorners(String model) throws Exception {
+        IntList corners = new IntList();
+        for (String line : Utils.readAllLines(model)) {
+            if (!line.startsWith("f ")) continue;
+
+            String[] tokens = line.trim().split("\\s+");
+            for (int i = 1; i <= 3; i++) {
+                String[] parts = tokens[i].split("/");
+                corners.add(Integer.parseInt(parts[0]) - 1,
+                        parts.length > 1 && !parts[1].isEmpty() ? Integer.parseInt(parts[1]) - 1 : -1,
+                        parts.length > 2 ? Integer.parseInt(parts[2]) - 1 : -1);
+            }
+        }
+        return corners.toArray();
+    }
+}
@@ -0,0 +1,100 @@
+package mjolk.engine.tools;
+
+import mjolk.engine.graphics.mesh.MeshData;
+import mjolk.engine.graphics.mesh.ObjParser;
+import mjolk.engine.graphics.mesh.VertexQuantizer;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the bundled models with {@link VertexQuantizer}, decodes them again the way the shaders do and prints the
+ * vertex size next to the error against the float originals: position error relative to the bounding box diagonal,
+ * the angle between original and decoded normals in degrees, and texture coordinate error.
+ * <p>
+ * Usage: VertexQuantizationReport [model resource...] (defaults to the bundled models)
+ */
+public class VertexQuantizationReport {
+
+    private static final String[] DEFAULT_MODELS = {
+            "models/flat.obj", "models/church_2.obj", "models/head2.obj"
+    };
+
+    private static final int FLOAT_STRIDE = (3 + 2 + 3) * Float.BYTES;
+
+    public static void main(String[] args) throws Exception {
+        String[] models = args.length > 0 ? args : DEFAULT_MODELS;
+
+        for (String model : models) {
+            MeshData mesh = ObjParser.parse(model);
+            Vector3f min = new Vector3f();
+            Vector3f max = new Vector3f();
+            mesh.computeBounds(min, max);
+
+            System.out.printf("%s: %d vertices, %d bytes per vertex as floats%n", model, mesh.getVertexCount(),
+                    FLOAT_STRIDE);
+            report(mesh, false, min, max);
+            report(mesh, true, min, max);
+        }
+    }
+
+    private static void report(MeshData mesh, boolean quantizePositions, Vector3f min, Vector3f max) {
+        float[] positions = mesh.getPositions();
+        float[] texCoords = mesh.getTexCoords();
+        float[] normals = mesh.getNormals();
+        ByteBuffer encoded = VertexQuantizer.encode(positions, texCoords, normals, quantizePositions, min, max);
+
+        int stride = VertexQuantizer.stride(quantizePositions);
+        int positionBytes = quantizePositions
+                ? VertexQuantizer.QUANTIZED_POSITION_BYTES : VertexQuantizer.FLOAT_POSITION_BYTES;
+        Vector3f extent = new Vector3f(max).sub(min);
+        float diagonal = Math.max(extent.length(), Float.MIN_NORMAL);
+
+        Vector3f original = new Vector3f();
+        Vector3f decoded = new Vector3f();
+        double positionSum = 0, normalSum = 0, texCoordSum = 0;
+        float positionMax = 0, normalMax = 0, texCoordMax = 0;
+        int normalCount = 0;
+
+        int vertexCount = positions.length / 3;
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * stride;
+            original.set(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+            if (quantizePositions) {
+                decoded.set(VertexQuantizer.dequantizeUnorm(encoded.getShort(base), min.x, extent.x),
+                        VertexQuantizer.dequantizeUnorm(encoded.getShort(base + 2), min.y, extent.y),
+                        VertexQuantizer.dequantizeUnorm(encoded.getShort(base + 4), min.z, extent.z));
+            } else {
+                decoded.set(encoded.getFloat(base), encoded.getFloat(base + 4), encoded.getFloat(base + 8));
+            }
+            float positionError = original.distance(decoded) / diagonal;
+            positionSum += positionError;
+            positionMax = Math.max(positionMax, positionError);
+
+            int t = base + positionBytes;
+            float u = Float.float16ToFloat(encoded.getShort(t));
+            float w = Float.float16ToFloat(encoded.getShort(t + 2));
+            float texCoordError = Math.max(Math.abs(u - texCoords[v * 2]), Math.abs(w - texCoords[v * 2 + 1]));
+            texCoordSum += texCoordError;
+            texCoordMax = Math.max(texCoordMax, texCoordError);
+
+            original.set(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]);
+            if (original.lengthSquared() > 0) {
+                int n = t + VertexQuantizer.TEX_COORD_BYTES;
+                VertexQuantizer.decodeOctahedral(encoded.getShort(n), encoded.getShort(n + 2), decoded);
+                float angle = (float) Math.toDegrees(original.normalize().angle(decoded));
+                normalSum += angle;
+                normalMax = Math.max(normalMax, angle);
+                normalCount++;
+            }
+        }
+        MemoryUtil.memFree(encoded);
+
+        System.out.printf("  %-16s %2d bytes (%4.1f%%)  position %.2e max %.2e  normal %.4f max %.4f deg"
+                        + "  uv %.2e max %.2e%n",
+                quantizePositions ? "16 bit positions" : "float positions", stride, 100f * stride / FLOAT_STRIDE,
+                positionSum / vertexCount, positionMax, normalSum / Math.max(normalCount, 1), normalMax,
+                texCoordSum / vertexCount, texCoordMax);
+    }
+}